@@ -0,0 +1,25 @@
+package com.bole.zkpauth.bus;
+
+import com.bole.zkpauth.kafka.ZkpClient;
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Publishing side of the Kafka key distribution bus, publishes to the zkptopic consumed by the verifiers
+ */
+@Singleton
+@Requires(property = "zkp.bus.type", value = "kafka", defaultValue = "kafka")
+public class KafkaKeyPublisher implements KeyPublisher {
+
+    @Inject
+    ZkpClient kafkaClient;
+
+    @Override
+    public CompletableFuture<Void> publish(KeyRecord record) {
+        return kafkaClient.send(record.user(), record.keys(), String.valueOf(record.version()))
+                .thenApply(metadata -> null);
+    }
+}
@@ -0,0 +1,26 @@
+package com.bole.zkpauth.bus;
+
+import com.bole.zkpauth.cache.KeyCache;
+import io.micronaut.context.annotation.Bean;
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Singleton;
+
+/**
+ * In-process key distribution bus of the Verifier, selected with zkp.bus.type=local
+ * Used for single JVM deployments and to benchmark the ingestion with no broker and no network: the published
+ * keys are delivered to the KeyCache of this JVM, the one read by the embedded verifier.
+ */
+@Factory
+public class LocalKeyBusFactory {
+
+    @Singleton
+    @Requires(property = "zkp.bus.type", value = "local")
+    @Bean(preDestroy = "shutdown")
+    public LocalKeyDistributionBus localKeyDistributionBus(@Value("${zkp.bus.local.capacity:65536}") int capacity) {
+        LocalKeyDistributionBus bus = new LocalKeyDistributionBus(capacity);
+        bus.start(new KeyIngestor(KeyCache.getKeys()));
+        return bus;
+    }
+}
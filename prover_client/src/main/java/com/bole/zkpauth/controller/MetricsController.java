@@ -0,0 +1,26 @@
+package com.bole.zkpauth.controller;
+
+import com.bole.zkpauth.grpc.LatencyRecorder;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.inject.Inject;
+
+/**
+ * Prover metrics REST API
+ * 1. LatencyRecorder.Snapshot latency() - latency of the Verifier calls over the last zkp.metrics.interval
+ */
+@Controller("/zkp/metrics")
+public class MetricsController {
+
+    @Inject
+    LatencyRecorder latencyRecorder;
+
+    @Operation(summary = "Latency percentiles of the Verifier grpc calls per method and status code," +
+            " over the last metrics interval, in microseconds")
+    @Get(value = "latency", produces = MediaType.APPLICATION_JSON)
+    public LatencyRecorder.Snapshot latency() {
+        return latencyRecorder.snapshot();
+    }
+}
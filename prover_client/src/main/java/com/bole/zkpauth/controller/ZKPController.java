@@ -1,18 +1,31 @@
 package com.bole.zkpauth.controller;
 
-import com.bole.zkpauth.AuthenticationChallengeResponse;
+import com.bole.zkpauth.RegisterRequest;
+import com.bole.zkpauth.bus.KeyPublisher;
+import com.bole.zkpauth.bus.KeyRecord;
 import com.bole.zkpauth.domain.LoginClientResponse;
 import com.bole.zkpauth.domain.RegisterClientRequest;
+import com.bole.zkpauth.domain.RegisterBulkClientResponse;
 import com.bole.zkpauth.domain.RegisterClientResponse;
 import com.bole.zkpauth.exception.BadRequestException;
+import com.bole.zkpauth.grpc.CallPolicy;
 import com.bole.zkpauth.grpc.GrpcClient;
-import com.bole.zkpauth.kafka.ZkpClient;
+import com.bole.zkpauth.grpc.ReplicaRing;
+import com.bole.zkpauth.grpc.ShardRouter;
+import com.bole.zkpauth.kafka.KeyVersion;
+import com.bole.zkpauth.util.BigIntegerCodec;
 import com.bole.zkpauth.util.ZKPUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.protobuf.ByteString;
-import com.bole.zkpauth.AuthenticationAnswerResponse;
 import com.bole.zkpauth.grpc.GrpcUtil;
 import com.bole.zkpauth.util.ConcurrentMapCache;
+import io.micronaut.context.annotation.Value;
+import io.grpc.Deadline;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
 import io.micronaut.http.MediaType;
 import io.micronaut.http.annotation.*;
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
@@ -23,11 +36,28 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import javax.validation.Valid;
 import java.math.BigInteger;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @OpenAPIDefinition(
         info = @Info(
@@ -37,20 +67,69 @@ import java.util.Optional;
 )
 /**
  * ZKP Prover Protocol REST API with three endpoints
- * 1. HttpResponse<Optional<RegisterClientResponse>> register(@Body @Valid RegisterClientRequest request)
+ * 1. CompletableFuture<HttpResponse<Optional<RegisterClientResponse>>> register(@Body @Valid RegisterClientRequest request)
  * 2. HttpResponse<Optional<RegisterClientResponse>> register(@Body @Valid RegisterClientWithKeysRequest request)
- * 3. HttpResponse<Optional<LoginClientResponse>> login(@PathVariable(name = "user") String user,
+ * 3. CompletableFuture<HttpResponse<Optional<LoginClientResponse>>> login(@PathVariable(name = "user") String user,
  *                                                              @PathVariable(name = "password") String password)
+ * 4. Publisher<String> registerBulk(@Body Publisher<RegisterClientRequest> requests)
+ * The Verifier calls are non blocking, the math runs on the compute executor.
  */
 @Slf4j
 @Controller("/zkp")
 public class ZKPController {
 
     @Inject
-    ZkpClient kafkaClient;
+    KeyPublisher keyBus;
 
+    @Inject
+    ShardRouter shardRouter;
+
+    @Inject
+    ReplicaRing replicaRing;
+
+    @Inject
+    KeyVersion keyVersion;
+
+    @Inject
+    GrpcUtil grpcUtil;
+
+    @Inject
+    CallPolicy callPolicy;
+
+    /**
+     * time left to the caller of the HTTP request in milliseconds, bounds the Verifier calls serving it
+     */
+    private static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    /**
+     * pipelines the login calls on the authentication stream instead of unary calls
+     */
+    @Value("${zkp.verifier.streaming:false}")
+    boolean streaming;
+
+    /**
+     * bulk register users computed at the same time and users per batch
+     */
+    @Value("${zkp.bulk.parallelism:16}")
+    int bulkParallelism;
+
+    @Value("${zkp.bulk.batch-size:1000}")
+    int bulkBatchSize;
+
+    /**
+     * bounded pool for the CPU-heavy computations, keeps them off the event loop
+     */
+    @Inject
+    @Named("compute")
+    ExecutorService computeExecutor;
 
-    GrpcClient grpcClient;
+    @Inject
+    ObjectMapper objectMapper;
+
+    /**
+     * newline delimited json, one RegisterBulkClientResponse per line
+     */
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
 
     /**
      * to store the values of the keys by userId
@@ -84,59 +163,96 @@ public class ZKPController {
      * Q - prime order of G and H
      * X - secret will be the greatest prime factor of P
      *
-     * 2. Publish to kafka topic P, H and Q to be consumed by anyone, will be used to share with the server Verifier
+     * 2. Compute Y1 and Y2 and publish to kafka topic P, G, H, Y1 and Y2 to be consumed by anyone, will be used
+     * to share with every replica of the server Verifier
+     *
+     * 3. Call Verifier server to register Y1 and Y2
+     *
+     * 4. Join on the asynchronous key publish started in step 2
      *
-     * 3. Start Register process
-     * 3.1. Compute Y1 and Y2
-     * 3.2. Call Verifier server to register Y1 and Y2
+     * The Verifier call runs under the X-Request-Timeout-Ms budget of the request, capped to zkp.verifier.max-deadline,
+     * zkp.verifier.deadline if absent.
      */
     @Post(value = "register", consumes = "application/json", produces = "application/json")
-    public HttpResponse<Optional<RegisterClientResponse>> register(@Body @Valid RegisterClientRequest request) throws InterruptedException {
+    public CompletableFuture<HttpResponse<Optional<RegisterClientResponse>>> register(@Body @Valid RegisterClientRequest request,
+                                                                                      @Header(value = TIMEOUT_HEADER, defaultValue = "0") long timeoutMillis) {
         log.info("ZKP - register process started: " + request.toString());
-        try {
-
-            BigInteger[] pghqx = ZKPUtil.computePGHQX(ZKPUtil.getBigInteger(request.getNumber()));
-            String userId = request.getUser();
-            keyCache.put(userId,pghqx);
-
-            String pubKeys = pghqx[0].toString() + "," + pghqx[1].toString() + "," +pghqx[2];
-
-            // publish to kafka topic: zkptopic
-            kafkaClient.send(userId, pubKeys);
-
-            log.debug("Register process initialized");
-            log.debug("P: " + pghqx[0]);
-            log.debug("G: " + pghqx[1]);
-            log.debug("H: " + pghqx[2]);
-            log.debug("X: " + pghqx[4]);
-            log.debug("Q: " + pghqx[3]);
-            log.debug("User ID: " + request.getUser());
-
-            //compute the Y1 and Y2
-            BigInteger[] yS = ZKPUtil.computeY1Y2(pghqx[1],pghqx[2],pghqx[4],pghqx[0]);
-            log.debug("computation for Y1 and Y2");
-            log.debug("Y1 = " + yS[0]);
-            log.debug("Y2 = " + yS[1]);
-
-            grpcClient = GrpcUtil.initGrpcClient();
-            //Send Y1 and Y2 to Verifier
-            grpcClient.registerSend(userId, yS[0],yS[1]);
-
-            log.info("Register process finished for user id: " + userId);
-
-            HttpResponse<Optional<RegisterClientResponse>> response = HttpResponse.ok()
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(Optional.of(new RegisterClientResponse("Y1 and Y2 successfully registered in the server.\n Login password: "+ pghqx[4])));
-
-            return response;
+        String userId = request.getUser();
+        Deadline deadline = callPolicy.deadline(timeoutMillis);
+
+        return CompletableFuture.supplyAsync(() -> computePGHQX(request.getNumber()), computeExecutor)
+                .thenCompose(pghqx -> {
+                    keyCache.put(userId,pghqx);
+
+                    //compute the Y1 and Y2
+                    BigInteger[] yS = ZKPUtil.computeY1Y2(pghqx[1],pghqx[2],pghqx[4],pghqx[0]);
+
+                    // publish P, G, H, Y1 and Y2 to the key bus (kafka topic: zkptopic), every Verifier replica
+                    // registers Y1 and Y2, runs while the Verifier register is in progress
+                    String pubKeys = pghqx[0].toString() + "," + pghqx[1].toString() + "," + pghqx[2] + "," + yS[0] + "," + yS[1];
+                    CompletableFuture<Void> published = keyBus.publish(new KeyRecord(userId, pubKeys, keyVersion.next()));
+
+                    log.debug("Register process initialized");
+                    log.debug("P: " + pghqx[0]);
+                    log.debug("G: " + pghqx[1]);
+                    log.debug("H: " + pghqx[2]);
+                    log.debug("X: " + pghqx[4]);
+                    log.debug("Q: " + pghqx[3]);
+                    log.debug("User ID: " + userId);
+                    log.debug("computation for Y1 and Y2");
+                    log.debug("Y1 = " + yS[0]);
+                    log.debug("Y2 = " + yS[1]);
+
+                    //Send Y1 and Y2 to Verifier
+                    CompletableFuture<?> registered = callPolicy.call("Register", deadline,
+                            attemptDeadline -> grpcClient(userId).registerAsync(userId, yS[0], yS[1], attemptDeadline));
+
+                    // join on the key publish, register latency is max(kafka, grpc)
+                    return CompletableFuture.allOf(published, registered).thenApply(done -> pghqx[4]);
+                })
+                .thenApply(secretX -> {
+                    log.info("Register process finished for user id: " + userId);
+
+                    HttpResponse<Optional<RegisterClientResponse>> response = HttpResponse.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(Optional.of(new RegisterClientResponse("Y1 and Y2 successfully registered in the server.\n Login password: "+ secretX)));
+                    return response;
+                })
+                .exceptionally(ex -> failure(ex, RegisterClientResponse::new));
+    }
 
-        } catch (NumberFormatException | BadRequestException ex) {
-            return HttpResponse.badRequest().body(
-                    Optional.of(new RegisterClientResponse(ex.getMessage()))
-            );
-        }  finally {
-            GrpcUtil.shutdownGrpcClient();
-        }
+    @Operation(summary = "Api endpoint to onboard users in bulk, a newline delimited json stream of register" +
+            " requests is answered with a newline delimited json stream of per user results." +
+            " 1. Keys are computed in parallel" +
+            " 2. Public keys are published to the kafka topic per batch" +
+            " 3. Y1 and Y2 are sent to the Verifier server with one RegisterBatch call per batch")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Per user registration results",
+                    content = { @Content(mediaType = APPLICATION_NDJSON,
+                            schema = @Schema(implementation = RegisterBulkClientResponse.class)) })
+    })
+    /**
+     * Api endpoint to onboard users in bulk from a newline delimited json stream of register requests
+     * 1. compute P, G, H, Q, X, Y1 and Y2 of each user on the compute executor, zkp.bulk.parallelism at a time
+     * 2. group the users in batches of zkp.bulk.batch-size
+     * 3. publish the public keys of the batch to the key bus, sent back to back so the producer batches them
+     * 4. register Y1 and Y2 of the batch in the Verifier (shard) with one RegisterBatch stream per Verifier
+     * 5. stream back one result per user, invalid users do not stop the bulk
+     *
+     * @return Publisher<String> of json lines with the RegisterBulkClientResponse of each user
+     */
+    @Post(value = "register/bulk", consumes = MediaType.APPLICATION_JSON_STREAM, produces = APPLICATION_NDJSON)
+    public Publisher<String> registerBulk(@Body Publisher<RegisterClientRequest> requests) {
+        log.info("ZKP - bulk register process started");
+        Scheduler compute = Schedulers.fromExecutor(computeExecutor);
+
+        return Flux.from(requests)
+                .flatMap(request -> Mono.fromCallable(() -> computeBulkEntry(request)).subscribeOn(compute),
+                        bulkParallelism)
+                .bufferTimeout(bulkBatchSize, Duration.ofMillis(100))
+                .concatMap(batch -> Mono.fromFuture(registerBatch(batch)))
+                .flatMapIterable(Function.identity())
+                .map(this::toJsonLine);
     }
 
     @Operation(summary = "Api endpoint to allow any client to send a authentication request " +
@@ -165,78 +281,257 @@ public class ZKPController {
      * 5. Verify authentication with Verifier server
      * 6. Send back to client received answer
      *
-     * @return HttpResponse<Optional<LoginClientResponse>>
+     * Both Verifier calls run under the X-Request-Timeout-Ms budget of the request, capped to zkp.verifier.max-deadline,
+     * zkp.verifier.deadline if absent.
+     *
+     * @return CompletableFuture<HttpResponse<Optional<LoginClientResponse>>>
      */
     @Get(value = "login/{user}/{password}", produces = "application/json")
-    public HttpResponse<Optional<LoginClientResponse>> login(@PathVariable(name = "user") String user,
-                                                             @PathVariable(name = "password") String password) throws InterruptedException {
+    public CompletableFuture<HttpResponse<Optional<LoginClientResponse>>> login(@PathVariable(name = "user") String user,
+                                                             @PathVariable(name = "password") String password,
+                                                             @Header(value = TIMEOUT_HEADER, defaultValue = "0") long timeoutMillis) {
         log.info("ZKP - login process started");
-        try {
-            //2 -  LOGIN PROCESS
-            //Step #1 - generate a random k
-            int rnum = (int)Math.floor(Math.random()*(Integer.MAX_VALUE-1000+1)+1000);
+        Deadline deadline = callPolicy.deadline(timeoutMillis);
+        //2 -  LOGIN PROCESS
+        //Step #1 - generate a random k
+        int rnum = (int)Math.floor(Math.random()*(Integer.MAX_VALUE-1000+1)+1000);
 
-            BigInteger k = BigInteger.valueOf(rnum/1000);
+        BigInteger k = BigInteger.valueOf(rnum/1000);
 
-            log.debug("Generated k with value: " + k);
-            log.debug("received: " + user + " - " + password);
-            //Get public keys
-            BigInteger[] pghqx = keyCache.get(user);
+        log.debug("Generated k with value: " + k);
+        log.debug("received: " + user + " - " + password);
+        //Get public keys
+        BigInteger[] pghqx = keyCache.get(user);
 
-            if(pghqx == null || pghqx.length != 5) {
-                throw new BadRequestException("The user " + user + " keys have not been registered.");
-            }
+        if(pghqx == null || pghqx.length != 5) {
+            return CompletableFuture.completedFuture(HttpResponse.badRequest().body(
+                    Optional.of(new LoginClientResponse("The user " + user + " keys have not been registered."))));
+        }
 
-            BigInteger[] rS = ZKPUtil.computeR1R2(k, pghqx[0], pghqx[1], pghqx[2]);
-            log.debug("computation for R1 and R2");
-            log.debug("R1 = " + rS[0]);
-            log.debug("R2 = " + rS[1]);
+        GrpcClient grpcClient = grpcClient(user);
+
+        return CompletableFuture.supplyAsync(() -> ZKPUtil.computeR1R2(k, pghqx[0], pghqx[1], pghqx[2]), computeExecutor)
+                .thenCompose(rS -> {
+                    log.debug("computation for R1 and R2");
+                    log.debug("R1 = " + rS[0]);
+                    log.debug("R2 = " + rS[1]);
+
+                    //Send R1 and R2 to Verifier
+                    return streaming
+                            ? grpcClient.challengeStream(user, rS[0], rS[1], deadline)
+                            : callPolicy.call("CreateAuthenticationChallenge", deadline,
+                                    attemptDeadline -> grpcClient(user).challengeAsync(user, rS[0], rS[1], attemptDeadline));
+                })
+                .thenApplyAsync(authenticationChallengeResponse -> {
+                    ByteString c = authenticationChallengeResponse.getC();
+                    String authId = authenticationChallengeResponse.getAuthId();
+
+                    log.info("Authentication challenge response received");
+                    log.debug("C = " + BigIntegerCodec.decode(c));
+                    log.debug("AuthID = " + authId);
+
+                    // now that we have the C for the AuthId lets compute the S
+                    // S = K - C.X (mod q)
+                    BigInteger s = ZKPUtil.computeS(k, BigIntegerCodec.decode(c), new BigInteger(password), pghqx[3]);
+                    log.debug("Generated s with value: " + s);
+                    return new Object[]{authId, s};
+                }, computeExecutor)
+                .thenCompose(answer -> {
+                    // now that we have the S let's send it to the Verifier
+                    log.debug("Authentication answer request sent with S = " + answer[1]);
+                    return streaming
+                            ? grpcClient.verifyStream((String) answer[0], (BigInteger) answer[1], deadline)
+                            : callPolicy.call("VerifyAuthentication", deadline,
+                                    attemptDeadline -> grpcClient(user).verifyAsync((String) answer[0],
+                                            (BigInteger) answer[1], attemptDeadline));
+                })
+                .thenApply(authenticationAnswerResponse -> {
+                    String sessionId = authenticationAnswerResponse.getSessionId();
+
+                    String resMessage;
+                    if(sessionId== null || sessionId.isEmpty()) {
+                        resMessage = "Authentication not verified actual R1 and R2 are not equal to the expected R1 and R2";
+                    } else {
+                        resMessage = "Authentication Successfully ended with session ID: " + sessionId;
+                    }
+
+                    HttpResponse<Optional<LoginClientResponse>> response = HttpResponse.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(Optional.of(new LoginClientResponse(resMessage)));
+                    return response;
+                })
+                .exceptionally(ex -> failure(ex, LoginClientResponse::new));
+    }
 
-            grpcClient = GrpcUtil.initGrpcClient();
+    /**
+     * @param user the user id
+     * @return GrpcClient to the Verifier (shard or replica) serving the user
+     */
+    private GrpcClient grpcClient(String user) {
+        return verifier(user)
+                .map(grpcUtil::client)
+                .orElseGet(grpcUtil::client);
+    }
 
-            //Send Y1 and Y2 to Verifier
-            AuthenticationChallengeResponse authenticationChallengeResponse =
-                    grpcClient.challengeSend(user, rS[0], rS[1]);
+    /**
+     * @param user the user id
+     * @return host:port of the shard owning the user, else of its replica, empty for the default Verifier
+     */
+    private Optional<String> verifier(String user) {
+        return shardRouter.route(user).or(() -> replicaRing.route(user));
+    }
 
-            ByteString c = authenticationChallengeResponse.getC();
-            String authId = authenticationChallengeResponse.getAuthId();
+    /**
+     * Publishes and registers the valid users of a bulk batch
+     * @param batch computed keys of the users
+     * @return java.util.concurrent.CompletableFuture completed with the result of every user of the batch
+     */
+    private CompletableFuture<List<RegisterBulkClientResponse>> registerBatch(List<BulkEntry> batch) {
+        List<BulkEntry> valid = batch.stream().filter(entry -> entry.error() == null).collect(Collectors.toList());
+        valid.forEach(entry -> keyCache.put(entry.user(), entry.pghqx()));
+
+        CompletableFuture<Boolean> published = keyBus.publishAll(valid.stream()
+                        .map(entry -> new KeyRecord(entry.user(), entry.pubKeys(), keyVersion.next()))
+                        .collect(Collectors.toList()))
+                .handle((done, ex) -> {
+                    if (ex != null) {
+                        log.warn("Bulk key publish failed: " + ex.getMessage());
+                    }
+                    return ex == null;
+                });
+
+        // one RegisterBatch stream per Verifier (shard or replica)
+        Map<Optional<String>, List<BulkEntry>> byVerifier = valid.stream()
+                .collect(Collectors.groupingBy(entry -> verifier(entry.user())));
+        Set<String> rejected = ConcurrentHashMap.newKeySet();
+        CompletableFuture<?>[] registered = byVerifier.entrySet().stream()
+                .map(verifier -> verifier.getKey().map(grpcUtil::client).orElseGet(grpcUtil::client)
+                        .registerBatchAsync(verifier.getValue().stream()
+                                .map(BulkEntry::registerRequest)
+                                .collect(Collectors.toList()))
+                        .handle((response, ex) -> {
+                            if (ex != null) {
+                                log.warn("Register batch failed: " + ex.getMessage());
+                                verifier.getValue().forEach(entry -> rejected.add(entry.user()));
+                            } else {
+                                rejected.addAll(response.getRejectedUsersList());
+                            }
+                            return null;
+                        }))
+                .toArray(CompletableFuture[]::new);
+
+        return CompletableFuture.allOf(registered).thenCombine(published, (done, isPublished) -> {
+            log.info("Bulk register batch of " + batch.size() + " users finished");
+            return batch.stream().map(entry -> {
+                if (entry.error() != null) {
+                    return new RegisterBulkClientResponse(entry.user(), false, entry.error());
+                }
+                if (rejected.contains(entry.user())) {
+                    return new RegisterBulkClientResponse(entry.user(), false,
+                            "Y1 and Y2 could not be registered in the server.");
+                }
+                if (!isPublished) {
+                    return new RegisterBulkClientResponse(entry.user(), false, "The public keys could not be published.");
+                }
+                return new RegisterBulkClientResponse(entry.user(), true,
+                        "Y1 and Y2 successfully registered in the server.\n Login password: " + entry.pghqx()[4]);
+            }).collect(Collectors.toList());
+        });
+    }
 
-            log.info("Authentication challenge response received");
-            log.debug("C = " + new BigInteger(c.toByteArray()));
-            log.debug("AuthID = " + authId);
+    /**
+     * Computes P, G, H, Q, X, Y1 and Y2 of a bulk user, invalid input is kept as the error of the entry
+     * @param request com.bole.zkpauth.domain.RegisterClientRequest
+     * @return BulkEntry
+     */
+    private static BulkEntry computeBulkEntry(RegisterClientRequest request) {
+        String user = request.getUser() == null ? "" : request.getUser();
+        try {
+            if (user.isEmpty() || request.getNumber() == null) {
+                throw new BadRequestException("Invalid input for the user or number parameter");
+            }
+            BigInteger[] pghqx = ZKPUtil.computePGHQX(ZKPUtil.getBigInteger(request.getNumber()));
+            BigInteger[] yS = ZKPUtil.computeY1Y2(pghqx[1],pghqx[2],pghqx[4],pghqx[0]);
+            return new BulkEntry(user, pghqx, yS, null);
+        } catch (BadRequestException | NumberFormatException ex) {
+            return new BulkEntry(user, null, null, ex.getMessage());
+        }
+    }
 
-            // now that we have the C for the AuthId lets compute the S
-            // S = K - C.X (mod q)
+    /**
+     * Keys of a bulk user, or the reason they could not be computed
+     */
+    private record BulkEntry(String user, BigInteger[] pghqx, BigInteger[] yS, String error) {
 
-            BigInteger s = ZKPUtil.computeS(k, new BigInteger(c.toByteArray()), new BigInteger(password), pghqx[3]);
-            log.debug("Generated s with value: " + s);
+        String pubKeys() {
+            return pghqx[0].toString() + "," + pghqx[1].toString() + "," + pghqx[2] + "," + yS[0] + "," + yS[1];
+        }
 
-            // now that we have the S let's send it to the Verifier
-            log.debug("Authentication answer request sent with S = " + s);
+        RegisterRequest registerRequest() {
+            return RegisterRequest.newBuilder()
+                    .setUser(user)
+                    .setY1(BigIntegerCodec.encode(yS[0]))
+                    .setY2(BigIntegerCodec.encode(yS[1]))
+                    .build();
+        }
+    }
 
-            //Send Y1 and Y2 to Verifier
-            AuthenticationAnswerResponse authenticationAnswerResponse = grpcClient.verifySend(authId, s);
+    private String toJsonLine(RegisterBulkClientResponse response) {
+        try {
+            return objectMapper.writeValueAsString(response) + "\n";
+        } catch (JsonProcessingException ex) {
+            throw new CompletionException(ex);
+        }
+    }
 
-            String sessionId = authenticationAnswerResponse.getSessionId();
+    /**
+     * computePGHQX for the compute executor, checked exceptions are wrapped in a CompletionException
+     */
+    private static BigInteger[] computePGHQX(String number) {
+        try {
+            return ZKPUtil.computePGHQX(ZKPUtil.getBigInteger(number));
+        } catch (BadRequestException ex) {
+            throw new CompletionException(ex);
+        }
+    }
 
-            String resMessage;
-            if(sessionId== null || sessionId.isEmpty()) {
-                resMessage = "Authentication not verified actual R1 and R2 are not equal to the expected R1 and R2";
-            } else {
-                resMessage = "Authentication Successfully ended with session ID: " + sessionId;
-            }
+    /**
+     * Maps a failed Verifier call to 504 past its deadline, 503 when unavailable or overloaded, 502 otherwise,
+     * and invalid input to 400
+     * @param ex failure of the asynchronous chain
+     * @param body builds the response body from the message
+     * @return the error response
+     */
+    private static <T> HttpResponse<Optional<T>> failure(Throwable ex, Function<String, T> body) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof TimeoutException) {
+            return HttpResponse.<Optional<T>>status(HttpStatus.GATEWAY_TIMEOUT)
+                    .body(Optional.of(body.apply("The Verifier did not answer in time.")));
+        }
+        if (cause instanceof StatusRuntimeException) {
+            Status status = ((StatusRuntimeException) cause).getStatus();
+            HttpStatus httpStatus = switch (status.getCode()) {
+                case DEADLINE_EXCEEDED -> HttpStatus.GATEWAY_TIMEOUT;
+                case UNAVAILABLE, RESOURCE_EXHAUSTED -> HttpStatus.SERVICE_UNAVAILABLE;
+                default -> HttpStatus.BAD_GATEWAY;
+            };
+            log.warn("Verifier call failed: " + status);
+            return HttpResponse.<Optional<T>>status(httpStatus)
+                    .body(Optional.of(body.apply("The Verifier call failed with " + status.getCode() + ".")));
+        }
+        return HttpResponse.<Optional<T>>badRequest().body(Optional.of(body.apply(badRequestMessage(ex))));
+    }
 
-            HttpResponse<Optional<LoginClientResponse>> response = HttpResponse.ok()
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(Optional.of(new LoginClientResponse(resMessage)));
-
-            return response;
-        } catch ( NumberFormatException | BadRequestException ex) {
-            return HttpResponse.badRequest().body(
-                    Optional.of(new LoginClientResponse(ex.getMessage())));
-        } finally {
-            log.info("shutting down Grpc channel");
-            GrpcUtil.shutdownGrpcClient();
+    /**
+     * Maps invalid input failures to their message, any other failure is rethrown (500)
+     * @param ex failure of the asynchronous chain
+     * @return the bad request message
+     */
+    private static String badRequestMessage(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof NumberFormatException || cause instanceof BadRequestException) {
+            return cause.getMessage();
         }
+        throw cause instanceof CompletionException ? (CompletionException) cause : new CompletionException(cause);
     }
 }
@@ -0,0 +1,25 @@
+package com.bole.zkpauth.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.NotNull;
+
+
+/**
+ * Register Bulk Client Response pojo with json representation, one per user of the bulk
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+public class RegisterBulkClientResponse {
+    @NotNull
+    private String user;
+
+    private boolean registered;
+
+    @NotNull
+    private String message;
+
+}
@@ -0,0 +1,137 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.*;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side of the AuthenticateStream bidirectional call
+ * Challenge and answer requests of many users are pipelined on one long-lived stream and the responses,
+ * which may come back out of order, are matched to the callers by request id. The error payloads of the server
+ * fail their request with the io.grpc.StatusRuntimeException of their code, a request not answered in time fails
+ * with a java.util.concurrent.TimeoutException and is forgotten.
+ * Once the stream fails every pending request is failed and the stream is closed, a new one has to be opened.
+ */
+@Slf4j
+public class AuthStream {
+
+    private final AtomicLong requestIds = new AtomicLong();
+
+    private final Map<String, CompletableFuture<AuthenticationStreamResponse>> pending = new ConcurrentHashMap<>();
+
+    private final StreamObserver<AuthenticationStreamRequest> requests;
+
+    private final Object lock = new Object();
+
+    private volatile boolean closed;
+
+    AuthStream(AuthGrpc.AuthStub asyncStub) {
+        this.requests = asyncStub.authenticateStream(new StreamObserver<>() {
+            @Override
+            public void onNext(AuthenticationStreamResponse response) {
+                CompletableFuture<AuthenticationStreamResponse> future = pending.remove(response.getRequestId());
+                if (future == null) {
+                    log.warn("Unexpected authentication stream response " + response.getRequestId());
+                    return;
+                }
+                if (response.getPayloadCase() == AuthenticationStreamResponse.PayloadCase.ERROR) {
+                    future.completeExceptionally(Status.fromCodeValue(response.getError().getCode())
+                            .withDescription(response.getError().getDescription())
+                            .asRuntimeException());
+                } else {
+                    future.complete(response);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                log.warn("Authentication stream failed: " + t.getMessage());
+                close(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                close(Status.UNAVAILABLE.withDescription("Authentication stream completed").asRuntimeException());
+            }
+        });
+    }
+
+    /**
+     * @param request com.bole.zkpauth.AuthenticationChallengeRequest
+     * @param timeoutMillis time to wait for the response, 0 or less for no limit
+     * @return java.util.concurrent.CompletableFuture completed with the AuthenticationChallengeResponse
+     */
+    public CompletableFuture<AuthenticationChallengeResponse> challenge(AuthenticationChallengeRequest request,
+                                                                        long timeoutMillis) {
+        return send(AuthenticationStreamRequest.newBuilder().setChallenge(request), timeoutMillis)
+                .thenApply(AuthenticationStreamResponse::getChallenge);
+    }
+
+    /**
+     * @param request com.bole.zkpauth.AuthenticationAnswerRequest
+     * @param timeoutMillis time to wait for the response, 0 or less for no limit
+     * @return java.util.concurrent.CompletableFuture completed with the AuthenticationAnswerResponse
+     */
+    public CompletableFuture<AuthenticationAnswerResponse> answer(AuthenticationAnswerRequest request,
+                                                                  long timeoutMillis) {
+        return send(AuthenticationStreamRequest.newBuilder().setAnswer(request), timeoutMillis)
+                .thenApply(AuthenticationStreamResponse::getAnswer);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Half closes the stream, the pending requests are still answered
+     */
+    public void complete() {
+        synchronized (lock) {
+            if (!closed) {
+                requests.onCompleted();
+            }
+        }
+    }
+
+    /**
+     * @return requests waiting for their response
+     */
+    int pending() {
+        return pending.size();
+    }
+
+    private CompletableFuture<AuthenticationStreamResponse> send(AuthenticationStreamRequest.Builder request,
+                                                                 long timeoutMillis) {
+        String requestId = Long.toString(requestIds.incrementAndGet());
+        CompletableFuture<AuthenticationStreamResponse> future = new CompletableFuture<>();
+        synchronized (lock) {
+            if (closed) {
+                future.completeExceptionally(Status.UNAVAILABLE
+                        .withDescription("Authentication stream closed").asRuntimeException());
+                return future;
+            }
+            pending.put(requestId, future);
+            requests.onNext(request.setRequestId(requestId).build());
+        }
+        if (timeoutMillis > 0) {
+            future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                    .whenComplete((response, ex) -> pending.remove(requestId, future));
+        }
+        return future;
+    }
+
+    private void close(Throwable cause) {
+        synchronized (lock) {
+            closed = true;
+        }
+        pending.values().forEach(future -> future.completeExceptionally(cause));
+        pending.clear();
+    }
+}
@@ -0,0 +1,197 @@
+package com.bole.zkpauth.grpc;
+
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.micronaut.context.annotation.Value;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Deadlines and retries of the Verifier calls
+ * Every call runs under the deadline of the HTTP request it serves, at most zkp.verifier.max-deadline. Attempts failing with UNAVAILABLE or
+ * RESOURCE_EXHAUSTED are retried after the grpc-retry-pushback-ms of the Verifier, or an exponential backoff,
+ * while the deadline allows it. Retries draw on a shared RetryBudget so they cannot amplify an overload.
+ * Calls are not hedged: a Register creates a key epoch and a VerifyAuthentication consumes its challenge, so no call
+ * of the Verifier can be sent twice concurrently.
+ */
+@Slf4j
+@Singleton
+public class CallPolicy {
+
+    private static final Metadata.Key<String> RETRY_PUSHBACK_KEY =
+            Metadata.Key.of("grpc-retry-pushback-ms", Metadata.ASCII_STRING_MARSHALLER);
+
+    private static final long BASE_BACKOFF_MILLIS = 10;
+
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private final Duration defaultBudget;
+
+    private final Duration maxBudget;
+
+    private final int maxAttempts;
+
+    private final RetryBudget retryBudget;
+
+    private final ScheduledExecutorService scheduler;
+
+    public CallPolicy(@Value("${zkp.verifier.deadline:30s}") Duration defaultBudget,
+                      @Value("${zkp.verifier.max-deadline:60s}") Duration maxBudget,
+                      @Value("${zkp.verifier.retry.max-attempts:3}") int maxAttempts,
+                      @Value("${zkp.verifier.retry.budget-ratio:0.1}") double budgetRatio,
+                      @Value("${zkp.verifier.retry.budget-max:10}") int budgetMax) {
+        this.defaultBudget = defaultBudget;
+        this.maxBudget = maxBudget;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBudget = new RetryBudget(budgetRatio, budgetMax);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("grpc-call-policy", true));
+    }
+
+    /**
+     * @param budgetMillis time left to the HTTP request, 0 or less for zkp.verifier.deadline, capped to
+     *                     zkp.verifier.max-deadline as it comes from the client
+     * @return the deadline of the Verifier calls serving the request
+     */
+    public Deadline deadline(long budgetMillis) {
+        long budget = budgetMillis > 0 ? Math.min(budgetMillis, maxBudget.toMillis()) : defaultBudget.toMillis();
+        return Deadline.after(budget, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param method name of the call
+     * @param deadline deadline of every attempt
+     * @param attempt starts an attempt under the deadline, the future failing with the grpc status
+     * @return java.util.concurrent.CompletableFuture completed by the first successful attempt, or failed with
+     * the status of the last attempt
+     */
+    public <T> CompletableFuture<T> call(String method, Deadline deadline,
+                                         Function<Deadline, CompletableFuture<T>> attempt) {
+        retryBudget.deposit();
+        Attempts<T> attempts = new Attempts<>(method, deadline, attempt);
+        attempts.start();
+        return attempts.result;
+    }
+
+    /**
+     * @return extra attempts currently allowed by the retry budget
+     */
+    public double retryTokens() {
+        return retryBudget.tokens();
+    }
+
+    private static boolean retryable(Status.Code code) {
+        return code == Status.Code.UNAVAILABLE || code == Status.Code.RESOURCE_EXHAUSTED;
+    }
+
+    /**
+     * @return the Verifier pushback if any, else an exponential backoff with jitter
+     */
+    private static long backoffMillis(Throwable ex, int attempt) {
+        Metadata trailers = Status.trailersFromThrowable(ex);
+        String pushback = trailers == null ? null : trailers.get(RETRY_PUSHBACK_KEY);
+        if (pushback != null) {
+            try {
+                return Math.max(0, Long.parseLong(pushback));
+            } catch (NumberFormatException ignored) {
+                // malformed hint, backoff below
+            }
+        }
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 10));
+        return (long) (backoff * ThreadLocalRandom.current().nextDouble(0.5, 1.5));
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Successive attempts of one call, completing the call cancels the attempt in flight through its grpc Context
+     */
+    private class Attempts<T> {
+
+        private final String method;
+        private final Deadline deadline;
+        private final Function<Deadline, CompletableFuture<T>> attempt;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final List<Context.CancellableContext> contexts = new ArrayList<>();
+
+        /**
+         * guarded by this
+         */
+        private int started;
+
+        Attempts(String method, Deadline deadline, Function<Deadline, CompletableFuture<T>> attempt) {
+            this.method = method;
+            this.deadline = deadline;
+            this.attempt = attempt;
+            result.whenComplete((value, ex) -> cancelAll());
+        }
+
+        void start() {
+            Context.CancellableContext context;
+            synchronized (this) {
+                started++;
+                context = Context.current().withCancellation();
+                contexts.add(context);
+            }
+            CompletableFuture<T> future;
+            try {
+                future = context.call(() -> attempt.apply(deadline));
+            } catch (Exception ex) {
+                future = CompletableFuture.failedFuture(ex);
+            }
+            future.whenComplete(this::completed);
+        }
+
+        private void completed(T value, Throwable ex) {
+            if (ex == null) {
+                result.complete(value);
+                return;
+            }
+            synchronized (this) {
+                if (result.isDone()) {
+                    return;
+                }
+                Status.Code code = Status.fromThrowable(ex).getCode();
+                if (retryable(code) && started < maxAttempts && retryBudget.tryWithdraw()) {
+                    long backoff = backoffMillis(ex, started);
+                    if (TimeUnit.MILLISECONDS.toNanos(backoff) < deadline.timeRemaining(TimeUnit.NANOSECONDS)) {
+                        log.debug("Retrying " + method + " after " + code + " in " + backoff + " ms");
+                        scheduler.schedule(this::retry, backoff, TimeUnit.MILLISECONDS);
+                        return;
+                    }
+                }
+            }
+            result.completeExceptionally(ex);
+        }
+
+        private void retry() {
+            if (!result.isDone()) {
+                start();
+            }
+        }
+
+        private void cancelAll() {
+            List<Context.CancellableContext> started;
+            synchronized (this) {
+                started = List.copyOf(contexts);
+            }
+            started.forEach(context -> context.cancel(null));
+        }
+    }
+}
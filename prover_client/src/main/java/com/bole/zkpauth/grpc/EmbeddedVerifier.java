@@ -0,0 +1,64 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.bus.KeyPublisher;
+import com.bole.zkpauth.bus.LocalKeyDistributionBus;
+import com.bole.zkpauth.kafka.ShardAssignment;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.micronaut.context.annotation.Context;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.exceptions.ConfigurationException;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Named;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Verifier hosted in the Prover JVM for single node deployments and to measure the pure protocol cost
+ * The VerifierServices of the Verifier, configured from the same VERIFIER_* environment, served on the grpc
+ * in-process transport: the messages are handed over as objects, no serialization and no network.
+ * The public keys reach the KeyCache through the in-process key bus, zkp.bus.type=local is required, and the
+ * verifier serves every user (no shards, no UserFilter). Selected with zkp.verifier.mode=embedded.
+ * The verifications run on the bounded compute executor of the Prover, shared with its own math.
+ */
+@Slf4j
+@Context
+@Requires(property = "zkp.verifier.mode", value = "embedded")
+public class EmbeddedVerifier {
+
+    /**
+     * name of the in-process server
+     */
+    public static final String SERVER_NAME = "zkp-embedded-verifier";
+
+    private final Server server;
+
+    /**
+     * @param keyBus key bus of the Prover, the in-process one
+     * @param computeExecutor compute executor of the Prover, the pool of the verifications
+     * @throws IOException if the in-process server can't start
+     */
+    public EmbeddedVerifier(KeyPublisher keyBus, @Named("compute") ExecutorService computeExecutor)
+            throws IOException {
+        if (!(keyBus instanceof LocalKeyDistributionBus)) {
+            throw new ConfigurationException("The embedded verifier needs the in-process key bus, zkp.bus.type=local");
+        }
+        VerifierServices services = VerifierServices.fromEnv(ShardAssignment.all(), computeExecutor,
+                null, null);
+        this.server = InProcessServerBuilder.forName(SERVER_NAME)
+                .directExecutor()
+                .addService(services.getAuth())
+                .addService(services.getSession())
+                .build()
+                .start();
+        log.info("Embedded verifier started");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        server.shutdownNow();
+        log.info("Embedded verifier closed");
+    }
+}
@@ -1,10 +1,12 @@
 package com.bole.zkpauth.grpc;
 
 import com.bole.zkpauth.*;
-import com.google.protobuf.ByteString;
-import com.bole.zkpauth.*;
+import com.bole.zkpauth.util.BigIntegerCodec;
+import io.grpc.ClientInterceptor;
+import io.grpc.Deadline;
 import io.grpc.ManagedChannel;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -14,6 +16,9 @@ import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 
 import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 /**
@@ -30,13 +35,26 @@ public class GrpcClient {
 
     private AuthGrpc.AuthBlockingStub stub;
 
+    private AuthGrpc.AuthStub asyncStub;
+
+    private AuthStream authStream;
+
     public GrpcClient() {
 
     }
 
-    public GrpcClient(ManagedChannel channel) {
+    /**
+     * @param channel io.grpc.ManagedChannel to the Verifier
+     * @param interceptors applied to every call of the client
+     */
+    public GrpcClient(ManagedChannel channel, ClientInterceptor... interceptors) {
         this.channel = channel;
-        this.stub = AuthGrpc.newBlockingStub(channel);
+        this.stub = AuthGrpc.newBlockingStub(channel).withInterceptors(interceptors);
+        this.asyncStub = AuthGrpc.newStub(channel).withInterceptors(interceptors);
+    }
+
+    public ManagedChannel getChannel() {
+        return channel;
     }
 
 
@@ -60,8 +78,8 @@ public class GrpcClient {
 
             stub.register(RegisterRequest.newBuilder()
                     .setUser(user)
-                    .setY1(ByteString.copyFrom(y1.toByteArray()))
-                    .setY2(ByteString.copyFrom(y2.toByteArray()))
+                    .setY1(BigIntegerCodec.encode(y1))
+                    .setY2(BigIntegerCodec.encode(y2))
                     .build());
 
             log.info("Register process response received");
@@ -85,8 +103,8 @@ public class GrpcClient {
             AuthenticationChallengeRequest authenticationChallengeRequest =
                     AuthenticationChallengeRequest.newBuilder()
                             .setUser(user)
-                            .setR1(ByteString.copyFrom(r1.toByteArray()))
-                            .setR2(ByteString.copyFrom(r2.toByteArray()))
+                            .setR1(BigIntegerCodec.encode(r1))
+                            .setR2(BigIntegerCodec.encode(r2))
                             .build();
 
 
@@ -114,7 +132,7 @@ public class GrpcClient {
             AuthenticationAnswerRequest authenticationAnswerRequest =
                     AuthenticationAnswerRequest.newBuilder()
                             .setAuthId(authId)
-                            .setS(ByteString.copyFrom(s.toByteArray())).build();
+                            .setS(BigIntegerCodec.encode(s)).build();
 
             AuthenticationAnswerResponse authenticationAnswerResponse =
                     stub.verifyAuthentication(authenticationAnswerRequest);
@@ -127,4 +145,198 @@ public class GrpcClient {
         }
 
     }
+
+    /**
+     * Non blocking version of registerSend
+     * @param user the user owner of the keys
+     * @param y1 java.math.BigInteger key
+     * @param y2 java.math.BigInteger key
+     * @return java.util.concurrent.CompletableFuture completed with the Verifier response
+     */
+    public CompletableFuture<RegisterResponse> registerAsync(String user, BigInteger y1, BigInteger y2) {
+        return registerAsync(user, y1, y2, null).exceptionally(e -> {
+            log.warn(Level.WARNING.getName(), "RPC failed: {0}", e);
+            return RegisterResponse.getDefaultInstance();
+        });
+    }
+
+    /**
+     * Non blocking version of registerSend under a deadline
+     * @param user the user owner of the keys
+     * @param y1 java.math.BigInteger key
+     * @param y2 java.math.BigInteger key
+     * @param deadline io.grpc.Deadline of the call, null for none
+     * @return java.util.concurrent.CompletableFuture completed with the Verifier response, completed
+     * exceptionally with the io.grpc.StatusRuntimeException if the call failed
+     */
+    public CompletableFuture<RegisterResponse> registerAsync(String user, BigInteger y1, BigInteger y2,
+                                                             Deadline deadline) {
+        log.info("Register process request sent");
+        CompletableFuture<RegisterResponse> response = new CompletableFuture<>();
+        asyncStub.withDeadline(deadline).register(RegisterRequest.newBuilder()
+                .setUser(user)
+                .setY1(BigIntegerCodec.encode(y1))
+                .setY2(BigIntegerCodec.encode(y2))
+                .build(), completing(response));
+        return response;
+    }
+
+    /**
+     * Registers the Y1 and Y2 of many users on one client streaming call
+     * @param requests com.bole.zkpauth.RegisterRequest of each user
+     * @return java.util.concurrent.CompletableFuture completed with the registered count and the rejected users,
+     * completed exceptionally if the call failed
+     */
+    public CompletableFuture<RegisterBatchResponse> registerBatchAsync(List<RegisterRequest> requests) {
+        log.info("Register batch of " + requests.size() + " users sent");
+        CompletableFuture<RegisterBatchResponse> response = new CompletableFuture<>();
+        StreamObserver<RegisterRequest> batch = asyncStub.registerBatch(completing(response));
+        requests.forEach(batch::onNext);
+        batch.onCompleted();
+        return response;
+    }
+
+    /**
+     * Non blocking version of challengeSend
+     * @param user the user owner of the keys
+     * @param r1 java.math.BigInteger
+     * @param r2 java.math.BigInteger
+     * @return java.util.concurrent.CompletableFuture completed with the AuthenticationChallengeResponse
+     */
+    public CompletableFuture<AuthenticationChallengeResponse> challengeAsync(String user, BigInteger r1, BigInteger r2) {
+        return challengeAsync(user, r1, r2, null).exceptionally(e -> {
+            log.warn(Level.WARNING.getName(), "RPC failed: {0}", e);
+            return AuthenticationChallengeResponse.getDefaultInstance();
+        });
+    }
+
+    /**
+     * Non blocking version of challengeSend under a deadline
+     * @param user the user owner of the keys
+     * @param r1 java.math.BigInteger
+     * @param r2 java.math.BigInteger
+     * @param deadline io.grpc.Deadline of the call, null for none
+     * @return java.util.concurrent.CompletableFuture completed with the AuthenticationChallengeResponse, completed
+     * exceptionally with the io.grpc.StatusRuntimeException if the call failed
+     */
+    public CompletableFuture<AuthenticationChallengeResponse> challengeAsync(String user, BigInteger r1, BigInteger r2,
+                                                                             Deadline deadline) {
+        log.info("Challenge process request sent");
+        CompletableFuture<AuthenticationChallengeResponse> response = new CompletableFuture<>();
+        asyncStub.withDeadline(deadline).createAuthenticationChallenge(AuthenticationChallengeRequest.newBuilder()
+                .setUser(user)
+                .setR1(BigIntegerCodec.encode(r1))
+                .setR2(BigIntegerCodec.encode(r2))
+                .build(), completing(response));
+        return response;
+    }
+
+    /**
+     * Non blocking version of verifySend
+     * @param authId authentication unique id
+     * @param s java.math.BigInteger computed value
+     * @return java.util.concurrent.CompletableFuture completed with the AuthenticationAnswerResponse
+     */
+    public CompletableFuture<AuthenticationAnswerResponse> verifyAsync(String authId, BigInteger s) {
+        return verifyAsync(authId, s, null).exceptionally(e -> {
+            log.warn(Level.WARNING.getName(), "RPC failed: {0}", e);
+            return AuthenticationAnswerResponse.getDefaultInstance();
+        });
+    }
+
+    /**
+     * Non blocking version of verifySend under a deadline
+     * @param authId authentication unique id
+     * @param s java.math.BigInteger computed value
+     * @param deadline io.grpc.Deadline of the call, null for none
+     * @return java.util.concurrent.CompletableFuture completed with the AuthenticationAnswerResponse, completed
+     * exceptionally with the io.grpc.StatusRuntimeException if the call failed
+     */
+    public CompletableFuture<AuthenticationAnswerResponse> verifyAsync(String authId, BigInteger s, Deadline deadline) {
+        log.info("Verify process request sent");
+        CompletableFuture<AuthenticationAnswerResponse> response = new CompletableFuture<>();
+        asyncStub.withDeadline(deadline).verifyAuthentication(AuthenticationAnswerRequest.newBuilder()
+                .setAuthId(authId)
+                .setS(BigIntegerCodec.encode(s))
+                .build(), completing(response));
+        return response;
+    }
+
+    /**
+     * Pipelined version of challengeAsync over the shared authentication stream of the channel
+     * @param user the user owner of the keys
+     * @param r1 java.math.BigInteger
+     * @param r2 java.math.BigInteger
+     * @param deadline io.grpc.Deadline of the request, null for none
+     * @return java.util.concurrent.CompletableFuture completed with the AuthenticationChallengeResponse, completed
+     * exceptionally with the io.grpc.StatusRuntimeException of the error returned by the server or of the stream
+     * failure, or with a java.util.concurrent.TimeoutException past the deadline
+     */
+    public CompletableFuture<AuthenticationChallengeResponse> challengeStream(String user, BigInteger r1, BigInteger r2,
+                                                                              Deadline deadline) {
+        log.info("Challenge process request streamed");
+        return authStream().challenge(AuthenticationChallengeRequest.newBuilder()
+                .setUser(user)
+                .setR1(BigIntegerCodec.encode(r1))
+                .setR2(BigIntegerCodec.encode(r2))
+                .build(), timeoutMillis(deadline));
+    }
+
+    /**
+     * Pipelined version of verifyAsync over the shared authentication stream of the channel
+     * @param authId authentication unique id
+     * @param s java.math.BigInteger computed value
+     * @param deadline io.grpc.Deadline of the request, null for none
+     * @return java.util.concurrent.CompletableFuture completed with the AuthenticationAnswerResponse, completed
+     * exceptionally with the io.grpc.StatusRuntimeException of the error returned by the server or of the stream
+     * failure, or with a java.util.concurrent.TimeoutException past the deadline
+     */
+    public CompletableFuture<AuthenticationAnswerResponse> verifyStream(String authId, BigInteger s,
+                                                                        Deadline deadline) {
+        log.info("Verify process request streamed");
+        return authStream().answer(AuthenticationAnswerRequest.newBuilder()
+                .setAuthId(authId)
+                .setS(BigIntegerCodec.encode(s))
+                .build(), timeoutMillis(deadline));
+    }
+
+    /**
+     * @param deadline io.grpc.Deadline, null for none
+     * @return milliseconds left before the deadline, at least 1, 0 for no deadline
+     */
+    private static long timeoutMillis(Deadline deadline) {
+        return deadline == null ? 0 : Math.max(1, deadline.timeRemaining(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * @return the authentication stream of the channel, opened again if the previous one was closed
+     */
+    private synchronized AuthStream authStream() {
+        if (authStream == null || authStream.isClosed()) {
+            authStream = new AuthStream(asyncStub);
+        }
+        return authStream;
+    }
+
+    /**
+     * Adapts a unary response observer to a CompletableFuture
+     */
+    private static <T> StreamObserver<T> completing(CompletableFuture<T> future) {
+        return new StreamObserver<T>() {
+            @Override
+            public void onNext(T value) {
+                future.complete(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                future.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                // unary call, completed on onNext
+            }
+        };
+    }
 }
@@ -1,40 +1,175 @@
 package com.bole.zkpauth.grpc;
 
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.netty.NettyChannelBuilder;
+import io.micronaut.context.annotation.Value;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
 
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Handle Grpc ManagedChannel
+ * Keeps a pool of long-lived channels per Verifier target, created on first use with keepalive and
+ * idle timeout, and shared by all the requests. Channels are closed with the application context.
+ * With zkp.verifier.transport=epoll the channels use the native Linux transport, and a unix:/path target
+ * connects to a co-located Verifier on its Unix domain socket.
+ * With zkp.verifier.mode=embedded every target is served by the EmbeddedVerifier of this JVM on a single
+ * in-process channel.
+ * The latency of every call is recorded in the LatencyRecorder.
  */
+@Slf4j
+@Singleton
 public class GrpcUtil {
 
-    private static ManagedChannel channel;
-    private static String host = "zkp-verifier";
+    private static final String UNIX_SCHEME = "unix:";
 
-    public static GrpcClient initGrpcClient () {
-        return initGrpcClient(host);
+    private final String defaultTarget;
+    private final int poolSize;
+    private final Duration keepAliveTime;
+    private final Duration keepAliveTimeout;
+    private final Duration idleTimeout;
+    private final boolean embedded;
+    private final LatencyClientInterceptor latencyInterceptor;
+
+    /**
+     * shared epoll event loops, null for the grpc default nio transport
+     */
+    private final EventLoopGroup eventLoopGroup;
+
+    private final Map<String, ChannelPool> pools = new ConcurrentHashMap<>();
+
+    public GrpcUtil(@Value("${zkp.verifier.target:`zkp-verifier:8082`}") String defaultTarget,
+                    @Value("${zkp.verifier.channels:4}") int poolSize,
+                    @Value("${zkp.verifier.keep-alive-time:60s}") Duration keepAliveTime,
+                    @Value("${zkp.verifier.keep-alive-timeout:10s}") Duration keepAliveTimeout,
+                    @Value("${zkp.verifier.idle-timeout:5m}") Duration idleTimeout,
+                    @Value("${zkp.verifier.transport:nio}") String transport,
+                    @Value("${zkp.verifier.mode:remote}") String mode,
+                    LatencyRecorder latencyRecorder) {
+        this.defaultTarget = defaultTarget;
+        this.poolSize = Math.max(1, poolSize);
+        this.keepAliveTime = keepAliveTime;
+        this.keepAliveTimeout = keepAliveTimeout;
+        this.idleTimeout = idleTimeout;
+        this.embedded = "embedded".equalsIgnoreCase(mode);
+        this.latencyInterceptor = new LatencyClientInterceptor(latencyRecorder);
+        this.eventLoopGroup = embedded ? null : epollEventLoopGroup(transport);
+    }
+
+    private static EventLoopGroup epollEventLoopGroup(String transport) {
+        if (!"epoll".equalsIgnoreCase(transport)) {
+            return null;
+        }
+        if (!Epoll.isAvailable()) {
+            log.warn("Native epoll transport not available, using nio: " + Epoll.unavailabilityCause());
+            return null;
+        }
+        return new EpollEventLoopGroup(0, new DefaultThreadFactory("grpc-epoll", true));
+    }
+
+    /**
+     * @return GrpcClient over a pooled channel to the default Verifier
+     */
+    public GrpcClient client() {
+        return client(defaultTarget);
+    }
+
+    /**
+     * @param target host:port of a Verifier (shard)
+     * @return GrpcClient over a pooled channel to the target, round robin between the pool channels
+     */
+    public GrpcClient client(String target) {
+        return pools.computeIfAbsent(embedded ? EmbeddedVerifier.SERVER_NAME : target, this::newPool).next();
     }
 
-    public static GrpcClient initGrpcClient (String host) {
-        GrpcUtil.channel = ManagedChannelBuilder.forAddress(host, 8082)
-                .usePlaintext()
-                .build();
+    private ChannelPool newPool(String target) {
+        if (embedded) {
+            log.info("Grpc in-process channel created for the embedded verifier");
+            return new ChannelPool(new GrpcClient[]{
+                    new GrpcClient(InProcessChannelBuilder.forName(target).directExecutor().build(),
+                            latencyInterceptor)});
+        }
+        GrpcClient[] clients = new GrpcClient[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            clients[i] = new GrpcClient(channelBuilder(target)
+                    .usePlaintext()
+                    .keepAliveTime(keepAliveTime.toMillis(), TimeUnit.MILLISECONDS)
+                    .keepAliveTimeout(keepAliveTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                    .keepAliveWithoutCalls(true)
+                    .idleTimeout(idleTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                    .build(), latencyInterceptor);
+        }
+        log.info("Grpc channel pool of " + poolSize + " created for " + target);
+        return new ChannelPool(clients);
+    }
 
-        return new GrpcClient(channel);
+    /**
+     * @param target host:port, or unix:/path of a Unix domain socket
+     * @return io.grpc.netty.NettyChannelBuilder on the configured transport
+     */
+    private NettyChannelBuilder channelBuilder(String target) {
+        if (target.startsWith(UNIX_SCHEME)) {
+            if (eventLoopGroup == null) {
+                throw new IllegalStateException("Unix domain socket target " + target + " needs the epoll transport");
+            }
+            String path = target.substring(UNIX_SCHEME.length());
+            return NettyChannelBuilder.forAddress(new DomainSocketAddress(path.startsWith("//") ? path.substring(2) : path))
+                    .eventLoopGroup(eventLoopGroup)
+                    .channelType(EpollDomainSocketChannel.class);
+        }
+        NettyChannelBuilder builder = NettyChannelBuilder.forTarget(target);
+        if (eventLoopGroup != null) {
+            builder.eventLoopGroup(eventLoopGroup).channelType(EpollSocketChannel.class);
+        }
+        return builder;
     }
 
-    public static GrpcClient initGrpcClient (ManagedChannel channel) {
-        GrpcUtil.channel = channel;
-        return new GrpcClient(channel);
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ChannelPool pool : pools.values()) {
+            for (GrpcClient client : pool.clients) {
+                client.getChannel().shutdown();
+            }
+        }
+        for (ChannelPool pool : pools.values()) {
+            for (GrpcClient client : pool.clients) {
+                client.getChannel().awaitTermination(1, TimeUnit.SECONDS);
+            }
+        }
+        pools.clear();
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+        log.info("Grpc channel pools shut down");
     }
 
+    /**
+     * Channels to the same target
+     */
+    private static class ChannelPool {
+
+        private final GrpcClient[] clients;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        ChannelPool(GrpcClient[] clients) {
+            this.clients = clients;
+        }
 
-    public static void shutdownGrpcClient () throws InterruptedException {
-        if(GrpcUtil.channel != null) {
-            GrpcUtil.channel.shutdown();
-            GrpcUtil.channel.awaitTermination(1, TimeUnit.SECONDS);
+        GrpcClient next() {
+            return clients[Math.floorMod(counter.getAndIncrement(), clients.length)];
         }
     }
 }
@@ -0,0 +1,21 @@
+package com.bole.zkpauth.grpc;
+
+import io.micronaut.context.annotation.Bean;
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Singleton;
+
+import java.time.Duration;
+
+/**
+ * LatencyRecorder of the Verifier calls, snapshots every zkp.metrics.interval
+ */
+@Factory
+public class LatencyRecorderFactory {
+
+    @Singleton
+    @Bean(preDestroy = "close")
+    public LatencyRecorder latencyRecorder(@Value("${zkp.metrics.interval:10s}") Duration interval) {
+        return new LatencyRecorder(interval.toMillis());
+    }
+}
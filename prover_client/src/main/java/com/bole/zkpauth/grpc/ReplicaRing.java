@@ -0,0 +1,151 @@
+package com.bole.zkpauth.grpc;
+
+import io.micronaut.context.annotation.Value;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * User affine load balancing across the Verifier replicas, rendezvous (highest random weight) hashing
+ * Every user goes to the replica with the highest hash of (user, replica), so its register, challenge and verify
+ * calls always land on the same replica. When a replica joins only the users it now wins move to it, about 1/N
+ * of them, and when one leaves only its own users move.
+ * The public keys P, G, H and the registered Y1, Y2 reach every replica over the key bus, so a user moved by a
+ * membership change logs in on its new replica. Only the challenges live on the replica which issued them: the
+ * logins of the moved users in flight during the change fail and have to start again.
+ * The replicas come from zkp.verifier.replicas, a static host:port list, or from zkp.verifier.replicas-dns,
+ * a host:port whose name resolves to the replica addresses, resolved again every zkp.verifier.replicas-refresh.
+ */
+@Slf4j
+@Singleton
+public class ReplicaRing {
+
+    private final String dnsTarget;
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile Members members = new Members(new String[0], new long[0]);
+
+    public ReplicaRing(@Value("${zkp.verifier.replicas:}") String replicas,
+                       @Value("${zkp.verifier.replicas-dns:}") String dnsTarget,
+                       @Value("${zkp.verifier.replicas-refresh:30s}") Duration refresh) {
+        this.dnsTarget = dnsTarget.trim();
+        if (!this.dnsTarget.isEmpty()) {
+            resolve();
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("replica-dns", true));
+            this.scheduler.scheduleWithFixedDelay(this::resolve, refresh.toMillis(), refresh.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+            update(Arrays.stream(replicas.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList());
+        }
+    }
+
+    /**
+     * @param user the user id
+     * @return host:port of the replica serving the user, empty without replicas
+     */
+    public Optional<String> route(String user) {
+        Members current = members;
+        if (current.addresses.length == 0) {
+            return Optional.empty();
+        }
+        long userHash = hash(user);
+        int best = 0;
+        long bestScore = Long.MIN_VALUE;
+        for (int i = 0; i < current.addresses.length; i++) {
+            long score = mix(userHash ^ current.seeds[i]);
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return Optional.of(current.addresses[best]);
+    }
+
+    /**
+     * @return host:port of the replicas, sorted
+     */
+    public List<String> members() {
+        return List.of(members.addresses);
+    }
+
+    /**
+     * Replaces the replicas, the users of the unchanged replicas stay where they are
+     * @param addresses host:port of the replicas
+     */
+    void update(List<String> addresses) {
+        String[] sorted = new TreeSet<>(addresses).toArray(new String[0]);
+        if (Arrays.equals(sorted, members.addresses)) {
+            return;
+        }
+        long[] seeds = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            seeds[i] = hash(sorted[i]);
+        }
+        members = new Members(sorted, seeds);
+        log.info("Verifier replicas: " + String.join(",", sorted));
+    }
+
+    private void resolve() {
+        int colon = dnsTarget.lastIndexOf(':');
+        String host = colon < 0 ? dnsTarget : dnsTarget.substring(0, colon);
+        String port = colon < 0 ? "8082" : dnsTarget.substring(colon + 1);
+        try {
+            update(Arrays.stream(InetAddress.getAllByName(host))
+                    .map(address -> address instanceof Inet6Address
+                            ? "[" + address.getHostAddress() + "]:" + port
+                            : address.getHostAddress() + ":" + port)
+                    .toList());
+        } catch (UnknownHostException ex) {
+            // keep the last known replicas
+            log.warn("Unable to resolve the verifier replicas " + dnsTarget + ": " + ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * FNV-1a of the chars, finalized by mix
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * murmur3 fmix64
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private record Members(String[] addresses, long[] seeds) { }
+}
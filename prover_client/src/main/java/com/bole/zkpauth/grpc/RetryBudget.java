@@ -0,0 +1,59 @@
+package com.bole.zkpauth.grpc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket limiting the retries and hedges to a ratio of the calls
+ * Every call deposits ratio of a token, every extra attempt withdraws a whole one, up to maxTokens saved.
+ * When the Verifier fails every call the extra attempts stop at ratio of the calls instead of multiplying
+ * the load of an already overloaded Verifier by the attempts per call.
+ */
+public class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+
+    private final long maxBalance;
+
+    private final AtomicLong balance;
+
+    /**
+     * @param ratio extra attempts allowed per call
+     * @param maxTokens extra attempts that can be saved, also the initial balance
+     */
+    public RetryBudget(double ratio, int maxTokens) {
+        this.deposit = Math.round(ratio * SCALE);
+        this.maxBalance = maxTokens * SCALE;
+        this.balance = new AtomicLong(maxBalance);
+    }
+
+    /**
+     * Credits a call
+     */
+    public void deposit() {
+        balance.accumulateAndGet(deposit, (current, add) -> Math.min(maxBalance, current + add));
+    }
+
+    /**
+     * @return true if an extra attempt is allowed, the token is then spent
+     */
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return extra attempts currently allowed
+     */
+    public double tokens() {
+        return balance.get() / (double) SCALE;
+    }
+}
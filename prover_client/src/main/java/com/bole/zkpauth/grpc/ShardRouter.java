@@ -0,0 +1,78 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.kafka.ShardAssignment;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routing table of the sharded Verifier deployment
+ * Each Verifier shard owns a set of zkptopic partitions, the user is routed to the shard owning
+ * the partition its keys were published to (same hashing as the Kafka default partitioner).
+ */
+@Slf4j
+@Singleton
+public class ShardRouter {
+
+    /**
+     * owner address (host:port) by partition
+     */
+    private final Map<Integer, String> owners = new ConcurrentHashMap<>();
+
+    private volatile int numPartitions;
+
+    /**
+     * Applies an assignment published by a Verifier shard, a malformed one is skipped with a warning
+     * and the routing table is left as it was
+     * @param address host:port of the shard
+     * @param assignment numPartitions;p1,p2,...
+     */
+    public void update(String address, String assignment) {
+        if (address == null || address.isBlank() || assignment == null) {
+            log.warn("Shard assignment skipped, missing address or assignment: " + address + " " + assignment);
+            return;
+        }
+        String[] parts = assignment.split(";", -1);
+        int partitionCount;
+        Set<Integer> partitions = new TreeSet<>();
+        try {
+            partitionCount = Integer.parseInt(parts[0].trim());
+            if (parts.length > 1 && !parts[1].isBlank()) {
+                for (String partition : parts[1].split(",")) {
+                    partitions.add(Integer.valueOf(partition.trim()));
+                }
+            }
+        } catch (NumberFormatException ex) {
+            log.warn("Shard assignment of " + address + " skipped, malformed: " + assignment);
+            return;
+        }
+        if (partitionCount <= 0 || partitions.stream().anyMatch(p -> p < 0 || p >= partitionCount)) {
+            log.warn("Shard assignment of " + address + " skipped, partitions out of range: " + assignment);
+            return;
+        }
+        if (partitionCount != numPartitions) {
+            owners.clear();
+            numPartitions = partitionCount;
+        }
+        owners.values().removeIf(address::equals);
+        partitions.forEach(partition -> owners.put(partition, address));
+        log.info("Shard " + address + " owns partitions " + partitions);
+    }
+
+    /**
+     * @param user the user id
+     * @return the address of the owning shard, empty if not sharded or the owner is unknown
+     */
+    public Optional<String> route(String user) {
+        int partitions = numPartitions;
+        if (partitions == 0) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(owners.get(ShardAssignment.partitionFor(user, partitions)));
+    }
+}
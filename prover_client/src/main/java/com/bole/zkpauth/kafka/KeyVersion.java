@@ -0,0 +1,27 @@
+package com.bole.zkpauth.kafka;
+
+import jakarta.inject.Singleton;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic version of the published keys, sent in the KeyRecord.VERSION_HEADER record header
+ * version = producer timestamp (millis) << 20 | sequence within the millisecond
+ * The Verifier applies key records last-write-wins by this version.
+ */
+@Singleton
+public class KeyVersion {
+
+    private static final int SEQUENCE_BITS = 20;
+
+    private final AtomicLong last = new AtomicLong();
+
+    /**
+     * Lock-free, strictly increasing even if the clock goes backwards
+     * @return next version
+     */
+    public long next() {
+        long now = System.currentTimeMillis() << SEQUENCE_BITS;
+        return last.updateAndGet(prev -> Math.max(prev + 1, now));
+    }
+}
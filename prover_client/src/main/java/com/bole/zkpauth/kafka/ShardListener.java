@@ -0,0 +1,26 @@
+package com.bole.zkpauth.kafka;
+
+import com.bole.zkpauth.grpc.ShardRouter;
+import io.micronaut.configuration.kafka.annotation.KafkaKey;
+import io.micronaut.configuration.kafka.annotation.KafkaListener;
+import io.micronaut.configuration.kafka.annotation.OffsetReset;
+import io.micronaut.configuration.kafka.annotation.Topic;
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Inject;
+
+/**
+ * Kafka Listener for the shard assignments published by the Verifier shards
+ * Every prover instance needs the whole routing table, hence a unique group id
+ */
+@Requires(property = "zkp.sharding.enabled", value = "true")
+@KafkaListener(uniqueGroupId = true, offsetReset = OffsetReset.EARLIEST)
+public class ShardListener {
+
+    @Inject
+    ShardRouter shardRouter;
+
+    @Topic("zkpshards")
+    public void receive(@KafkaKey String address, String assignment) {
+        shardRouter.update(address, assignment);
+    }
+}
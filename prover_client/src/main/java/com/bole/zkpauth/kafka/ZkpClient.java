@@ -1,13 +1,20 @@
 package com.bole.zkpauth.kafka;
 
+import com.bole.zkpauth.bus.KeyRecord;
 import io.micronaut.configuration.kafka.annotation.KafkaClient;
 import io.micronaut.configuration.kafka.annotation.KafkaKey;
 import io.micronaut.configuration.kafka.annotation.Topic;
 import io.micronaut.context.annotation.Property;
+import io.micronaut.messaging.annotation.MessageHeader;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Kafka Client to produce messages with help of the micronaut annotations
+ * The send is asynchronous, batching (linger.ms, batch.size), compression and idempotence
+ * are set under kafka.producers.default in the application.yml
  */
 @KafkaClient(
         id = "zkp-client",
@@ -16,8 +23,15 @@ import org.apache.kafka.clients.producer.ProducerConfig;
 )
 public interface ZkpClient {
 
+    /**
+     * Publishes the public keys of the user without blocking the caller
+     * @param user the user owner of the keys, used as record key
+     * @param keys comma separated P,G,H,Y1,Y2
+     * @param version com.bole.zkpauth.kafka.KeyVersion of the keys
+     * @return java.util.concurrent.CompletableFuture completed once the record is acknowledged
+     */
     @Topic(value = "zkptopic")
     @KafkaClient("zkp-consumer")
-    void send(@KafkaKey String user, String keys);
+    CompletableFuture<RecordMetadata> send(@KafkaKey String user, String keys,
+                                           @MessageHeader(KeyRecord.VERSION_HEADER) String version);
 }
-
@@ -0,0 +1,65 @@
+package com.bole.zkpauth.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the bulk register endpoint without a broker nor a Verifier server: the keys go through
+ * the in-process key bus to the embedded verifier
+ * @com.bole.zkpauth.controller.ZKPController
+ */
+@MicronautTest
+@Property(name = "zkp.bus.type", value = "local")
+@Property(name = "zkp.verifier.mode", value = "embedded")
+@Property(name = "zkp.bulk.batch-size", value = "2")
+public class ZKPControllerBulkTest {
+
+    @Inject
+    @Client("/")
+    HttpClient httpClient;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Test
+    public void givenAnNdjsonStream_whenRegisterBulk_thenOneResultLinePerUser() throws Exception {
+        String body = "{\"user\":\"bulk-1\",\"number\":\"104749\"}\n"
+                + "{\"user\":\"\",\"number\":\"104749\"}\n"
+                + "{\"user\":\"bulk-2\",\"number\":\"not a number\"}\n"
+                + "{\"user\":\"bulk-3\",\"number\":\"7919\"}\n";
+
+        String response = httpClient.toBlocking().retrieve(HttpRequest.POST("/zkp/register/bulk", body)
+                .contentType(MediaType.APPLICATION_JSON_STREAM)
+                .accept("application/x-ndjson"));
+
+        Map<String, JsonNode> results = new HashMap<>();
+        for (String line : response.split("\n")) {
+            JsonNode result = objectMapper.readTree(line);
+            results.put(result.path("user").asText(), result);
+        }
+        assertEquals(4, results.size(), response);
+        assertTrue(results.get("bulk-1").get("registered").asBoolean(), response);
+        assertTrue(results.get("bulk-3").get("registered").asBoolean(), response);
+        assertFalse(results.get("").get("registered").asBoolean(), response);
+        assertFalse(results.get("bulk-2").get("registered").asBoolean(), response);
+
+        // registered in the embedded verifier, the user logs in with the password of its result
+        String message = results.get("bulk-1").get("message").asText();
+        String password = message.substring(message.lastIndexOf(' ') + 1);
+        String login = httpClient.toBlocking().retrieve(HttpRequest.GET("/zkp/login/bulk-1/" + password));
+        assertTrue(login.contains("session ID"), login);
+    }
+}
@@ -0,0 +1,75 @@
+package com.bole.zkpauth.controller;
+
+import com.bole.zkpauth.bus.LocalKeyDistributionBus;
+import com.bole.zkpauth.cache.KeyCache;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the login over the authentication stream of the embedded verifier
+ * @com.bole.zkpauth.controller.ZKPController
+ */
+@MicronautTest
+@Property(name = "zkp.bus.type", value = "local")
+@Property(name = "zkp.verifier.mode", value = "embedded")
+@Property(name = "zkp.verifier.streaming", value = "true")
+public class ZKPControllerStreamTest {
+
+    @Inject
+    @Client("/")
+    HttpClient httpClient;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    LocalKeyDistributionBus keyBus;
+
+    @Test
+    public void givenARegisteredUser_whenLoginStreamed_thenSessionCreated() throws Exception {
+        String password = register("stream-1");
+
+        String login = httpClient.toBlocking().retrieve(HttpRequest.GET("/zkp/login/stream-1/" + password));
+
+        assertTrue(login.contains("session ID"), login);
+    }
+
+    @Test
+    public void givenAnErrorOfTheVerifier_whenLoginStreamed_thenBadGateway() throws Exception {
+        String password = register("stream-2");
+        // the verifier no longer holds the parameters of the user, the answer is rejected with INVALID_ARGUMENT
+        KeyCache.getKeys().remove("stream-2");
+
+        HttpClientResponseException thrown = assertThrows(HttpClientResponseException.class,
+                () -> httpClient.toBlocking().retrieve(HttpRequest.GET("/zkp/login/stream-2/" + password)));
+
+        assertEquals(HttpStatus.BAD_GATEWAY, thrown.getStatus());
+        assertTrue(thrown.getResponse().getBody(String.class).orElse("").contains("INVALID_ARGUMENT"));
+    }
+
+    /**
+     * registers the user and waits for the delivery of its keys to the verifier
+     * @return the login password of the user
+     */
+    private String register(String user) throws Exception {
+        String response = httpClient.toBlocking().retrieve(HttpRequest.POST("/zkp/register",
+                "{\"user\":\"" + user + "\",\"number\":\"104749\"}"));
+        assertTrue(keyBus.awaitReady(5, TimeUnit.SECONDS), "Keys not delivered");
+        JsonNode message = objectMapper.readTree(response).get("message");
+        String text = message.asText();
+        return text.substring(text.lastIndexOf(' ') + 1);
+    }
+}
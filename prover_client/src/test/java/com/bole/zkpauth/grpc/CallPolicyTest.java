@@ -0,0 +1,162 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.AuthGrpc;
+import com.bole.zkpauth.AuthenticationAnswerRequest;
+import com.bole.zkpauth.AuthenticationAnswerResponse;
+import com.bole.zkpauth.RegisterRequest;
+import com.bole.zkpauth.RegisterResponse;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the deadlines and retries of the Verifier calls
+ * @com.bole.zkpauth.grpc.CallPolicy
+ * @com.bole.zkpauth.grpc.RetryBudget
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CallPolicyTest {
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    private CallPolicy policy;
+
+    @AfterEach
+    public void shutdown() {
+        if (policy != null) {
+            policy.close();
+        }
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    private GrpcClient start(AuthGrpc.AuthImplBase service) throws Exception {
+        String serverName = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(serverName).addService(service).build().start();
+        channel = InProcessChannelBuilder.forName(serverName).build();
+        return new GrpcClient(channel);
+    }
+
+    @Test
+    public void givenASilentVerifier_whenCall_thenDeadlineExceededWithinBudget() throws Exception {
+        GrpcClient client = start(new AuthGrpc.AuthImplBase() {
+            @Override
+            public void register(RegisterRequest request, StreamObserver<RegisterResponse> responseObserver) {
+                // never answers
+            }
+        });
+        policy = new CallPolicy(Duration.ofSeconds(5), Duration.ofSeconds(10), 3, 0.1, 10);
+
+        long start = System.nanoTime();
+        CompletableFuture<RegisterResponse> response = policy.call("Register", policy.deadline(200),
+                deadline -> client.registerAsync("blopes", BigInteger.ONE, BigInteger.TWO, deadline));
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> response.get(5, TimeUnit.SECONDS));
+        assertEquals(Status.Code.DEADLINE_EXCEEDED, Status.fromThrowable(thrown.getCause()).getCode());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "Deadline not applied");
+    }
+
+    @Test
+    public void givenAnUnavailableVerifier_whenCall_thenRetriedWithinTheBudget() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        GrpcClient client = start(new AuthGrpc.AuthImplBase() {
+            @Override
+            public void register(RegisterRequest request, StreamObserver<RegisterResponse> responseObserver) {
+                if (calls.incrementAndGet() == 1) {
+                    Metadata trailers = new Metadata();
+                    trailers.put(Metadata.Key.of("grpc-retry-pushback-ms", Metadata.ASCII_STRING_MARSHALLER), "1");
+                    responseObserver.onError(Status.RESOURCE_EXHAUSTED.asRuntimeException(trailers));
+                    return;
+                }
+                responseObserver.onNext(RegisterResponse.getDefaultInstance());
+                responseObserver.onCompleted();
+            }
+        });
+        policy = new CallPolicy(Duration.ofSeconds(5), Duration.ofSeconds(10), 3, 0, 1);
+
+        assertNotNull(policy.call("Register", policy.deadline(0),
+                deadline -> client.registerAsync("blopes", BigInteger.ONE, BigInteger.TWO, deadline))
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+        assertEquals(0, policy.retryTokens(), 1e-9);
+
+        // budget spent, the failure is returned without retry
+        calls.set(0);
+        ExecutionException thrown = assertThrows(ExecutionException.class,
+                () -> policy.call("Register", policy.deadline(0),
+                                deadline -> client.registerAsync("blopes", BigInteger.ONE, BigInteger.TWO, deadline))
+                        .get(5, TimeUnit.SECONDS));
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, Status.fromThrowable(thrown.getCause()).getCode());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void givenAnInvalidRequest_whenCall_thenNotRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        GrpcClient client = start(new AuthGrpc.AuthImplBase() {
+            @Override
+            public void verifyAuthentication(AuthenticationAnswerRequest request,
+                                             StreamObserver<AuthenticationAnswerResponse> responseObserver) {
+                calls.incrementAndGet();
+                responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Invalid c key").asRuntimeException());
+            }
+        });
+        policy = new CallPolicy(Duration.ofSeconds(5), Duration.ofSeconds(10), 3, 0.1, 10);
+
+        ExecutionException thrown = assertThrows(ExecutionException.class,
+                () -> policy.call("VerifyAuthentication", policy.deadline(0),
+                                deadline -> client.verifyAsync("authId", BigInteger.ONE, deadline))
+                        .get(5, TimeUnit.SECONDS));
+        assertEquals(Status.Code.INVALID_ARGUMENT, Status.fromThrowable(thrown.getCause()).getCode());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void givenAClientTimeoutAboveTheMax_whenDeadline_thenCapped() {
+        policy = new CallPolicy(Duration.ofSeconds(5), Duration.ofSeconds(10), 3, 0.1, 10);
+        assertTrue(policy.deadline(Long.MAX_VALUE).timeRemaining(TimeUnit.SECONDS) <= 10);
+        assertTrue(policy.deadline(2000).timeRemaining(TimeUnit.MILLISECONDS) <= 2000);
+        long defaultBudget = policy.deadline(0).timeRemaining(TimeUnit.SECONDS);
+        assertTrue(defaultBudget > 3 && defaultBudget <= 5, "Default budget not applied: " + defaultBudget);
+    }
+
+    @Test
+    public void givenCallsAndRetries_whenBudget_thenRetriesBoundedByRatio() {
+        RetryBudget budget = new RetryBudget(0.1, 2);
+        assertTrue(budget.tryWithdraw());
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+
+        int retries = 0;
+        for (int i = 0; i < 100; i++) {
+            budget.deposit();
+            if (budget.tryWithdraw()) {
+                retries++;
+            }
+        }
+        assertEquals(10, retries);
+
+        for (int i = 0; i < 1000; i++) {
+            budget.deposit();
+        }
+        assertEquals(2, budget.tokens(), 1e-9);
+    }
+}
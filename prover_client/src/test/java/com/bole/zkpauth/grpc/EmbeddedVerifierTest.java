@@ -0,0 +1,136 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.AuthenticationAnswerResponse;
+import com.bole.zkpauth.AuthenticationChallengeResponse;
+import com.bole.zkpauth.bus.KeyIngestor;
+import com.bole.zkpauth.bus.KeyRecord;
+import com.bole.zkpauth.bus.LocalKeyDistributionBus;
+import com.bole.zkpauth.util.ZKPUtil;
+import io.micronaut.context.exceptions.ConfigurationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the VerifierServer hosted in the Prover JVM
+ * @com.bole.zkpauth.grpc.EmbeddedVerifier
+ */
+public class EmbeddedVerifierTest {
+
+    // group of order 11 in Z23*
+    private static final BigInteger P = BigInteger.valueOf(23);
+    private static final BigInteger Q = BigInteger.valueOf(11);
+    private static final BigInteger G = BigInteger.valueOf(4);
+    private static final BigInteger H = BigInteger.valueOf(9);
+    private static final BigInteger X = BigInteger.valueOf(6);
+    private static final BigInteger K = BigInteger.valueOf(7);
+
+    private LocalKeyDistributionBus keyBus;
+    private ExecutorService computeExecutor;
+    private EmbeddedVerifier verifier;
+    private LatencyRecorder latencyRecorder;
+    private GrpcUtil grpcUtil;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        keyBus = new LocalKeyDistributionBus(1024);
+        keyBus.start(new KeyIngestor());
+        computeExecutor = Executors.newFixedThreadPool(2);
+        verifier = new EmbeddedVerifier(keyBus, computeExecutor);
+        latencyRecorder = new LatencyRecorder(60_000);
+        grpcUtil = new GrpcUtil("zkp-verifier:8082", 4,
+                Duration.ofSeconds(60), Duration.ofSeconds(10), Duration.ofMinutes(5), "nio", "embedded",
+                latencyRecorder);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        grpcUtil.shutdown();
+        verifier.shutdown();
+        keyBus.shutdown();
+        computeExecutor.shutdownNow();
+        latencyRecorder.close();
+    }
+
+    @Test
+    public void givenAnyTarget_whenClient_thenSameInProcessChannel() {
+        assertSame(grpcUtil.client().getChannel(), grpcUtil.client("localhost:8583").getChannel());
+    }
+
+    @Test
+    public void givenPublishedKeys_whenLogin_thenSessionCreated() throws Exception {
+        GrpcClient client = register("blopes");
+
+        BigInteger[] rS = ZKPUtil.computeR1R2(K, P, G, H);
+        AuthenticationChallengeResponse challenge = client.challengeSend("blopes", rS[0], rS[1]);
+        BigInteger s = ZKPUtil.computeS(K, new BigInteger(challenge.getC().toByteArray()), X, Q);
+        AuthenticationAnswerResponse answer = client.verifySend(challenge.getAuthId(), s);
+
+        assertFalse(answer.getSessionId().isEmpty(), "Valid proof rejected");
+
+        latencyRecorder.rotate();
+        for (String method : new String[]{"zkp_auth.Auth/Register", "zkp_auth.Auth/CreateAuthenticationChallenge",
+                "zkp_auth.Auth/VerifyAuthentication"}) {
+            assertTrue(latencyRecorder.snapshot().latencies().stream().anyMatch(latency ->
+                    latency.method().equals(method) && latency.status().equals("OK") && latency.count() == 1),
+                    "Latency of " + method + " not recorded");
+        }
+    }
+
+    @Test
+    public void givenAWrongPassword_whenLogin_thenNoSession() throws Exception {
+        GrpcClient client = register("blopes");
+
+        BigInteger[] rS = ZKPUtil.computeR1R2(K, P, G, H);
+        AuthenticationChallengeResponse challenge;
+        do {
+            // a challenge multiple of the group order accepts any password
+            challenge = client.challengeSend("blopes", rS[0], rS[1]);
+        } while (new BigInteger(challenge.getC().toByteArray()).mod(Q).signum() == 0);
+        BigInteger s = ZKPUtil.computeS(K, new BigInteger(challenge.getC().toByteArray()), X.add(BigInteger.ONE), Q);
+        AuthenticationAnswerResponse answer = client.verifySend(challenge.getAuthId(), s);
+
+        assertTrue(answer.getSessionId().isEmpty(), "Wrong password accepted");
+    }
+
+    @Test
+    public void givenTheStream_whenLogin_thenSessionCreated() throws Exception {
+        GrpcClient client = register("blopes");
+
+        BigInteger[] rS = ZKPUtil.computeR1R2(K, P, G, H);
+        AuthenticationAnswerResponse answer = client.challengeStream("blopes", rS[0], rS[1], null)
+                .thenCompose(challenge -> client.verifyStream(challenge.getAuthId(),
+                        ZKPUtil.computeS(K, new BigInteger(challenge.getC().toByteArray()), X, Q), null))
+                .get(5, TimeUnit.SECONDS);
+
+        assertFalse(answer.getSessionId().isEmpty(), "Valid proof rejected");
+    }
+
+    @Test
+    public void givenAnotherBus_whenCreated_thenRejected() {
+        assertThrows(ConfigurationException.class,
+                () -> new EmbeddedVerifier(record -> CompletableFuture.completedFuture(null), computeExecutor));
+    }
+
+    /**
+     * publishes the keys, waits for their delivery to the verifier and registers Y1 and Y2
+     */
+    private GrpcClient register(String user) throws InterruptedException {
+        keyBus.publish(new KeyRecord(user, P + "," + G + "," + H, -1));
+        assertTrue(keyBus.awaitReady(5, TimeUnit.SECONDS), "Keys not delivered");
+
+        GrpcClient client = grpcUtil.client();
+        BigInteger[] yS = ZKPUtil.computeY1Y2(G, H, X, P);
+        client.registerSend(user, yS[0], yS[1]);
+        return client;
+    }
+}
@@ -3,7 +3,9 @@ package com.bole.zkpauth.grpc;
 
 import com.bole.zkpauth.*;
 import com.bole.zkpauth.*;
+import com.google.protobuf.ByteString;
 import io.grpc.ManagedChannel;
+import io.grpc.Status;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.stub.StreamObserver;
@@ -19,8 +21,15 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.AdditionalAnswers.delegatesTo;
 import static org.mockito.Mockito.*;
 
@@ -120,6 +129,73 @@ public class GrpcClientTest {
 
                             respObserver.onCompleted();
                         }
+
+                        @Override
+                        public StreamObserver<RegisterRequest> registerBatch(
+                                StreamObserver<RegisterBatchResponse> respObserver) {
+                            RegisterBatchResponse.Builder response = RegisterBatchResponse.newBuilder();
+                            return new StreamObserver<>() {
+                                @Override
+                                public void onNext(RegisterRequest request) {
+                                    if (request.getUser().isEmpty()) {
+                                        response.addRejectedUsers(request.getUser());
+                                    } else {
+                                        response.setRegistered(response.getRegistered() + 1);
+                                    }
+                                }
+
+                                @Override
+                                public void onError(Throwable t) {
+                                }
+
+                                @Override
+                                public void onCompleted() {
+                                    respObserver.onNext(response.build());
+                                    respObserver.onCompleted();
+                                }
+                            };
+                        }
+
+                        @Override
+                        public StreamObserver<AuthenticationStreamRequest> authenticateStream(
+                                StreamObserver<AuthenticationStreamResponse> respObserver) {
+                            return new StreamObserver<>() {
+                                @Override
+                                public void onNext(AuthenticationStreamRequest request) {
+                                    AuthenticationStreamResponse.Builder response = AuthenticationStreamResponse
+                                            .newBuilder()
+                                            .setRequestId(request.getRequestId());
+                                    if ("silent".equals(request.getChallenge().getUser())) {
+                                        return;
+                                    }
+                                    if ("limited".equals(request.getChallenge().getUser())) {
+                                        response.setError(AuthenticationStreamError.newBuilder()
+                                                .setCode(Status.Code.RESOURCE_EXHAUSTED.value())
+                                                .setDescription("Too many challenges"));
+                                    } else if ("expired".equals(request.getAnswer().getAuthId())) {
+                                        response.setError(AuthenticationStreamError.newBuilder()
+                                                .setCode(Status.Code.INVALID_ARGUMENT.value())
+                                                .setDescription("Expired auth id"));
+                                    } else if (request.getPayloadCase() == AuthenticationStreamRequest.PayloadCase.CHALLENGE) {
+                                        response.setChallenge(AuthenticationChallengeResponse.newBuilder()
+                                                .setAuthId("authId-" + request.getChallenge().getUser()));
+                                    } else {
+                                        response.setAnswer(AuthenticationAnswerResponse.newBuilder()
+                                                .setSessionId("session-" + request.getAnswer().getAuthId()));
+                                    }
+                                    respObserver.onNext(response.build());
+                                }
+
+                                @Override
+                                public void onError(Throwable t) {
+                                }
+
+                                @Override
+                                public void onCompleted() {
+                                    respObserver.onCompleted();
+                                }
+                            };
+                        }
                     }));
 
 
@@ -180,4 +256,83 @@ public class GrpcClientTest {
 //
 
     }
+
+    @Test
+    public void givenValidInput_whenChallengeAsync_thenGotAuthId() throws Exception {
+        GrpcClient client = new GrpcClient(channel);
+
+        AuthenticationChallengeResponse response = client.challengeAsync("blopes",
+                BigInteger.valueOf(1l), BigInteger.valueOf(2l)).get(5, TimeUnit.SECONDS);
+
+        assertEquals("authId", response.getAuthId());
+    }
+
+    @Test
+    public void givenValidInput_whenVerifyAsync_thenGotSessionId() throws Exception {
+        GrpcClient client = new GrpcClient(channel);
+
+        AuthenticationAnswerResponse response = client.verifyAsync("authId", BigInteger.valueOf(1))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals("sessionId123", response.getSessionId());
+    }
+
+    @Test
+    public void givenPipelinedRequests_whenStream_thenResponsesMatchedByRequestId() throws Exception {
+        GrpcClient client = new GrpcClient(channel);
+
+        CompletableFuture<AuthenticationChallengeResponse> john = client.challengeStream("john",
+                BigInteger.valueOf(1l), BigInteger.valueOf(2l), null);
+        CompletableFuture<AuthenticationChallengeResponse> blopes = client.challengeStream("blopes",
+                BigInteger.valueOf(1l), BigInteger.valueOf(2l), null);
+        CompletableFuture<AuthenticationAnswerResponse> answer = client.verifyStream("authId-blopes",
+                BigInteger.valueOf(1), null);
+
+        assertEquals("authId-john", john.get(5, TimeUnit.SECONDS).getAuthId());
+        assertEquals("authId-blopes", blopes.get(5, TimeUnit.SECONDS).getAuthId());
+        assertEquals("session-authId-blopes", answer.get(5, TimeUnit.SECONDS).getSessionId());
+    }
+
+    @Test
+    public void givenErrorPayloads_whenStream_thenFailedWithTheirStatus() {
+        GrpcClient client = new GrpcClient(channel);
+
+        CompletableFuture<AuthenticationChallengeResponse> challenge = client.challengeStream("limited",
+                BigInteger.valueOf(1l), BigInteger.valueOf(2l), null);
+        CompletableFuture<AuthenticationAnswerResponse> answer = client.verifyStream("expired",
+                BigInteger.valueOf(1), null);
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> challenge.get(5, TimeUnit.SECONDS));
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, Status.fromThrowable(thrown.getCause()).getCode());
+        thrown = assertThrows(ExecutionException.class, () -> answer.get(5, TimeUnit.SECONDS));
+        assertEquals(Status.Code.INVALID_ARGUMENT, Status.fromThrowable(thrown.getCause()).getCode());
+        assertEquals("Expired auth id", Status.fromThrowable(thrown.getCause()).getDescription());
+    }
+
+    @Test
+    public void givenNoResponseInTime_whenStream_thenTimedOutAndForgotten() {
+        AuthStream stream = new AuthStream(AuthGrpc.newStub(channel));
+
+        CompletableFuture<AuthenticationChallengeResponse> challenge = stream.challenge(
+                AuthenticationChallengeRequest.newBuilder().setUser("silent").build(), 50);
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> challenge.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, thrown.getCause());
+        assertEquals(0, stream.pending());
+    }
+
+    @Test
+    public void givenABatch_whenRegisterBatchAsync_thenGotRegisteredCount() throws Exception {
+        GrpcClient client = new GrpcClient(channel);
+        ByteString y = ByteString.copyFrom(BigInteger.valueOf(2l).toByteArray());
+
+        RegisterBatchResponse response = client.registerBatchAsync(List.of(
+                RegisterRequest.newBuilder().setUser("blopes").setY1(y).setY2(y).build(),
+                RegisterRequest.newBuilder().setUser("").setY1(y).setY2(y).build(),
+                RegisterRequest.newBuilder().setUser("john").setY1(y).setY2(y).build()))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, response.getRegistered());
+        assertEquals(List.of(""), response.getRejectedUsersList());
+    }
 }
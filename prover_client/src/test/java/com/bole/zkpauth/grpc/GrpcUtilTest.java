@@ -0,0 +1,125 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.AuthGrpc;
+import com.bole.zkpauth.RegisterRequest;
+import com.bole.zkpauth.RegisterResponse;
+import io.grpc.Server;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Test class to cover the pooled channels
+ * @com.bole.zkpauth.grpc.GrpcUtil
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class GrpcUtilTest {
+
+    private final LatencyRecorder latencyRecorder = new LatencyRecorder(60_000);
+
+    private GrpcUtil grpcUtil;
+
+    @BeforeEach
+    public void setUp() {
+        grpcUtil = new GrpcUtil("localhost:8582", 2,
+                Duration.ofSeconds(60), Duration.ofSeconds(10), Duration.ofMinutes(5), "nio", "remote", latencyRecorder);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        grpcUtil.shutdown();
+    }
+
+    @Test
+    public void givenManyRequests_whenClient_thenChannelsReused() {
+        Set<GrpcClient> clients = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            clients.add(grpcUtil.client());
+        }
+        assertEquals(2, clients.size(), "Channels not pooled");
+    }
+
+    @Test
+    public void givenAnotherTarget_whenClient_thenAnotherPool() {
+        GrpcClient defaultClient = grpcUtil.client();
+        GrpcClient shardClient = grpcUtil.client("localhost:8583");
+        assertNotSame(defaultClient.getChannel(), shardClient.getChannel());
+    }
+
+    @Test
+    public void givenPooledChannels_whenShutdown_thenChannelsClosed() throws InterruptedException {
+        GrpcClient client = grpcUtil.client();
+        grpcUtil.shutdown();
+        assertTrue(client.getChannel().isShutdown());
+    }
+
+    @Test
+    public void givenAUnixTargetWithNio_whenClient_thenRejected() {
+        assertThrows(IllegalStateException.class, () -> grpcUtil.client("unix:/tmp/zkp-verifier.sock"));
+    }
+
+    @Test
+    public void givenEpoll_whenUnixTarget_thenServedOverTheDomainSocket() throws Exception {
+        assumeTrue(Epoll.isAvailable(), "Native epoll not available");
+        Path socket = Files.createTempDirectory("zkp").resolve("verifier.sock");
+        EpollEventLoopGroup group = new EpollEventLoopGroup(1);
+        Server server = NettyServerBuilder.forAddress(new DomainSocketAddress(socket.toString()))
+                .channelType(EpollServerDomainSocketChannel.class)
+                .bossEventLoopGroup(group)
+                .workerEventLoopGroup(group)
+                .addService(new AuthGrpc.AuthImplBase() {
+                    @Override
+                    public void register(RegisterRequest request, StreamObserver<RegisterResponse> respObserver) {
+                        respObserver.onNext(RegisterResponse.getDefaultInstance());
+                        respObserver.onCompleted();
+                    }
+                })
+                .build()
+                .start();
+        GrpcUtil epollUtil = new GrpcUtil("unix://" + socket, 1,
+                Duration.ofSeconds(60), Duration.ofSeconds(10), Duration.ofMinutes(5), "epoll", "remote", latencyRecorder);
+        try {
+            CompletableFuture<RegisterResponse> response = new CompletableFuture<>();
+            AuthGrpc.newStub(epollUtil.client().getChannel()).register(RegisterRequest.newBuilder()
+                    .setUser("blopes")
+                    .build(), new StreamObserver<>() {
+                @Override
+                public void onNext(RegisterResponse value) {
+                    response.complete(value);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    response.completeExceptionally(t);
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            });
+            assertNotNull(response.get(5, TimeUnit.SECONDS));
+        } finally {
+            epollUtil.shutdown();
+            server.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+    }
+}
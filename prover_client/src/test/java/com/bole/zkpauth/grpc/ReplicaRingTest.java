@@ -0,0 +1,190 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.AuthGrpc;
+import com.bole.zkpauth.AuthenticationAnswerRequest;
+import com.bole.zkpauth.AuthenticationChallengeRequest;
+import com.bole.zkpauth.AuthenticationChallengeResponse;
+import com.bole.zkpauth.RegisterRequest;
+import com.bole.zkpauth.bus.KeyIngestor;
+import com.bole.zkpauth.bus.KeyRecord;
+import com.bole.zkpauth.cache.GroupRegistry;
+import com.bole.zkpauth.cache.KeyCache;
+import com.bole.zkpauth.cache.RegistryStore;
+import com.bole.zkpauth.domain.UserRecord;
+import com.bole.zkpauth.kafka.ShardAssignment;
+import com.bole.zkpauth.session.SessionStore;
+import com.bole.zkpauth.util.BigIntegerCodec;
+import com.bole.zkpauth.util.ZKPUtil;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the user affine load balancing across the Verifier replicas
+ * @com.bole.zkpauth.grpc.ReplicaRing
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ReplicaRingTest {
+
+    private static final int USERS = 20_000;
+
+    private static ReplicaRing ring(String replicas) {
+        return new ReplicaRing(replicas, "", Duration.ofSeconds(30));
+    }
+
+    private static Map<String, String> routes(ReplicaRing ring) {
+        Map<String, String> routes = new HashMap<>();
+        for (int i = 0; i < USERS; i++) {
+            routes.put("user" + i, ring.route("user" + i).orElseThrow());
+        }
+        return routes;
+    }
+
+    @Test
+    public void givenNoReplica_whenRoute_thenDefaultVerifier() {
+        assertTrue(ring(" ").route("blopes").isEmpty());
+    }
+
+    @Test
+    public void givenReplicas_whenRoute_thenSameReplicaAndEvenSpread() {
+        ReplicaRing ring = ring("verifier-0:8082, verifier-1:8082,verifier-2:8082,verifier-3:8082");
+        assertEquals(List.of("verifier-0:8082", "verifier-1:8082", "verifier-2:8082", "verifier-3:8082"),
+                ring.members());
+
+        Map<String, String> routes = routes(ring);
+        assertEquals(routes, routes(ring(
+                "verifier-3:8082,verifier-2:8082,verifier-1:8082,verifier-0:8082")), "Routes depend on the list order");
+
+        Map<String, Integer> load = new HashMap<>();
+        routes.values().forEach(replica -> load.merge(replica, 1, Integer::sum));
+        assertEquals(4, load.size());
+        load.forEach((replica, users) -> assertTrue(Math.abs(users - USERS / 4) < USERS / 4 / 10,
+                replica + " serves " + users + " users"));
+    }
+
+    @Test
+    public void givenAReplicaAdded_whenRoute_thenOnlyItsShareMovesToIt() {
+        ReplicaRing ring = ring("verifier-0:8082,verifier-1:8082,verifier-2:8082,verifier-3:8082");
+        Map<String, String> before = routes(ring);
+        ring.update(List.of("verifier-0:8082", "verifier-1:8082", "verifier-2:8082", "verifier-3:8082",
+                "verifier-4:8082"));
+        Map<String, String> after = routes(ring);
+
+        int moved = 0;
+        for (Map.Entry<String, String> route : before.entrySet()) {
+            if (!route.getValue().equals(after.get(route.getKey()))) {
+                assertEquals("verifier-4:8082", after.get(route.getKey()), "User moved between old replicas");
+                moved++;
+            }
+        }
+        assertTrue(Math.abs(moved - USERS / 5) < USERS / 5 / 10, moved + " users moved");
+    }
+
+    @Test
+    public void givenAReplicaRemoved_whenRoute_thenOnlyItsUsersMove() {
+        ReplicaRing ring = ring("verifier-0:8082,verifier-1:8082,verifier-2:8082,verifier-3:8082");
+        Map<String, String> before = routes(ring);
+        ring.update(List.of("verifier-0:8082", "verifier-1:8082", "verifier-3:8082"));
+        Map<String, String> after = routes(ring);
+
+        before.forEach((user, replica) -> {
+            if (!replica.equals("verifier-2:8082")) {
+                assertEquals(replica, after.get(user), "User of a remaining replica moved");
+            }
+        });
+    }
+
+    @Test
+    public void givenAReplicaAdded_whenAMovedUserLogsIn_thenVerifiedWithTheKeysOfTheBus() throws Exception {
+        // group of order 11 in Z23*
+        BigInteger p = BigInteger.valueOf(23);
+        BigInteger q = BigInteger.valueOf(11);
+        BigInteger g = BigInteger.valueOf(4);
+        BigInteger h = BigInteger.valueOf(9);
+        BigInteger x = BigInteger.valueOf(6);
+        ReplicaRing ring = ring("verifier-0:8082");
+        List<String> grown = List.of("verifier-0:8082", "verifier-1:8082");
+        String user = movedUser(grown);
+
+        Map<String, Server> servers = new HashMap<>();
+        Map<String, ManagedChannel> channels = new HashMap<>();
+        Map<String, RegistryStore> registries = new HashMap<>();
+        for (String replica : grown) {
+            RegistryStore registry = new RegistryStore(60_000, 60_000);
+            registries.put(replica, registry);
+            servers.put(replica, InProcessServerBuilder.forName(replica).directExecutor()
+                    .addService(new VerifierServer(ShardAssignment.all(), Runnable::run, null, new SessionStore(60_000),
+                            null, null, registry))
+                    .build().start());
+            channels.put(replica, InProcessChannelBuilder.forName(replica).directExecutor().build());
+        }
+        try {
+            BigInteger[] yS = ZKPUtil.computeY1Y2(g, h, x, p);
+            AuthGrpc.newBlockingStub(channels.get(ring.route(user).orElseThrow())).register(RegisterRequest.newBuilder()
+                    .setUser(user).setY1(BigIntegerCodec.encode(yS[0])).setY2(BigIntegerCodec.encode(yS[1])).build());
+            // the key bus delivers P, G, H, Y1 and Y2 to every replica, the registering one included, unversioned
+            // as the replicas of this JVM share the KeyCache
+            KeyRecord record = new KeyRecord(user, p + "," + g + "," + h + "," + yS[0] + "," + yS[1], -1);
+            registries.values().forEach(registry ->
+                    new KeyIngestor(KeyCache.getKeys(), null, new GroupRegistry(16), registry).apply(record));
+            assertEquals(UserRecord.FIRST_EPOCH, registries.get("verifier-0:8082").get(user).epoch(),
+                    "Keys of the bus registered again");
+
+            ring.update(grown);
+            assertEquals("verifier-1:8082", ring.route(user).orElseThrow());
+            AuthGrpc.AuthBlockingStub replica = AuthGrpc.newBlockingStub(channels.get(ring.route(user).orElseThrow()));
+            assertFalse(login(replica, user, p, g, h, q, x).isEmpty(), "Moved user rejected by its new replica");
+        } finally {
+            channels.values().forEach(ManagedChannel::shutdownNow);
+            servers.values().forEach(Server::shutdownNow);
+            KeyCache.getKeys().remove(user);
+        }
+    }
+
+    /**
+     * @return a user moving from verifier-0 to verifier-1 when verifier-1 joins
+     */
+    private static String movedUser(List<String> grown) {
+        ReplicaRing ring = new ReplicaRing(String.join(",", grown), "", Duration.ofSeconds(30));
+        for (int i = 0; ; i++) {
+            if (ring.route("moved" + i).orElseThrow().equals("verifier-1:8082")) {
+                return "moved" + i;
+            }
+        }
+    }
+
+    private static String login(AuthGrpc.AuthBlockingStub stub, String user, BigInteger p, BigInteger g,
+                                BigInteger h, BigInteger q, BigInteger x) {
+        BigInteger k = BigInteger.valueOf(7);
+        BigInteger[] rS = ZKPUtil.computeR1R2(k, p, g, h);
+        AuthenticationChallengeResponse challenge = stub.createAuthenticationChallenge(
+                AuthenticationChallengeRequest.newBuilder().setUser(user)
+                        .setR1(BigIntegerCodec.encode(rS[0])).setR2(BigIntegerCodec.encode(rS[1])).build());
+        BigInteger s = ZKPUtil.computeS(k, BigIntegerCodec.decode(challenge.getC()), x, q);
+        return stub.verifyAuthentication(AuthenticationAnswerRequest.newBuilder()
+                .setAuthId(challenge.getAuthId()).setS(BigIntegerCodec.encode(s)).build()).getSessionId();
+    }
+
+    @Test
+    public void givenADnsName_whenResolved_thenAddressesWithPort() {
+        ReplicaRing ring = new ReplicaRing("", "localhost:8082", Duration.ofSeconds(30));
+        try {
+            assertFalse(ring.members().isEmpty());
+            ring.members().forEach(member -> assertTrue(member.endsWith(":8082"), member));
+            assertTrue(ring.route("blopes").isPresent());
+        } finally {
+            ring.close();
+        }
+    }
+}
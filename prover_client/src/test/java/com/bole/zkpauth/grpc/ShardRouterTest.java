@@ -0,0 +1,67 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.kafka.ShardAssignment;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the routing of the users to the Verifier shards
+ * @com.bole.zkpauth.grpc.ShardRouter
+ */
+public class ShardRouterTest {
+
+    private static final String USER = "blopes";
+
+    private static final int PARTITIONS = 4;
+
+    private static final int OWNED = ShardAssignment.partitionFor(USER, PARTITIONS);
+
+    private static final int OTHER = (OWNED + 1) % PARTITIONS;
+
+    @Test
+    public void givenNoAssignment_whenRoute_thenDefaultVerifier() {
+        assertTrue(new ShardRouter().route(USER).isEmpty());
+    }
+
+    @Test
+    public void givenAssignments_whenRoute_thenShardOwningThePartitionOfTheUser() {
+        ShardRouter router = new ShardRouter();
+        router.update("verifier-0:8082", PARTITIONS + ";" + OWNED);
+        router.update("verifier-1:8082", PARTITIONS + ";" + OTHER);
+        assertEquals(Optional.of("verifier-0:8082"), router.route(USER));
+
+        // the partition moved to another shard
+        router.update("verifier-0:8082", PARTITIONS + ";");
+        assertTrue(router.route(USER).isEmpty());
+        router.update("verifier-1:8082", PARTITIONS + ";" + OTHER + ", " + OWNED);
+        assertEquals(Optional.of("verifier-1:8082"), router.route(USER));
+    }
+
+    @Test
+    public void givenAnotherPartitionCount_whenUpdate_thenPreviousOwnersDropped() {
+        ShardRouter router = new ShardRouter();
+        router.update("verifier-0:8082", PARTITIONS + ";" + OWNED);
+        router.update("verifier-1:8082", "1;0");
+        assertEquals(Optional.of("verifier-1:8082"), router.route(USER));
+    }
+
+    @Test
+    public void givenMalformedAssignments_whenUpdate_thenSkippedAndRoutesKept() {
+        ShardRouter router = new ShardRouter();
+        router.update("verifier-0:8082", PARTITIONS + ";" + OWNED);
+
+        router.update("verifier-0:8082", "four;1,2");
+        router.update("verifier-0:8082", PARTITIONS + ";1,x");
+        router.update("verifier-0:8082", "");
+        router.update("verifier-0:8082", null);
+        router.update(null, PARTITIONS + ";" + OTHER);
+        router.update("verifier-0:8082", PARTITIONS + ";" + PARTITIONS);
+        router.update("verifier-0:8082", "0;");
+        router.update("verifier-0:8082", "-1;");
+
+        assertEquals(Optional.of("verifier-0:8082"), router.route(USER));
+    }
+}
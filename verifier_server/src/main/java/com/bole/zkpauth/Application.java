@@ -1,31 +1,117 @@
 package com.bole.zkpauth;
 
-import com.bole.zkpauth.grpc.VerifierServer;
+import com.bole.zkpauth.bus.KeyDistributionBus;
+import com.bole.zkpauth.bus.KeyIngestor;
+import com.bole.zkpauth.bus.LocalKeyDistributionBus;
+import com.bole.zkpauth.cache.GroupRegistry;
+import com.bole.zkpauth.cache.KeyCache;
+import com.bole.zkpauth.cache.UserFilter;
+import com.bole.zkpauth.grpc.LatencyRecorder;
+import com.bole.zkpauth.grpc.ServerExecutors;
+import com.bole.zkpauth.grpc.ServerHook;
+import com.bole.zkpauth.grpc.VerifierServices;
+import com.bole.zkpauth.kafka.KafkaKeyDistributionBus;
+import com.bole.zkpauth.kafka.ShardAssignment;
+import com.bole.zkpauth.kafka.ShardPublisher;
 import com.bole.zkpauth.kafka.ZkpHook;
-import com.bole.zkpauth.kafka.ZkpConsumer;
 import io.grpc.Server;
-import io.grpc.ServerBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ZKP Protocol Verifier Server Application
- * 1. Launch a Kafka consumer thread
- * 2. Launch a GRPC server
+ * 1. Launch the key distribution bus, Kafka consumer thread by default or in-process with VERIFIER_KEY_BUS=local
+ * 2. Wait for the bus to catch up (zkptopic end offsets) so the KeyCache and the keys registered on every replica
+ *    are loaded
+ * 3. Launch a GRPC server, threads and transport configured with com.bole.zkpauth.grpc.ServerExecutors,
+ *    also on the Unix domain socket VERIFIER_UDS_PATH if set (VERIFIER_TRANSPORT=epoll)
+ * 4. Record the latency of the Auth calls, snapshots every VERIFIER_METRICS_INTERVAL_MS served by the Admin service
+ * 5. Shed the unary calls over an adaptive concurrency limit per RPC, unless VERIFIER_ADMISSION=off
+ * 6. Reject the challenges of unknown users with the UserFilter, unless VERIFIER_USER_FILTER_MB=0
+ * 7. Rate limit the challenges per user and per instance, unless VERIFIER_CHALLENGE_LIMIT=off
+ * 8. Serve the sessions issued by the verifications to the API gateways with the Session service
+ * 9. On shutdown, complete the running calls and drain the executors within VERIFIER_SHUTDOWN_GRACE_MS
+ * In sharded mode (VERIFIER_SHARD_PARTITIONS set) the instance owns a subset of the zkptopic partitions
+ * and publishes its assignment for the provers to route users to it.
  */
+@Slf4j
 public class Application {
     public static void main(String[] args) throws IOException, InterruptedException {
 
-        ZkpConsumer zkpConsumer = new ZkpConsumer();
+        ShardAssignment shardAssignment = ShardAssignment.fromEnv();
 
-        new Thread(zkpConsumer).start();
-        Runtime.getRuntime().addShutdownHook(new Thread(new ZkpHook(zkpConsumer)));
+        KeyDistributionBus bus = keyDistributionBus(shardAssignment);
 
-        Server server = ServerBuilder
-                .forPort(8082)
-                .addService(new VerifierServer()).build();
+        UserFilter userFilter = UserFilter.fromEnv();
+
+        ServerExecutors executors = ServerExecutors.fromEnv();
+
+        LatencyRecorder latencyRecorder = new LatencyRecorder(
+                Long.parseLong(System.getenv().getOrDefault("VERIFIER_METRICS_INTERVAL_MS", "10000")));
+
+        VerifierServices services = VerifierServices.fromEnv(shardAssignment, executors.getComputeExecutor(),
+                userFilter, latencyRecorder);
+
+        // the Y1 and Y2 of the key records are registered in the store of the Auth service
+        bus.start(new KeyIngestor(KeyCache.getKeys(), userFilter, GroupRegistry.fromEnv(),
+                services.getRegistryStore()));
+        Runtime.getRuntime().addShutdownHook(new Thread(new ZkpHook(bus)));
+
+        long catchUpTimeout = Long.parseLong(System.getenv().getOrDefault("VERIFIER_CATCHUP_TIMEOUT_MS", "120000"));
+        if (!bus.awaitReady(catchUpTimeout, TimeUnit.MILLISECONDS)) {
+            log.warn("Consumer not caught up after " + catchUpTimeout + " ms, starting grpc server anyway");
+        }
+
+        // provers keep pooled channels alive with pings, allow them without active calls
+        Server server = executors.configure(NettyServerBuilder.forPort(8082))
+                .permitKeepAliveTime(30, TimeUnit.SECONDS)
+                .permitKeepAliveWithoutCalls(true)
+                .addService(services.getAuth())
+                .addService(services.getAdmin())
+                .addService(services.getSession()).build();
 
         server.start();
-        server.awaitTermination();
+        List<Server> servers = new ArrayList<>(List.of(server));
+
+        // co-located provers skip the TCP stack on a Unix domain socket
+        String udsPath = System.getenv("VERIFIER_UDS_PATH");
+        if (udsPath != null && !udsPath.isEmpty()) {
+            servers.add(executors.domainSocketServer(udsPath)
+                    .permitKeepAliveTime(30, TimeUnit.SECONDS)
+                    .permitKeepAliveWithoutCalls(true)
+                    .addService(services.getAuth())
+                    .addService(services.getSession()).build()
+                    .start());
+            log.info("Grpc server listening on the Unix domain socket " + udsPath);
+        }
+
+        long shutdownGrace = Long.parseLong(System.getenv().getOrDefault("VERIFIER_SHUTDOWN_GRACE_MS", "10000"));
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                new ServerHook(servers, executors, latencyRecorder, shutdownGrace)));
+
+        if (shardAssignment.isSharded()) {
+            ShardPublisher.publish(shardAssignment);
+        }
+
+        for (Server running : servers) {
+            running.awaitTermination();
+        }
+    }
+
+    /**
+     * @param shardAssignment com.bole.zkpauth.kafka.ShardAssignment
+     * @return the bus selected by VERIFIER_KEY_BUS, kafka (default) or local
+     */
+    private static KeyDistributionBus keyDistributionBus(ShardAssignment shardAssignment) {
+        if ("local".equalsIgnoreCase(System.getenv("VERIFIER_KEY_BUS"))) {
+            int capacity = Integer.parseInt(System.getenv().getOrDefault("VERIFIER_LOCAL_BUS_CAPACITY", "65536"));
+            return new LocalKeyDistributionBus(capacity);
+        }
+        return new KafkaKeyDistributionBus(shardAssignment);
     }
 }
@@ -0,0 +1,219 @@
+package com.bole.zkpauth.grpc;
+
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threads and transport of the Verifier grpc server
+ * 1. Netty boss and worker event loops for the I/O, explicitly sized, nio or native epoll (Linux),
+ *    epoll also allows serving co-located provers on a Unix domain socket
+ * 2. service executor running the grpc handlers, one of
+ *    cached - grpc default unbounded cached pool (default), the handlers only hand the verification over
+ *             to the compute pool, so the threads stay few and a handler never queues behind another
+ *    bounded - platform threads sized to the cores, caps the handler threads but queues the calls
+ *              behind the running ones, hence a worse tail latency at saturation
+ *    virtual - a virtual thread per call, on JDKs supporting them, bounded otherwise
+ * 3. bounded compute pool for the modular exponentiation of the verification, callers run the work
+ *    when its queue is full so the backlog stays bounded
+ */
+@Slf4j
+public class ServerExecutors {
+
+    public enum Mode { CACHED, BOUNDED, VIRTUAL }
+
+    public enum Transport { NIO, EPOLL }
+
+    private final Mode mode;
+
+    private final Transport transport;
+
+    private final ExecutorService serviceExecutor;
+
+    private final ExecutorService computeExecutor;
+
+    private final EventLoopGroup bossGroup;
+
+    private final EventLoopGroup workerGroup;
+
+    public ServerExecutors(Mode mode, int serviceThreads, int computeThreads, int computeQueue,
+                           int bossThreads, int workerThreads) {
+        this(mode, serviceThreads, computeThreads, computeQueue, Transport.NIO, bossThreads, workerThreads);
+    }
+
+    public ServerExecutors(Mode mode, int serviceThreads, int computeThreads, int computeQueue,
+                           Transport transport, int bossThreads, int workerThreads) {
+        this.transport = transport == Transport.EPOLL && !Epoll.isAvailable() ? Transport.NIO : transport;
+        if (this.transport != transport) {
+            log.warn("Native epoll transport not available, using nio: " + Epoll.unavailabilityCause());
+        }
+        this.mode = mode == Mode.VIRTUAL && !virtualThreadsSupported() ? Mode.BOUNDED : mode;
+        if (this.mode != mode) {
+            log.warn("Virtual threads are not supported by this JDK, using " + serviceThreads + " platform threads");
+        }
+        switch (this.mode) {
+            case VIRTUAL:
+                this.serviceExecutor = newVirtualThreadPerTaskExecutor();
+                break;
+            case BOUNDED:
+                this.serviceExecutor = Executors.newFixedThreadPool(serviceThreads,
+                        new DefaultThreadFactory("verifier-service", true));
+                break;
+            default:
+                this.serviceExecutor = null;
+        }
+        this.computeExecutor = new ThreadPoolExecutor(computeThreads, computeThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(computeQueue), new DefaultThreadFactory("verifier-compute", true),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.bossGroup = eventLoopGroup(bossThreads, "verifier-boss");
+        this.workerGroup = eventLoopGroup(workerThreads, "verifier-worker");
+        log.info("Verifier executors: " + this.mode + " service executor, " + computeThreads + " compute threads, "
+                + bossThreads + " boss and " + workerThreads + " worker " + this.transport + " event loops");
+    }
+
+    private EventLoopGroup eventLoopGroup(int threads, String name) {
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory(name, true);
+        return transport == Transport.EPOLL
+                ? new EpollEventLoopGroup(threads, threadFactory)
+                : new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    /**
+     * Reads VERIFIER_EXECUTOR (cached, bounded or virtual), VERIFIER_EXECUTOR_THREADS, VERIFIER_COMPUTE_THREADS,
+     * VERIFIER_COMPUTE_QUEUE, VERIFIER_TRANSPORT (nio or epoll), VERIFIER_BOSS_THREADS and VERIFIER_WORKER_THREADS,
+     * thread counts default to the cores
+     * @return com.bole.zkpauth.grpc.ServerExecutors
+     */
+    public static ServerExecutors fromEnv() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return new ServerExecutors(
+                Mode.valueOf(System.getenv().getOrDefault("VERIFIER_EXECUTOR", "cached").toUpperCase()),
+                intEnv("VERIFIER_EXECUTOR_THREADS", cores),
+                intEnv("VERIFIER_COMPUTE_THREADS", cores),
+                intEnv("VERIFIER_COMPUTE_QUEUE", 1024),
+                Transport.valueOf(System.getenv().getOrDefault("VERIFIER_TRANSPORT", "nio").toUpperCase()),
+                intEnv("VERIFIER_BOSS_THREADS", 1),
+                intEnv("VERIFIER_WORKER_THREADS", cores));
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Sets the event loops and the service executor of the server
+     * @param builder io.grpc.netty.NettyServerBuilder
+     * @return the same builder
+     */
+    public NettyServerBuilder configure(NettyServerBuilder builder) {
+        return configure(builder, transport == Transport.EPOLL
+                ? EpollServerSocketChannel.class
+                : NioServerSocketChannel.class);
+    }
+
+    /**
+     * @param path file of the Unix domain socket, replaced if it exists
+     * @return io.grpc.netty.NettyServerBuilder listening on the socket, sharing the event loops and executors
+     * @throws IOException if the stale socket file cannot be deleted
+     * @throws IllegalStateException if the transport is not epoll
+     */
+    public NettyServerBuilder domainSocketServer(String path) throws IOException {
+        if (transport != Transport.EPOLL) {
+            throw new IllegalStateException("Unix domain sockets need the epoll transport");
+        }
+        Files.deleteIfExists(Path.of(path));
+        return configure(NettyServerBuilder.forAddress(new DomainSocketAddress(path)),
+                EpollServerDomainSocketChannel.class);
+    }
+
+    private NettyServerBuilder configure(NettyServerBuilder builder, Class<? extends ServerChannel> channelType) {
+        builder.bossEventLoopGroup(bossGroup)
+                .workerEventLoopGroup(workerGroup)
+                .channelType(channelType);
+        if (serviceExecutor != null) {
+            builder.executor(serviceExecutor);
+        }
+        return builder;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public ExecutorService getComputeExecutor() {
+        return computeExecutor;
+    }
+
+    /**
+     * Stops accepting work, the queued and running tasks still complete, to be called once the servers
+     * are terminated
+     */
+    public void shutdown() {
+        if (serviceExecutor != null) {
+            serviceExecutor.shutdown();
+        }
+        computeExecutor.shutdown();
+        bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Waits for the tasks of the service and compute pools to drain after shutdown
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true if both pools terminated
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean terminated = serviceExecutor == null
+                || serviceExecutor.awaitTermination(timeout, unit);
+        return computeExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) && terminated;
+    }
+
+    /**
+     * @return true if Executors.newVirtualThreadPerTaskExecutor is available in the running JDK
+     */
+    static boolean virtualThreadsSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * the build targets Java 17, the JDK 21 factory is looked up at runtime
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create the virtual thread executor", e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.bole.zkpauth.grpc;
+
+import io.grpc.Server;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grpc servers thread hook
+ * 1. stop accepting calls and let the running ones complete, within the grace period
+ * 2. drain the service and compute pools, within the grace period
+ * 3. stop the event loops and the latency snapshots
+ */
+@Slf4j
+public class ServerHook implements Runnable {
+
+    private final List<Server> servers;
+
+    private final ServerExecutors executors;
+
+    private final LatencyRecorder latencyRecorder;
+
+    private final long graceMillis;
+
+    public ServerHook(List<Server> servers, ServerExecutors executors, LatencyRecorder latencyRecorder,
+                      long graceMillis) {
+        this.servers = servers;
+        this.executors = executors;
+        this.latencyRecorder = latencyRecorder;
+        this.graceMillis = graceMillis;
+    }
+
+    @Override
+    public void run() {
+        try {
+            servers.forEach(Server::shutdown);
+            for (Server server : servers) {
+                if (!server.awaitTermination(graceMillis, TimeUnit.MILLISECONDS)) {
+                    log.warn("Grpc server calls still running after " + graceMillis + " ms, cancelling them");
+                    server.shutdownNow();
+                }
+            }
+            executors.shutdown();
+            if (!executors.awaitTermination(graceMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("Verifier executors not drained after " + graceMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            log.error("Error shutting down grpc server", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            latencyRecorder.close();
+        }
+    }
+}
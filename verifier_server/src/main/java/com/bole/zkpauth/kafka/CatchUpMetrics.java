@@ -0,0 +1,65 @@
+package com.bole.zkpauth.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Catch-up phase metrics exposed over JMX as com.bole.zkpauth:type=CatchUp
+ */
+@Slf4j
+public class CatchUpMetrics implements CatchUpMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.bole.zkpauth:type=CatchUp";
+
+    private final long startedAt = System.currentTimeMillis();
+
+    private volatile long lag = -1;
+    private volatile long timeToReadyMillis = -1;
+    private volatile long catchUpRecords;
+
+    @Override
+    public long getLag() {
+        return lag;
+    }
+
+    @Override
+    public long getTimeToReadyMillis() {
+        return timeToReadyMillis;
+    }
+
+    @Override
+    public long getCatchUpRecords() {
+        return catchUpRecords;
+    }
+
+    @Override
+    public boolean isCaughtUp() {
+        return timeToReadyMillis >= 0;
+    }
+
+    void setLag(long lag) {
+        this.lag = lag;
+    }
+
+    void addCatchUpRecords(int count) {
+        catchUpRecords += count;
+    }
+
+    void markReady() {
+        timeToReadyMillis = System.currentTimeMillis() - startedAt;
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            log.warn("Unable to register catch-up metrics", e);
+        }
+    }
+}
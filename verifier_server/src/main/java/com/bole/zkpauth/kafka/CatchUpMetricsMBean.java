@@ -0,0 +1,24 @@
+package com.bole.zkpauth.kafka;
+
+/**
+ * JMX view of the Kafka catch-up phase of the Verifier
+ */
+public interface CatchUpMetricsMBean {
+
+    /**
+     * @return records behind the end offsets of the assigned partitions, -1 if not yet known
+     */
+    long getLag();
+
+    /**
+     * @return milliseconds from the consumer start until the lag reached the threshold, -1 while catching up
+     */
+    long getTimeToReadyMillis();
+
+    /**
+     * @return number of keys bulk loaded during the catch-up phase
+     */
+    long getCatchUpRecords();
+
+    boolean isCaughtUp();
+}
@@ -0,0 +1,80 @@
+package com.bole.zkpauth.kafka;
+
+import com.bole.zkpauth.bus.KeyDistributionBus;
+import com.bole.zkpauth.bus.KeyIngestor;
+import com.bole.zkpauth.bus.KeyRecord;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kafka implementation of the key distribution bus over the zkptopic
+ * Delivery is done by the ZkpConsumer thread, including the catch-up phase.
+ */
+public class KafkaKeyDistributionBus implements KeyDistributionBus {
+
+    private final ShardAssignment shardAssignment;
+
+    private ZkpConsumer zkpConsumer;
+
+    private Producer<String, String> producer;
+
+    public KafkaKeyDistributionBus(ShardAssignment shardAssignment) {
+        this.shardAssignment = shardAssignment;
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> publish(KeyRecord record) {
+        if (producer == null) {
+            final Properties properties = new Properties();
+            properties.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, ZkpConsumer.bootstrapServers());
+            properties.setProperty(ProducerConfig.ACKS_CONFIG, "all");
+            properties.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+            properties.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+            producer = new KafkaProducer<>(properties);
+        }
+        ProducerRecord<String, String> producerRecord = new ProducerRecord<>("zkptopic", record.user(), record.keys());
+        if (record.version() >= 0) {
+            producerRecord.headers().add(KeyRecord.VERSION_HEADER,
+                    String.valueOf(record.version()).getBytes(StandardCharsets.UTF_8));
+        }
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        producer.send(producerRecord, (metadata, exception) -> {
+            if (exception != null) {
+                sent.completeExceptionally(exception);
+            } else {
+                sent.complete(null);
+            }
+        });
+        return sent;
+    }
+
+    @Override
+    public void start(KeyIngestor ingestor) {
+        zkpConsumer = new ZkpConsumer(shardAssignment, ingestor);
+        zkpConsumer.getMetrics().register();
+        new Thread(zkpConsumer).start();
+    }
+
+    @Override
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return zkpConsumer.awaitCaughtUp(timeout, unit);
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        zkpConsumer.shutdown();
+        synchronized (this) {
+            if (producer != null) {
+                producer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.bole.zkpauth.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import java.util.Properties;
+
+/**
+ * Publishes the shard assignment of this Verifier instance to the shards topic,
+ * keyed by its advertised address, so the provers can route each user to the owning shard.
+ */
+@Slf4j
+public class ShardPublisher {
+
+    private ShardPublisher() {
+    }
+
+    /**
+     * @param assignment com.bole.zkpauth.kafka.ShardAssignment of this instance
+     */
+    public static void publish(ShardAssignment assignment) {
+        final Properties properties = new Properties();
+        properties.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, ZkpConsumer.bootstrapServers());
+        properties.setProperty(ProducerConfig.ACKS_CONFIG, "all");
+        properties.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        properties.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+
+        try (Producer<String, String> producer = new KafkaProducer<>(properties)) {
+            producer.send(new ProducerRecord<>(ShardAssignment.SHARDS_TOPIC,
+                    assignment.getAddress(), assignment.toWireFormat()));
+            producer.flush();
+            log.info("Shard assignment published: " + assignment.getAddress() + " -> " + assignment.toWireFormat());
+        }
+    }
+}
@@ -1,29 +1,86 @@
 package com.bole.zkpauth.kafka;
 
-import com.bole.zkpauth.cache.KeyCache;
+import com.bole.zkpauth.bus.KeyIngestor;
+import com.bole.zkpauth.bus.KeyRecord;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.*;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
 import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.serialization.StringDeserializer;
 
-import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Kafka Consumer thread to listening for incoming new messages
  * which will be converted to BigInteger array and added to the
  * server cache ready to be used for the ZKP.
+ * In sharded mode only the owned partitions are assigned and read from the beginning.
+ *
+ * Startup runs a catch-up phase: newly assigned partitions are read from the beginning with large polls
+ * and each poll is bulk inserted in the KeyCache, without per record logging, until the lag drops
+ * to the threshold. Only then the consumer is reported as caught up.
+ *
+ * Records carrying a version header are applied last-write-wins, stale or duplicate records are dropped,
+ * so ingestion can be parallel and at-least-once.
  */
 @Slf4j
 public class ZkpConsumer  implements Runnable {
 
+    private static final String TOPIC = "zkptopic";
+
     private CountDownLatch countDownLatch;
     private Consumer<String, String> consumer;
 
+    private final ShardAssignment shardAssignment;
+
+    private final KeyIngestor ingestor;
+
+    private final CountDownLatch caughtUp = new CountDownLatch(1);
+
+    private final CatchUpMetrics metrics = new CatchUpMetrics();
+
+    /**
+     * partitions already loaded from the beginning by this instance
+     */
+    private final Set<TopicPartition> loaded = new HashSet<>();
+
+    private final int maxPollRecords = Integer.parseInt(
+            System.getenv().getOrDefault("VERIFIER_CATCHUP_MAX_POLL_RECORDS", "10000"));
+
+    private final long lagThreshold = Long.parseLong(
+            System.getenv().getOrDefault("VERIFIER_CATCHUP_LAG_THRESHOLD", "100"));
+
+    public ZkpConsumer() {
+        this(ShardAssignment.all(), new KeyIngestor());
+    }
+
+    public ZkpConsumer(ShardAssignment shardAssignment, KeyIngestor ingestor) {
+        this.shardAssignment = shardAssignment;
+        this.ingestor = ingestor;
+    }
+
+    /**
+     * @return kafka bootstrap servers from KAFKA_SERVICE_HOST, kafka:9092 by default
+     */
+    static String bootstrapServers() {
+        return System.getenv().getOrDefault("KAFKA_SERVICE_HOST", "kafka:9092");
+    }
 
     @Override
     public void run() {
@@ -31,19 +88,41 @@ public class ZkpConsumer  implements Runnable {
         final Properties properties = new Properties();
 
         // Setup Producer Properties
-        String bootstrapServers = "kafka:9092";
+        String bootstrapServers = bootstrapServers();
         properties.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         properties.setProperty(ConsumerConfig.GROUP_ID_CONFIG, "zkp-consumer");
         properties.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        properties.setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(maxPollRecords));
         properties.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
         properties.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
 
         consumer = new KafkaConsumer<>(properties);
-        consumer.subscribe(Collections.singleton("zkptopic"));
+        if (shardAssignment.isSharded()) {
+            List<TopicPartition> owned = shardAssignment.getPartitions().stream()
+                    .map(partition -> new TopicPartition(TOPIC, partition))
+                    .collect(Collectors.toList());
+            consumer.assign(owned);
+            seekToBeginning(owned);
+            log.info("Sharded consumer assigned to partitions: " + shardAssignment.getPartitions());
+        } else {
+            consumer.subscribe(Collections.singleton(TOPIC), new ConsumerRebalanceListener() {
+                @Override
+                public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                    loaded.removeAll(partitions);
+                }
+
+                @Override
+                public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                    seekToBeginning(partitions);
+                }
+            });
+        }
 
         final Duration pollTimeout = Duration.ofMillis(100);
 
         try {
+            catchUp(pollTimeout);
+
             while (true) {
                 final ConsumerRecords<String, String> consumerRecords = consumer.poll(pollTimeout);
                 for (final ConsumerRecord<String, String> consumerRecord : consumerRecords) {
@@ -56,15 +135,10 @@ public class ZkpConsumer  implements Runnable {
                             + " and offset: " + consumerRecord.offset()
                             + " at " + new Date(consumerRecord.timestamp()));
 
-                    String[] keys = value.split(",");
-                    BigInteger[] bKeys = new BigInteger[keys.length];
-
-                    for (int i=0; i<keys.length ;i++) {
-                        bKeys[i] = new BigInteger(String.valueOf(keys[i]));
-                    }
-                    KeyCache.getKeys().put(key,bKeys);
+                    ingestor.apply(new KeyRecord(key, value, versionOf(consumerRecord)));
 
                 }
+                metrics.setLag(currentLag());
             }
         } catch (WakeupException e) {
             log.debug("Consumer poll woke up");
@@ -74,7 +148,112 @@ public class ZkpConsumer  implements Runnable {
         }
     }
 
-    void shutdown() throws InterruptedException {
+    /**
+     * Reads the assigned partitions up to their end offsets, bulk loading every poll in the KeyCache
+     * @param pollTimeout java.time.Duration
+     */
+    private void catchUp(Duration pollTimeout) {
+        try {
+            if (consumer.partitionsFor(TOPIC).isEmpty()) {
+                log.info("Topic " + TOPIC + " has no partitions, nothing to catch up");
+                ready();
+                return;
+            }
+        } catch (TimeoutException e) {
+            log.warn("Unable to fetch the " + TOPIC + " partitions, catching up on assignment");
+        }
+
+        long lag = -1;
+        while (lag < 0 || lag > lagThreshold) {
+            final ConsumerRecords<String, String> consumerRecords = consumer.poll(pollTimeout);
+            if (!consumerRecords.isEmpty()) {
+                List<KeyRecord> batch = new ArrayList<>(consumerRecords.count());
+                for (final ConsumerRecord<String, String> consumerRecord : consumerRecords) {
+                    batch.add(new KeyRecord(consumerRecord.key(), consumerRecord.value(), versionOf(consumerRecord)));
+                }
+                ingestor.applyBulk(batch);
+                metrics.addCatchUpRecords(consumerRecords.count());
+            }
+            lag = endOffsetsLag();
+            metrics.setLag(lag);
+        }
+        ready();
+    }
+
+    private void ready() {
+        metrics.markReady();
+        caughtUp.countDown();
+        log.info("Consumer caught up in " + metrics.getTimeToReadyMillis() + " ms with "
+                + metrics.getCatchUpRecords() + " records loaded");
+    }
+
+    private void seekToBeginning(Collection<TopicPartition> partitions) {
+        List<TopicPartition> fresh = partitions.stream()
+                .filter(partition -> !loaded.contains(partition))
+                .collect(Collectors.toList());
+        consumer.seekToBeginning(fresh);
+        loaded.addAll(fresh);
+    }
+
+    /**
+     * @return sum of end offset minus position for the assigned partitions, -1 while nothing is assigned
+     */
+    private long endOffsetsLag() {
+        Set<TopicPartition> assignment = consumer.assignment();
+        if (assignment.isEmpty()) {
+            return -1;
+        }
+        long lag = 0;
+        for (Map.Entry<TopicPartition, Long> endOffset : consumer.endOffsets(assignment).entrySet()) {
+            lag += Math.max(0, endOffset.getValue() - consumer.position(endOffset.getKey()));
+        }
+        return lag;
+    }
+
+    /**
+     * @return lag from the last fetch metadata, no remote call
+     */
+    private long currentLag() {
+        long lag = 0;
+        for (TopicPartition partition : consumer.assignment()) {
+            OptionalLong partitionLag = consumer.currentLag(partition);
+            lag += partitionLag.orElse(0);
+        }
+        return lag;
+    }
+
+    /**
+     * @param consumerRecord org.apache.kafka.clients.consumer.ConsumerRecord
+     * @return the version carried in the record header, -1 for records of producers without versions
+     */
+    private static long versionOf(ConsumerRecord<String, String> consumerRecord) {
+        Header header = consumerRecord.headers().lastHeader(KeyRecord.VERSION_HEADER);
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(new String(header.value(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Waits for the catch-up phase to end
+     * @param timeout maximum time to wait
+     * @param unit java.util.concurrent.TimeUnit
+     * @return true if caught up, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitCaughtUp(long timeout, TimeUnit unit) throws InterruptedException {
+        return caughtUp.await(timeout, unit);
+    }
+
+    public CatchUpMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void shutdown() throws InterruptedException {
         consumer.wakeup();
         countDownLatch.await();
         log.info("Consumer closed");
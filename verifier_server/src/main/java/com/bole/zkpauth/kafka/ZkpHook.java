@@ -1,23 +1,24 @@
 package com.bole.zkpauth.kafka;
 
+import com.bole.zkpauth.bus.KeyDistributionBus;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Kafka Consumer thread hook
+ * Key distribution bus thread hook
  */
 @Slf4j
 public class ZkpHook implements  Runnable {
 
-    private final ZkpConsumer zkpConsumer;
+    private final KeyDistributionBus bus;
 
-    public ZkpHook(final ZkpConsumer zkpConsumer) {
-        this.zkpConsumer = zkpConsumer;
+    public ZkpHook(final KeyDistributionBus bus) {
+        this.bus = bus;
     }
 
     @Override
     public void run() {
         try {
-            zkpConsumer.shutdown();
+            bus.shutdown();
         } catch (InterruptedException e) {
             log.error("Error shutting down consumer", e);
         }
@@ -0,0 +1,233 @@
+package com.bole.zkpauth.grpc;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.bole.zkpauth.AuthGrpc;
+import com.bole.zkpauth.AuthenticationAnswerRequest;
+import com.bole.zkpauth.AuthenticationAnswerResponse;
+import com.bole.zkpauth.AuthenticationChallengeRequest;
+import com.bole.zkpauth.AuthenticationChallengeResponse;
+import com.bole.zkpauth.RegisterRequest;
+import com.bole.zkpauth.cache.KeyCache;
+import com.bole.zkpauth.domain.GroupParameters;
+import com.bole.zkpauth.kafka.ShardAssignment;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Overload benchmark of the admission control, tagged benchmark so only run on demand:
+ * mvn test -Pbenchmark -Dtest=AdmissionBenchmark
+ *
+ * The capacity in logins (challenge + verify) per second is measured first by BENCH_CLIENTS closed-loop clients,
+ * then an open-loop generator offers BENCH_OVERLOAD times that rate, clients giving up after BENCH_DEADLINE_MS,
+ * with and without the admission control. Goodput counts the logins completed within the deadline, the latency
+ * percentiles are of those logins.
+ * Y1 = Y2 = 2 keep the y^c of the verification, c up to 2^21, to a shift and a modulo of a few hundred microseconds.
+ * Environment: BENCH_SECONDS (10), BENCH_OVERLOAD (3), BENCH_DEADLINE_MS (1000), BENCH_CLIENTS (64)
+ * @com.bole.zkpauth.grpc.AdmissionControlInterceptor
+ */
+@Tag("benchmark")
+public class AdmissionBenchmark {
+
+    private static final String USER = "bench";
+
+    @AfterEach
+    public void removeKeys() {
+        KeyCache.getKeys().remove(USER);
+    }
+
+    @Test
+    public void givenAnOverload_whenAdmittedOrNot_thenGoodputAndLatenciesPrinted() throws Exception {
+        int seconds = Integer.parseInt(System.getenv().getOrDefault("BENCH_SECONDS", "10"));
+        double overload = Double.parseDouble(System.getenv().getOrDefault("BENCH_OVERLOAD", "3"));
+        long deadlineMillis = Long.parseLong(System.getenv().getOrDefault("BENCH_DEADLINE_MS", "1000"));
+        int clients = Integer.parseInt(System.getenv().getOrDefault("BENCH_CLIENTS", "64"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        Logger logger = (Logger) LoggerFactory.getLogger("com.bole.zkpauth");
+        Level level = logger.getLevel();
+        logger.setLevel(Level.WARN);
+        KeyCache.getKeys().put(USER, new GroupParameters(BigInteger.valueOf(104729), BigInteger.valueOf(4),
+                BigInteger.valueOf(16)));
+
+        double capacity = 0;
+        System.out.printf("%d cores, %.0fx overload, %d ms deadline, %d s per run%n",
+                cores, overload, deadlineMillis, seconds);
+        System.out.printf("%-10s %10s %10s %10s %10s %10s %10s%n",
+                "admission", "offered/s", "goodput/s", "shed/s", "late/s", "p50 ms", "p99 ms");
+        for (String mode : new String[]{"capacity", "off", "adaptive"}) {
+            ServerExecutors executors = new ServerExecutors(ServerExecutors.Mode.BOUNDED, cores, cores, 1024, 1, cores);
+            ServerServiceDefinition service = new VerifierServer(ShardAssignment.all(),
+                    executors.getComputeExecutor()).bindService();
+            if ("adaptive".equals(mode)) {
+                service = ServerInterceptors.intercept(service, new AdmissionControlInterceptor(20, 4, 1000));
+            }
+            Server server = executors.configure(NettyServerBuilder.forPort(0)).addService(service).build().start();
+            ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", server.getPort())
+                    .usePlaintext()
+                    .build();
+            try {
+                AuthGrpc.AuthStub stub = AuthGrpc.newStub(channel);
+                AuthGrpc.newBlockingStub(channel).register(RegisterRequest.newBuilder()
+                        .setUser(USER).setY1(bytes(BigInteger.TWO)).setY2(bytes(BigInteger.TWO))
+                        .build());
+                if ("capacity".equals(mode)) {
+                    // closed loop with enough logins in flight to saturate the server
+                    Result result = closedLoop(stub, clients, seconds, deadlineMillis);
+                    capacity = result.completed.get() / (double) seconds;
+                    result.print(mode, capacity, seconds);
+                    assertTrue(capacity > 0, "No login completed");
+                } else {
+                    openLoop(stub, 1, 1000.0, deadlineMillis);
+                    openLoop(stub, seconds, overload * capacity, deadlineMillis)
+                            .print(mode, overload * capacity, seconds);
+                }
+            } finally {
+                channel.shutdownNow();
+                server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+                executors.shutdown();
+            }
+        }
+        logger.setLevel(level);
+    }
+
+    private static Result closedLoop(AuthGrpc.AuthStub stub, int clients, int seconds, long deadlineMillis)
+            throws InterruptedException {
+        Result result = new Result();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for (int i = 0; i < clients; i++) {
+            loopLogin(stub, end, deadlineMillis, result);
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds) + deadlineMillis);
+        return result;
+    }
+
+    private static void loopLogin(AuthGrpc.AuthStub stub, long end, long deadlineMillis, Result result) {
+        if (System.nanoTime() < end) {
+            login(stub, deadlineMillis, result, () -> loopLogin(stub, end, deadlineMillis, result));
+        }
+    }
+
+    private static Result openLoop(AuthGrpc.AuthStub stub, int seconds, double rate, long deadlineMillis)
+            throws InterruptedException {
+        Result result = new Result();
+        ScheduledExecutorService generator = Executors.newSingleThreadScheduledExecutor();
+        long start = System.nanoTime();
+        AtomicLong sent = new AtomicLong();
+        generator.scheduleAtFixedRate(() -> {
+            long due = (long) ((System.nanoTime() - start) / 1e9 * rate);
+            while (sent.get() < due) {
+                sent.incrementAndGet();
+                login(stub, deadlineMillis, result, () -> { });
+            }
+        }, 0, 1, TimeUnit.MILLISECONDS);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        generator.shutdownNow();
+        Thread.sleep(deadlineMillis + 100);
+        return result;
+    }
+
+    /**
+     * challenge then verify, both within the same deadline
+     */
+    private static void login(AuthGrpc.AuthStub stub, long deadlineMillis, Result result, Runnable then) {
+        long start = System.nanoTime();
+        AuthGrpc.AuthStub deadlineStub = stub.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS);
+        deadlineStub.createAuthenticationChallenge(AuthenticationChallengeRequest.newBuilder()
+                .setUser(USER).setR1(bytes(BigInteger.valueOf(3))).setR2(bytes(BigInteger.valueOf(5))).build(),
+                new Observer<>(result, then) {
+                    @Override
+                    public void onNext(AuthenticationChallengeResponse challenge) {
+                        deadlineStub.verifyAuthentication(AuthenticationAnswerRequest.newBuilder()
+                                .setAuthId(challenge.getAuthId()).setS(bytes(BigInteger.valueOf(7))).build(),
+                                new Observer<AuthenticationAnswerResponse>(result, then) {
+                                    @Override
+                                    public void onNext(AuthenticationAnswerResponse answer) {
+                                        long latency = System.nanoTime() - start;
+                                        if (latency <= TimeUnit.MILLISECONDS.toNanos(deadlineMillis)) {
+                                            result.completed.incrementAndGet();
+                                            result.latencies.add(latency);
+                                        } else {
+                                            result.late.incrementAndGet();
+                                        }
+                                        then.run();
+                                    }
+                                });
+                    }
+                });
+    }
+
+    private abstract static class Observer<T> implements StreamObserver<T> {
+
+        private final Result result;
+        private final Runnable then;
+
+        Observer(Result result, Runnable then) {
+            this.result = result;
+            this.then = then;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            Status.Code code = Status.fromThrowable(t).getCode();
+            if (code == Status.Code.RESOURCE_EXHAUSTED) {
+                result.shed.incrementAndGet();
+            } else {
+                result.late.incrementAndGet();
+            }
+            then.run();
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+
+    private static class Result {
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong shed = new AtomicLong();
+        final AtomicLong late = new AtomicLong();
+        final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+
+        void print(String mode, double offered, int seconds) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            System.out.printf("%-10s %10.0f %10.0f %10.0f %10.0f %10.2f %10.2f%n", mode, offered,
+                    completed.get() / (double) seconds, shed.get() / (double) seconds,
+                    late.get() / (double) seconds, percentile(sorted, 0.50), percentile(sorted, 0.99));
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static ByteString bytes(BigInteger value) {
+        return ByteString.copyFrom(value.toByteArray());
+    }
+}
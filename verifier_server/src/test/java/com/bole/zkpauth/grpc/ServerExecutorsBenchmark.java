@@ -0,0 +1,145 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.AuthGrpc;
+import com.bole.zkpauth.AuthenticationAnswerRequest;
+import com.bole.zkpauth.AuthenticationChallengeRequest;
+import com.bole.zkpauth.AuthenticationChallengeResponse;
+import com.bole.zkpauth.RegisterRequest;
+import com.bole.zkpauth.cache.KeyCache;
+import com.bole.zkpauth.domain.GroupParameters;
+import com.bole.zkpauth.kafka.ShardAssignment;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.netty.NettyServerBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Load benchmark of the grpc server executor modes, tagged benchmark so only run on demand:
+ * mvn test -Pbenchmark -Dtest=ServerExecutorsBenchmark
+ *
+ * Each mode serves closed-loop clients doing challenge + verify, with keys of the size the prover computes
+ * for the number 104749, for the given time, the latency percentiles of the full login are printed per mode.
+ * Environment: BENCH_CLIENTS (16), BENCH_SECONDS (10), BENCH_WARMUP (3), BENCH_MODES (cached,bounded,virtual)
+ * @com.bole.zkpauth.grpc.ServerExecutors
+ */
+@Tag("benchmark")
+public class ServerExecutorsBenchmark {
+
+    private static final String USER = "bench";
+
+    @AfterEach
+    public void removeKeys() {
+        KeyCache.getKeys().remove(USER);
+    }
+
+    @Test
+    public void givenEachExecutorMode_whenLoggingInUnderLoad_thenLatenciesPrinted() throws Exception {
+        int clients = Integer.parseInt(System.getenv().getOrDefault("BENCH_CLIENTS", "16"));
+        int seconds = Integer.parseInt(System.getenv().getOrDefault("BENCH_SECONDS", "10"));
+        int warmup = Integer.parseInt(System.getenv().getOrDefault("BENCH_WARMUP", "3"));
+        String modes = System.getenv().getOrDefault("BENCH_MODES", "cached,bounded,virtual");
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        Random random = new SecureRandom();
+        BigInteger p = BigInteger.valueOf(104729);
+        KeyCache.getKeys().put(USER, new GroupParameters(p, BigInteger.valueOf(4), BigInteger.valueOf(16)));
+
+        System.out.printf("%d cores, %d clients, %d s per mode%n", cores, clients, seconds);
+        System.out.printf("%-18s %10s %10s %10s %10s%n", "mode", "logins/s", "p50 ms", "p99 ms", "max ms");
+        for (String name : modes.split(",")) {
+            ServerExecutors.Mode mode = ServerExecutors.Mode.valueOf(name.trim().toUpperCase());
+            ServerExecutors executors = new ServerExecutors(mode, cores, cores, 1024, 1, cores);
+            Server server = executors.configure(NettyServerBuilder.forPort(0))
+                    .addService(new VerifierServer(ShardAssignment.all(), executors.getComputeExecutor()))
+                    .build()
+                    .start();
+            ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", server.getPort())
+                    .usePlaintext()
+                    .build();
+            try {
+                AuthGrpc.AuthBlockingStub stub = AuthGrpc.newBlockingStub(channel);
+                stub.register(RegisterRequest.newBuilder()
+                        .setUser(USER)
+                        .setY1(bytes(BigInteger.valueOf(75)))
+                        .setY2(bytes(BigInteger.valueOf(63)))
+                        .build());
+
+                run(stub, clients, warmup, random);
+                long[] latencies = run(stub, clients, seconds, random);
+
+                String label = executors.getMode() == mode ? mode.name() : mode + " (" + executors.getMode() + ")";
+                System.out.printf("%-18s %10.1f %10.2f %10.2f %10.2f%n", label,
+                        latencies.length / (double) seconds,
+                        percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0));
+                assertTrue(latencies.length > 0, "No login completed in " + mode);
+            } finally {
+                channel.shutdownNow();
+                server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+                executors.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @return the sorted login latencies in nanoseconds
+     */
+    private static long[] run(AuthGrpc.AuthBlockingStub stub, int clients, int seconds, Random random)
+            throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<List<Long>>> results = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            results.add(pool.submit(() -> {
+                List<Long> latencies = new ArrayList<>();
+                ByteString r = bytes(new BigInteger(16, random));
+                ByteString s = bytes(new BigInteger(16, random));
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    AuthenticationChallengeResponse challenge = stub.createAuthenticationChallenge(
+                            AuthenticationChallengeRequest.newBuilder().setUser(USER).setR1(r).setR2(r).build());
+                    stub.verifyAuthentication(AuthenticationAnswerRequest.newBuilder()
+                            .setAuthId(challenge.getAuthId()).setS(s).build());
+                    latencies.add(System.nanoTime() - start);
+                }
+                return latencies;
+            }));
+        }
+        List<Long> all = new ArrayList<>();
+        for (Future<List<Long>> result : results) {
+            all.addAll(result.get());
+        }
+        pool.shutdown();
+        long[] sorted = all.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static ByteString bytes(BigInteger value) {
+        return ByteString.copyFrom(value.toByteArray());
+    }
+}
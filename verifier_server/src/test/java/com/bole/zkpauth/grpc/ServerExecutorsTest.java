@@ -0,0 +1,155 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.AuthGrpc;
+import com.bole.zkpauth.RegisterRequest;
+import com.bole.zkpauth.RegisterResponse;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Test class to cover the thread configuration of the grpc server
+ * @com.bole.zkpauth.grpc.ServerExecutors
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ServerExecutorsTest {
+
+    @Test
+    public void givenVirtualMode_whenCreated_thenVirtualOnlyIfSupported() {
+        ServerExecutors executors = new ServerExecutors(ServerExecutors.Mode.VIRTUAL, 2, 2, 16, 1, 1);
+        try {
+            assertEquals(ServerExecutors.virtualThreadsSupported()
+                    ? ServerExecutors.Mode.VIRTUAL : ServerExecutors.Mode.BOUNDED, executors.getMode());
+        } finally {
+            executors.shutdown();
+        }
+    }
+
+    @Test
+    public void givenABoundedServer_whenRegister_thenServedByTheServiceThreads() throws Exception {
+        ServerExecutors executors = new ServerExecutors(ServerExecutors.Mode.BOUNDED, 2, 2, 16, 1, 1);
+        Server server = executors.configure(NettyServerBuilder.forPort(0))
+                .addService(new VerifierServer(com.bole.zkpauth.kafka.ShardAssignment.all(),
+                        executors.getComputeExecutor()))
+                .build()
+                .start();
+        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", server.getPort())
+                .usePlaintext()
+                .build();
+        try {
+            RegisterResponse response = AuthGrpc.newBlockingStub(channel).register(RegisterRequest.newBuilder()
+                    .setUser("blopes")
+                    .setY1(ByteString.copyFrom(BigInteger.valueOf(23).toByteArray()))
+                    .setY2(ByteString.copyFrom(BigInteger.valueOf(9).toByteArray()))
+                    .build());
+            assertNotNull(response);
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+            executors.shutdown();
+        }
+    }
+
+    @Test
+    public void givenEpoll_whenDomainSocketServer_thenServesOverTheSocket() throws Exception {
+        assumeTrue(Epoll.isAvailable(), "Native epoll not available");
+        ServerExecutors executors = new ServerExecutors(ServerExecutors.Mode.BOUNDED, 2, 2, 16,
+                ServerExecutors.Transport.EPOLL, 1, 1);
+        Path socket = Files.createTempDirectory("zkp").resolve("verifier.sock");
+        Server server = executors.domainSocketServer(socket.toString())
+                .addService(new VerifierServer())
+                .build()
+                .start();
+        EpollEventLoopGroup group = new EpollEventLoopGroup(1);
+        ManagedChannel channel = NettyChannelBuilder.forAddress(new DomainSocketAddress(socket.toString()))
+                .eventLoopGroup(group)
+                .channelType(EpollDomainSocketChannel.class)
+                .usePlaintext()
+                .build();
+        try {
+            RegisterResponse response = AuthGrpc.newBlockingStub(channel).register(RegisterRequest.newBuilder()
+                    .setUser("blopes")
+                    .setY1(ByteString.copyFrom(BigInteger.valueOf(23).toByteArray()))
+                    .setY2(ByteString.copyFrom(BigInteger.valueOf(9).toByteArray()))
+                    .build());
+            assertNotNull(response);
+            assertEquals(ServerExecutors.Transport.EPOLL, executors.getTransport());
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+            executors.shutdown();
+        }
+    }
+
+    @Test
+    public void givenNio_whenDomainSocketServer_thenRejected() {
+        ServerExecutors executors = new ServerExecutors(ServerExecutors.Mode.BOUNDED, 1, 1, 1, 1, 1);
+        try {
+            assertThrows(IllegalStateException.class, () -> executors.domainSocketServer("/tmp/zkp-verifier.sock"));
+        } finally {
+            executors.shutdown();
+        }
+    }
+
+    @Test
+    public void givenASaturatedComputePool_whenExecute_thenCallerRuns() throws Exception {
+        ServerExecutors executors = new ServerExecutors(ServerExecutors.Mode.BOUNDED, 1, 1, 1, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // one running and one queued task fill the pool
+            executors.getComputeExecutor().execute(() -> awaitQuietly(release));
+            executors.getComputeExecutor().execute(() -> awaitQuietly(release));
+
+            AtomicReference<Thread> runner = new AtomicReference<>();
+            executors.getComputeExecutor().execute(() -> runner.set(Thread.currentThread()));
+
+            assertSame(Thread.currentThread(), runner.get());
+        } finally {
+            release.countDown();
+            executors.shutdown();
+        }
+    }
+
+    @Test
+    public void givenQueuedComputeTasks_whenShutdown_thenDrainedBeforeTermination() throws Exception {
+        ServerExecutors executors = new ServerExecutors(ServerExecutors.Mode.BOUNDED, 1, 1, 4, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Boolean> queuedRan = new AtomicReference<>(false);
+        executors.getComputeExecutor().execute(() -> awaitQuietly(release));
+        executors.getComputeExecutor().execute(() -> queuedRan.set(true));
+
+        executors.shutdown();
+        assertFalse(executors.awaitTermination(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(executors.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(queuedRan.get());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.bole.zkpauth.grpc;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.bole.zkpauth.AuthGrpc;
+import com.bole.zkpauth.RegisterRequest;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Per RPC latency and CPU of the transports between a co-located prover and verifier, tagged benchmark so only
+ * run on demand: mvn test -Pbenchmark -Dtest=TransportBenchmark
+ *
+ * Closed-loop clients send unary Register calls, cheap on the server, so the transport dominates:
+ * 1. nio - TCP loopback, grpc default transport
+ * 2. epoll - TCP loopback on the native transport
+ * 3. uds - Unix domain socket on the native transport
+ * Environment: BENCH_CLIENTS (8), BENCH_SECONDS (10), BENCH_WARMUP (3)
+ * @com.bole.zkpauth.grpc.ServerExecutors
+ */
+@Tag("benchmark")
+public class TransportBenchmark {
+
+    @Test
+    public void givenEachTransport_whenRegisteringUnderLoad_thenLatencyAndCpuPrinted() throws Exception {
+        int clients = Integer.parseInt(System.getenv().getOrDefault("BENCH_CLIENTS", "8"));
+        int seconds = Integer.parseInt(System.getenv().getOrDefault("BENCH_SECONDS", "10"));
+        int warmup = Integer.parseInt(System.getenv().getOrDefault("BENCH_WARMUP", "3"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        Path socket = Files.createTempDirectory("zkp").resolve("verifier.sock");
+        // the per request logs would dominate the transport
+        Logger logger = (Logger) LoggerFactory.getLogger("com.bole.zkpauth");
+        Level level = logger.getLevel();
+        logger.setLevel(Level.WARN);
+
+        System.out.printf("%d cores, %d clients, %d s per transport%n", cores, clients, seconds);
+        System.out.printf("%-9s %10s %10s %10s %14s%n", "transport", "rpc/s", "p50 us", "p99 us", "cpu us/rpc");
+        for (String transport : new String[]{"nio", "epoll", "uds"}) {
+            ServerExecutors executors = new ServerExecutors(ServerExecutors.Mode.BOUNDED, cores, cores, 1024,
+                    "nio".equals(transport) ? ServerExecutors.Transport.NIO : ServerExecutors.Transport.EPOLL,
+                    1, cores);
+            NettyServerBuilder serverBuilder = "uds".equals(transport)
+                    ? executors.domainSocketServer(socket.toString())
+                    : executors.configure(NettyServerBuilder.forPort(0));
+            Server server = serverBuilder.addService(new VerifierServer()).build().start();
+
+            EventLoopGroup group = "nio".equals(transport) ? null : new EpollEventLoopGroup(cores);
+            NettyChannelBuilder channelBuilder = "uds".equals(transport)
+                    ? NettyChannelBuilder.forAddress(new DomainSocketAddress(socket.toString()))
+                            .channelType(EpollDomainSocketChannel.class)
+                    : NettyChannelBuilder.forAddress("localhost", server.getPort());
+            if ("epoll".equals(transport)) {
+                channelBuilder.channelType(EpollSocketChannel.class);
+            }
+            if (group != null) {
+                channelBuilder.eventLoopGroup(group);
+            }
+            ManagedChannel channel = channelBuilder.usePlaintext().build();
+            try {
+                AuthGrpc.AuthBlockingStub stub = AuthGrpc.newBlockingStub(channel);
+                run(stub, clients, warmup);
+                long cpuStart = processCpuNanos();
+                long[] latencies = run(stub, clients, seconds);
+                long cpu = processCpuNanos() - cpuStart;
+
+                System.out.printf("%-9s %10.0f %10.1f %10.1f %14.1f%n", transport,
+                        latencies.length / (double) seconds,
+                        percentile(latencies, 0.50), percentile(latencies, 0.99),
+                        cpu / 1000.0 / Math.max(1, latencies.length));
+                assertTrue(latencies.length > 0, "No call completed over " + transport);
+            } finally {
+                channel.shutdownNow();
+                server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+                if (group != null) {
+                    group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+                }
+                executors.shutdown();
+            }
+        }
+        logger.setLevel(level);
+    }
+
+    /**
+     * @return the sorted call latencies in nanoseconds
+     */
+    private static long[] run(AuthGrpc.AuthBlockingStub stub, int clients, int seconds) throws Exception {
+        RegisterRequest request = RegisterRequest.newBuilder()
+                .setUser("bench")
+                .setY1(ByteString.copyFrom(BigInteger.valueOf(75).toByteArray()))
+                .setY2(ByteString.copyFrom(BigInteger.valueOf(63).toByteArray()))
+                .build();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<List<Long>>> results = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            results.add(pool.submit(() -> {
+                List<Long> latencies = new ArrayList<>();
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    stub.register(request);
+                    latencies.add(System.nanoTime() - start);
+                }
+                return latencies;
+            }));
+        }
+        List<Long> all = new ArrayList<>();
+        for (Future<List<Long>> result : results) {
+            all.addAll(result.get());
+        }
+        pool.shutdown();
+        long[] sorted = all.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000.0;
+    }
+}
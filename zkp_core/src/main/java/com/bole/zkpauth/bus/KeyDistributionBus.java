@@ -0,0 +1,33 @@
+package com.bole.zkpauth.bus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SPI for the distribution of the public keys P, G and H from the provers to the verifiers
+ * 1. Kafka implementation, zkptopic shared between JVMs
+ * 2. Local implementation, in-process ring buffer for single JVM deployments, the embedded verifier of the Prover
+ *    and load tests
+ */
+public interface KeyDistributionBus extends KeyPublisher {
+
+    /**
+     * Starts delivering the published keys to the ingestor on a bus owned thread
+     * @param ingestor com.bole.zkpauth.bus.KeyIngestor
+     */
+    void start(KeyIngestor ingestor);
+
+    /**
+     * Waits for the keys published before the start to be delivered
+     * @param timeout maximum time to wait
+     * @param unit java.util.concurrent.TimeUnit
+     * @return true if ready, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Stops the delivery thread
+     * @throws InterruptedException if interrupted while waiting for the thread
+     */
+    void shutdown() throws InterruptedException;
+}
@@ -0,0 +1,206 @@
+package com.bole.zkpauth.bus;
+
+import com.bole.zkpauth.cache.ConcurrentMapCache;
+import com.bole.zkpauth.cache.GroupRegistry;
+import com.bole.zkpauth.cache.KeyCache;
+import com.bole.zkpauth.cache.RegistryStore;
+import com.bole.zkpauth.cache.UserFilter;
+import com.bole.zkpauth.domain.GroupParameters;
+import com.bole.zkpauth.domain.UserRecord;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies the distributed keys to the KeyCache, interned in the GroupRegistry
+ * Versioned records are applied last-write-wins, records without version are plain puts.
+ * The Y1 and Y2 the records carry are registered in the RegistryStore if any, with the records applied, so every
+ * replica holds the keys registered on any of them and serves a user moved by a membership change.
+ * The users are also recorded in the UserFilter if any, stale records included: the filter only rules out users.
+ */
+@Slf4j
+public class KeyIngestor {
+
+    private static final int MAX_GROUPS = 1024;
+
+    private final ConcurrentMapCache<String, GroupParameters> keys;
+
+    private final UserFilter userFilter;
+
+    private final GroupRegistry groups;
+
+    private final RegistryStore registry;
+
+    /**
+     * Keys of a record
+     * @param group interned P, G and H
+     * @param y1 registered Y1, null if the record has none
+     * @param y2 registered Y2, null if the record has none
+     */
+    private record Keys(GroupParameters group, BigInteger y1, BigInteger y2) { }
+
+    public KeyIngestor() {
+        this(KeyCache.getKeys());
+    }
+
+    public KeyIngestor(ConcurrentMapCache<String, GroupParameters> keys) {
+        this(keys, null);
+    }
+
+    public KeyIngestor(ConcurrentMapCache<String, GroupParameters> keys, UserFilter userFilter) {
+        this(keys, userFilter, new GroupRegistry(MAX_GROUPS));
+    }
+
+    /**
+     * @param keys cache of the public keys
+     * @param userFilter filter of the known users, null for none
+     * @param groups registry the parameters of the users are interned in
+     */
+    public KeyIngestor(ConcurrentMapCache<String, GroupParameters> keys, UserFilter userFilter,
+                       GroupRegistry groups) {
+        this(keys, userFilter, groups, null);
+    }
+
+    /**
+     * @param keys cache of the public keys
+     * @param userFilter filter of the known users, null for none
+     * @param groups registry the parameters of the users are interned in
+     * @param registry store of the registered keys of the Verifier, null to ignore the Y1 and Y2 of the records
+     */
+    public KeyIngestor(ConcurrentMapCache<String, GroupParameters> keys, UserFilter userFilter,
+                       GroupRegistry groups, RegistryStore registry) {
+        this.keys = keys;
+        this.userFilter = userFilter;
+        this.groups = groups;
+        this.registry = registry;
+    }
+
+    /**
+     * @param record com.bole.zkpauth.bus.KeyRecord, skipped with a warning if it has no user or malformed keys
+     */
+    public void apply(KeyRecord record) {
+        if (record.user() == null) {
+            log.warn("Key record without user skipped");
+            return;
+        }
+        if (userFilter != null) {
+            userFilter.add(UserFilter.Kind.KEYS, record.user());
+        }
+        Keys parsed = parse(record);
+        if (parsed == null) {
+            return;
+        }
+        if (record.version() < 0) {
+            keys.put(record.user(), parsed.group());
+        } else if (!keys.putIfNewer(record.user(), parsed.group(), record.version())) {
+            log.debug("Dropped stale keys for '" + record.user() + "' with version " + record.version());
+            return;
+        }
+        if (registry != null && parsed.y1() != null) {
+            try {
+                registry.put(record.user(), parsed.y1(), parsed.y2());
+            } catch (IllegalArgumentException ex) {
+                log.warn("Registered keys of '" + record.user() + "' skipped: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Bulk apply without per record logging, only the newest record of each user in the batch is parsed,
+     * the malformed ones are skipped with a warning
+     * @param records batch of com.bole.zkpauth.bus.KeyRecord in delivery order
+     */
+    public void applyBulk(Collection<KeyRecord> records) {
+        Map<String, KeyRecord> plain = new HashMap<>(records.size() * 2);
+        Map<String, KeyRecord> newest = new HashMap<>(records.size() * 2);
+        for (KeyRecord record : records) {
+            if (record.user() == null) {
+                log.warn("Key record without user skipped");
+                continue;
+            }
+            if (userFilter != null) {
+                userFilter.add(UserFilter.Kind.KEYS, record.user());
+            }
+            if (record.version() < 0) {
+                plain.put(record.user(), record);
+            } else {
+                newest.merge(record.user(), record,
+                        (current, candidate) -> candidate.version() > current.version() ? candidate : current);
+            }
+        }
+
+        Map<String, byte[]> registered = new HashMap<>();
+        Map<String, GroupParameters> batch = new HashMap<>(plain.size() * 2);
+        plain.forEach((user, record) -> {
+            Keys parsed = parse(record);
+            if (parsed != null) {
+                batch.put(user, parsed.group());
+                encode(user, parsed, registered);
+            }
+        });
+        keys.putAll(batch);
+
+        Map<String, Keys> parsedVersioned = new HashMap<>(newest.size() * 2);
+        Map<String, GroupParameters> versioned = new HashMap<>(newest.size() * 2);
+        Map<String, Long> versions = new HashMap<>(newest.size() * 2);
+        newest.forEach((user, record) -> {
+            Keys parsed = parse(record);
+            if (parsed != null) {
+                parsedVersioned.put(user, parsed);
+                versioned.put(user, parsed.group());
+                versions.put(user, record.version());
+            }
+        });
+        Set<String> applied = keys.putAllIfNewer(versioned, versions);
+        if (registry != null) {
+            applied.forEach(user -> encode(user, parsedVersioned.get(user), registered));
+            registry.putAll(registered);
+        }
+    }
+
+    /**
+     * Adds the slab of the registered keys of a record to the bulk registrations, skipped with a warning if too long
+     */
+    private void encode(String user, Keys parsed, Map<String, byte[]> registered) {
+        if (registry == null || parsed.y1() == null) {
+            return;
+        }
+        try {
+            registered.put(user, UserRecord.encode(user, parsed.y1(), parsed.y2()));
+        } catch (IllegalArgumentException ex) {
+            log.warn("Registered keys of '" + user + "' skipped: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @param record com.bole.zkpauth.bus.KeyRecord
+     * @return the interned parameters and the registered keys of the record, null if it has no or malformed keys
+     */
+    private Keys parse(KeyRecord record) {
+        if (record.keys() == null) {
+            log.warn("Key record of '" + record.user() + "' without keys skipped");
+            return null;
+        }
+        String[] values = record.keys().split(",");
+        if (values.length != 3 && values.length != 5) {
+            log.warn("Keys of '" + record.user() + "' skipped, " + values.length
+                    + " values instead of P,G,H or P,G,H,Y1,Y2");
+            return null;
+        }
+        try {
+            BigInteger p = new BigInteger(values[0]);
+            BigInteger g = new BigInteger(values[1]);
+            BigInteger h = new BigInteger(values[2]);
+            BigInteger y1 = values.length == 5 ? new BigInteger(values[3]) : null;
+            BigInteger y2 = values.length == 5 ? new BigInteger(values[4]) : null;
+            return new Keys(groups.intern(p, g, h), y1, y2);
+        } catch (NumberFormatException e) {
+            log.warn("Malformed keys of '" + record.user() + "' skipped: " + e.getMessage());
+            return null;
+        }
+    }
+}
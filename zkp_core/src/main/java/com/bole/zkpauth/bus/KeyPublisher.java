@@ -0,0 +1,28 @@
+package com.bole.zkpauth.bus;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Publishing side of the key distribution bus, all the Prover needs of it
+ */
+public interface KeyPublisher {
+
+    /**
+     * Publishes the keys of a user without blocking the caller
+     * @param record com.bole.zkpauth.bus.KeyRecord
+     * @return java.util.concurrent.CompletableFuture completed once the bus accepted the record
+     */
+    CompletableFuture<Void> publish(KeyRecord record);
+
+    /**
+     * Publishes the keys of many users back to back, so the bus can batch them
+     * @param records the records to publish
+     * @return java.util.concurrent.CompletableFuture completed once the bus accepted all the records
+     */
+    default CompletableFuture<Void> publishAll(List<KeyRecord> records) {
+        return CompletableFuture.allOf(records.stream()
+                .map(this::publish)
+                .toArray(CompletableFuture[]::new));
+    }
+}
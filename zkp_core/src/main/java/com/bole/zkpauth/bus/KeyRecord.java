@@ -0,0 +1,15 @@
+package com.bole.zkpauth.bus;
+
+/**
+ * Public keys of a user as distributed on the key bus
+ * @param user the user id
+ * @param keys comma separated P,G,H, followed by the registered Y1,Y2 so that every Verifier replica holds them
+ * @param version producer version (timestamp << 20 | sequence), -1 when not versioned
+ */
+public record KeyRecord(String user, String keys, long version) {
+
+    /**
+     * Kafka record header carrying the version, written by the Prover and read by the Verifier
+     */
+    public static final String VERSION_HEADER = "zkp-version";
+}
@@ -0,0 +1,97 @@
+package com.bole.zkpauth.bus;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process key distribution bus backed by a ring buffer
+ * Used for single JVM deployments and to benchmark the ingestion with no broker and no network.
+ * Publishers spin on a full ring buffer (back pressure), a single delivery thread drains
+ * it in batches into the KeyIngestor bulk path.
+ */
+@Slf4j
+public class LocalKeyDistributionBus implements KeyDistributionBus {
+
+    private static final int BATCH_SIZE = 1024;
+
+    private final RingBuffer<KeyRecord> ringBuffer;
+
+    private final AtomicLong published = new AtomicLong();
+
+    private volatile long delivered;
+
+    private volatile boolean running;
+
+    private Thread dispatcher;
+
+    public LocalKeyDistributionBus(int capacity) {
+        this.ringBuffer = new RingBuffer<>(capacity);
+    }
+
+    @Override
+    public CompletableFuture<Void> publish(KeyRecord record) {
+        while (!ringBuffer.offer(record)) {
+            LockSupport.parkNanos(1_000L);
+        }
+        published.incrementAndGet();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void start(KeyIngestor ingestor) {
+        running = true;
+        dispatcher = new Thread(() -> dispatch(ingestor), "zkp-local-bus");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        log.info("Local key distribution bus started with capacity " + ringBuffer.capacity());
+    }
+
+    private void dispatch(KeyIngestor ingestor) {
+        List<KeyRecord> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !ringBuffer.isEmpty()) {
+            if (ringBuffer.drain(batch::add, BATCH_SIZE) == 0) {
+                LockSupport.parkNanos(50_000L);
+                continue;
+            }
+            try {
+                ingestor.applyBulk(batch);
+            } catch (RuntimeException e) {
+                // the dispatcher outlives a failed batch, awaitReady counts it as delivered
+                log.error("Batch of " + batch.size() + " key records not applied", e);
+            }
+            delivered += batch.size();
+            batch.clear();
+        }
+    }
+
+    /**
+     * @return true once every record published so far has been applied
+     */
+    @Override
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long target = published.get();
+        while (delivered < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.join();
+        }
+        log.info("Local key distribution bus closed");
+    }
+}
@@ -1,7 +1,9 @@
 package com.bole.zkpauth.cache;
 
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
@@ -52,13 +54,71 @@ public class ConcurrentMapCache<K, V> {
             mMap.put(key, new Holder<>(value));
         }
 
+        /**
+         * Bulk puts all the given mappings, overwriting previous values.
+         * All entries share a single access timestamp, no per entry clock read.
+         * @param entries The mappings to be cached.
+         * */
+        public void putAll(Map<K, V> entries){
+            long now = System.currentTimeMillis();
+            for (Map.Entry<K, V> entry : entries.entrySet()) {
+                mMap.put(entry.getKey(), new Holder<>(entry.getValue(), now));
+            }
+        }
+
+        /**
+         * Puts the specified value only if its version is newer than the cached one (last write wins).
+         * Lock-free compare-and-set merge: stale or duplicate versions are dropped without writing.
+         * @param key The key which the specified value is associated with.
+         * @param value The value to be cached.
+         * @param version monotonic version of the value.
+         * @return true if the value was applied, false if it was stale or a duplicate.
+         * */
+        public boolean putIfNewer(K key, V value, long version){
+            return putIfNewer(key, new Holder<>(value, System.currentTimeMillis(), version));
+        }
+
+        /**
+         * Bulk version of putIfNewer, all entries share a single access timestamp.
+         * @param entries The mappings to be cached.
+         * @param versions The version of each mapping.
+         * @return the keys whose value was applied, the stale and duplicate ones left out.
+         * */
+        public Set<K> putAllIfNewer(Map<K, V> entries, Map<K, Long> versions){
+            long now = System.currentTimeMillis();
+            Set<K> applied = new HashSet<>(entries.size() * 2);
+            for (Map.Entry<K, V> entry : entries.entrySet()) {
+                if (putIfNewer(entry.getKey(), new Holder<>(entry.getValue(), now, versions.get(entry.getKey())))) {
+                    applied.add(entry.getKey());
+                }
+            }
+            return applied;
+        }
+
+        private boolean putIfNewer(K key, Holder<V> holder){
+            while (true) {
+                Holder<V> current = mMap.get(key);
+                if (current == null) {
+                    if (mMap.putIfAbsent(key, holder) == null) {
+                        return true;
+                    }
+                } else if (current.version >= holder.version) {
+                    return false;
+                } else if (mMap.replace(key, current, holder)) {
+                    return true;
+                }
+            }
+        }
+
         /**
          * Puts the specified value in the cache, if a value is already mapped to the specified key that value is returned.
          * @param key The key which the specified value is associated with.
          * @param value The value to be cached.
+         * @return the value already mapped to the key, null if the specified value was put.
          * */
         public V putIfAbsent(K key, V value){
-            return mMap.putIfAbsent(key, new Holder<>(value)).getValue();
+            Holder<V> mHolder = mMap.putIfAbsent(key, new Holder<>(value));
+            return mHolder != null ? mHolder.getValue() : null;
         }
 
         /**
@@ -111,10 +171,20 @@ public class ConcurrentMapCache<K, V> {
 
             long lastAccessed;
             T value;
+            final long version;
 
             Holder(T value){
-                lastAccessed = System.currentTimeMillis();
+                this(value, System.currentTimeMillis());
+            }
+
+            Holder(T value, long lastAccessed){
+                this(value, lastAccessed, 0L);
+            }
+
+            Holder(T value, long lastAccessed, long version){
+                this.lastAccessed = lastAccessed;
                 this.value = value;
+                this.version = version;
             }
 
             T getValue(){
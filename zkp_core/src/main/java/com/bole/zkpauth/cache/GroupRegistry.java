@@ -0,0 +1,108 @@
+package com.bole.zkpauth.cache;
+
+import com.bole.zkpauth.domain.GroupParameters;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the distinct group parameters {P, G, H}, interned at ingestion
+ * Users picking the same parameters share one GroupParameters referenced by their KeyCache entries, so a user
+ * costs a reference instead of three BigIntegers, and the derived state of the parameters is computed once for
+ * all of them. The parameters come from the clients, the registry holds at most maxGroups of them: beyond, an
+ * arbitrary one is evicted, its users keep their reference and the next users of these parameters get a new one.
+ */
+@Slf4j
+public class GroupRegistry {
+
+    private final Map<Key, GroupParameters> byKeys = new ConcurrentHashMap<>();
+
+    private final int maxGroups;
+
+    /**
+     * @param maxGroups distinct parameters kept for sharing
+     */
+    public GroupRegistry(int maxGroups) {
+        this.maxGroups = Math.max(1, maxGroups);
+    }
+
+    /**
+     * Reads VERIFIER_MAX_GROUPS (1024)
+     * @return com.bole.zkpauth.cache.GroupRegistry
+     */
+    public static GroupRegistry fromEnv() {
+        return new GroupRegistry(Integer.parseInt(System.getenv().getOrDefault("VERIFIER_MAX_GROUPS", "1024")));
+    }
+
+    /**
+     * @param p the prime P
+     * @param g the generator G
+     * @param h the generator H
+     * @return the canonical parameters equal to P, G and H
+     */
+    public GroupParameters intern(BigInteger p, BigInteger g, BigInteger h) {
+        return intern(new BigInteger[]{p, g, h});
+    }
+
+    /**
+     * @param keys {P, G, H}, not retained
+     * @return the canonical parameters equal to keys
+     */
+    public GroupParameters intern(BigInteger[] keys) {
+        Key key = new Key(keys);
+        GroupParameters parameters = byKeys.get(key);
+        if (parameters != null) {
+            return parameters;
+        }
+        if (byKeys.size() >= maxGroups) {
+            Iterator<Key> evicted = byKeys.keySet().iterator();
+            if (evicted.hasNext()) {
+                evicted.next();
+                evicted.remove();
+            }
+        }
+        GroupParameters created = new GroupParameters(keys[0], keys[1], keys[2]);
+        parameters = byKeys.putIfAbsent(new Key(created.keys()), created);
+        if (parameters != null) {
+            return parameters;
+        }
+        log.debug("Group parameters interned with a P of " + keys[0].bitLength() + " bits");
+        return created;
+    }
+
+    /**
+     * @return distinct parameters interned
+     */
+    public int size() {
+        return byKeys.size();
+    }
+
+    /**
+     * Value equality of the parameters, the hash of the BigIntegers computed once
+     */
+    private static final class Key {
+
+        private final BigInteger[] keys;
+
+        private final int hash;
+
+        Key(BigInteger[] keys) {
+            this.keys = keys;
+            this.hash = Arrays.hashCode(keys);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(keys, ((Key) other).keys);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.bole.zkpauth.cache;
+
+import com.bole.zkpauth.domain.GroupParameters;
+
+/**
+ * Concurrent HashMap to hold pairs <String,GroupParameters>
+ * with key being user id and value the keys P, G and H shared by the users who picked them
+ */
+public class KeyCache {
+
+    private static final ConcurrentMapCache<String, GroupParameters> keys
+            = new ConcurrentMapCache<>(86400000L,86400000L,1000);
+
+    public static ConcurrentMapCache<String, GroupParameters> getKeys(){
+        return  keys;
+    }
+}
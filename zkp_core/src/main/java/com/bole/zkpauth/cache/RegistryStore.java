@@ -0,0 +1,419 @@
+package com.bole.zkpauth.cache;
+
+import com.bole.zkpauth.domain.UserRecord;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Registered keys Y1 and Y2 by user id, the compact replacement of a ConcurrentMapCache<String, BigInteger[]>
+ * Every user is one UserRecord slab holding its id and its keys, the user id is not kept as a String key.
+ * The slabs are spread over SEGMENTS open addressing tables of parallel arrays (slab, hash of the user id,
+ * last access in seconds), without a map node or holder per user. Lookups are optimistic reads of the segment
+ * StampedLock and compare the user id in place. As the ConcurrentMapCache it replaces, a record not accessed for
+ * ttlMillis is removed, by the first write to its segment after the sweep interval.
+ * Keys are versioned by epoch: a registration copies the slab of the user with its keys as the new current epoch,
+ * outside the lock, and swaps it in. The previous epoch stays readable for retainMillis, the lifetime of the
+ * challenges issued under it, so a rotation never fails the logins in flight, and is reclaimed by the next
+ * registration or sweep once retired. A user keeps at most maxEpochs epochs, the oldest retained ones are dropped
+ * beyond: sized from the challenges a user can have outstanding, it bounds the slab and the copy of a rotation
+ * whatever the rate of the registrations of the user. Registering the current keys of a user again, as the key bus
+ * does after the Register call, keeps its epoch.
+ */
+@Slf4j
+public class RegistryStore {
+
+    private static final int SEGMENTS = 64;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final long TICK_MILLIS = 1000;
+
+    /**
+     * epochs of a user by default, the current one included
+     */
+    private static final int DEFAULT_MAX_EPOCHS = 4;
+
+    /**
+     * limit of the epoch count of a slab
+     */
+    private static final int MAX_EPOCHS = 255;
+
+    private final long ttlMillis;
+
+    private final int retainTicks;
+
+    private final int maxEpochs;
+
+    private final long sweepTicks;
+
+    private final LongSupplier clock;
+
+    private final long baseMillis;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * @param ttlMillis time each record stays after it was last accessed
+     * @param retainMillis time the previous keys of a user stay readable after a new registration
+     */
+    public RegistryStore(long ttlMillis, long retainMillis) {
+        this(ttlMillis, retainMillis, DEFAULT_MAX_EPOCHS);
+    }
+
+    /**
+     * @param ttlMillis time each record stays after it was last accessed
+     * @param retainMillis time the previous keys of a user stay readable after a new registration
+     * @param maxEpochs epochs kept per user, the current one included, between 2 and 255
+     */
+    public RegistryStore(long ttlMillis, long retainMillis, int maxEpochs) {
+        this(ttlMillis, retainMillis, maxEpochs, System::currentTimeMillis);
+    }
+
+    /**
+     * @param ttlMillis time each record stays after it was last accessed
+     * @param retainMillis time the previous keys of a user stay readable after a new registration
+     * @param maxEpochs epochs kept per user, the current one included, between 2 and 255
+     * @param clock current time in milliseconds
+     */
+    RegistryStore(long ttlMillis, long retainMillis, int maxEpochs, LongSupplier clock) {
+        if (maxEpochs < 2 || maxEpochs > MAX_EPOCHS) {
+            throw new IllegalArgumentException("Epochs per user out of [2, " + MAX_EPOCHS + "]: " + maxEpochs);
+        }
+        this.ttlMillis = ttlMillis;
+        this.retainTicks = (int) ((retainMillis + TICK_MILLIS - 1) / TICK_MILLIS);
+        this.maxEpochs = maxEpochs;
+        this.sweepTicks = Math.max(1, ttlMillis / TICK_MILLIS / 4);
+        this.clock = clock;
+        this.baseMillis = clock.getAsLong();
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * The registered keys expire after a day without access
+     * @param challengeTtlMillis lifetime of the challenges, the previous keys of a user stay readable as long
+     * @param maxOutstanding challenges a user can have outstanding, as many previous epochs are kept at most
+     * @return com.bole.zkpauth.cache.RegistryStore
+     */
+    public static RegistryStore forChallenges(long challengeTtlMillis, int maxOutstanding) {
+        int maxEpochs = Math.min(MAX_EPOCHS, Math.max(2, maxOutstanding + 1));
+        log.info("Previous keys of a user readable " + challengeTtlMillis + " ms after a new registration, "
+                + maxEpochs + " epochs per user at most");
+        return new RegistryStore(86400000L, challengeTtlMillis, maxEpochs);
+    }
+
+    /**
+     * Adds the keys of a user as its new current epoch, unless they are its current keys already
+     * @param user the user id
+     * @param y1 Prover shared key
+     * @param y2 Prover shared key
+     * @return the epoch of the keys
+     * @throws IllegalArgumentException if the user id or a key is too long
+     */
+    public int put(String user, BigInteger y1, BigInteger y2) {
+        int hash = spread(user.hashCode());
+        return segments[segment(hash)].put(UserRecord.encode(user, y1, y2), user, hash, tick());
+    }
+
+    /**
+     * Bulk version of put, all the records share a single access time
+     * @param slabs records encoded by UserRecord.encode by user id
+     */
+    public void putAll(Map<String, byte[]> slabs) {
+        int tick = tick();
+        for (Map.Entry<String, byte[]> entry : slabs.entrySet()) {
+            String user = entry.getKey();
+            int hash = spread(user.hashCode());
+            segments[segment(hash)].put(entry.getValue(), user, hash, tick);
+        }
+    }
+
+    /**
+     * @param user the user id
+     * @return view over the current keys of the user, null if not registered or expired
+     */
+    public UserRecord get(String user) {
+        int hash = spread(user.hashCode());
+        byte[] slab = segments[segment(hash)].get(user, hash, tick());
+        return slab != null ? UserRecord.current(slab) : null;
+    }
+
+    /**
+     * @param user the user id
+     * @param epoch key epoch
+     * @return view over the keys of the user at the epoch, null if not registered, expired or retired
+     */
+    public UserRecord get(String user, int epoch) {
+        int hash = spread(user.hashCode());
+        int tick = tick();
+        byte[] slab = segments[segment(hash)].get(user, hash, tick);
+        return slab != null ? UserRecord.epoch(slab, epoch, tick) : null;
+    }
+
+    /**
+     * @param user the user id
+     * @return true if the record of the user was removed
+     */
+    public boolean remove(String user) {
+        int hash = spread(user.hashCode());
+        return segments[segment(hash)].remove(user, hash);
+    }
+
+    /**
+     * @param user the user id
+     * @return key epochs held for the user, retired ones included until reclaimed
+     */
+    int epochs(String user) {
+        int hash = spread(user.hashCode());
+        byte[] slab = segments[segment(hash)].peek(user, hash);
+        return slab != null ? UserRecord.epochs(slab) : 0;
+    }
+
+    /**
+     * @return records stored, expired ones included until swept
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    private int tick() {
+        return (int) ((clock.getAsLong() - baseMillis) / TICK_MILLIS);
+    }
+
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int segment(int hash) {
+        return (hash >>> 26) & (SEGMENTS - 1);
+    }
+
+    /**
+     * Arrays of a segment, replaced as a whole on growth and sweep
+     */
+    private static final class Table {
+
+        final byte[][] slabs;
+        final int[] hashes;
+        final int[] accessed;
+        final int mask;
+
+        Table(int capacity) {
+            slabs = new byte[capacity][];
+            hashes = new int[capacity];
+            accessed = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        /**
+         * @return false if the table is full
+         */
+        boolean insert(byte[] slab, int hash, int tick) {
+            int i = hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                if (slabs[i] == null) {
+                    slabs[i] = slab;
+                    hashes[i] = hash;
+                    accessed[i] = tick;
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+    }
+
+    private final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+
+        private Table table = new Table(INITIAL_CAPACITY);
+
+        private int size;
+
+        private int sweptTick;
+
+        byte[] get(String user, int hash, int tick) {
+            long stamp = lock.tryOptimisticRead();
+            Table t = table;
+            int i = find(t, user, hash);
+            byte[] slab = i >= 0 ? t.slabs[i] : null;
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    t = table;
+                    i = find(t, user, hash);
+                    slab = i >= 0 ? t.slabs[i] : null;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (slab == null || isExpired(t.accessed[i], tick)) {
+                return null;
+            }
+            if (t.accessed[i] != tick) {
+                // racy as the lastAccessed of ConcurrentMapCache, written at most once a second
+                t.accessed[i] = tick;
+            }
+            return slab;
+        }
+
+        /**
+         * @return the epoch of the registered keys
+         */
+        int put(byte[] registered, String user, int hash, int tick) {
+            while (true) {
+                // the new slab is built outside the lock, the swap retried if the user registered meanwhile
+                byte[] current = peek(user, hash);
+                byte[] slab = current == null ? registered
+                        : UserRecord.hasCurrentKeys(current, registered) ? current
+                        : UserRecord.rotate(current, registered, tick + retainTicks, tick, maxEpochs);
+                long stamp = lock.writeLock();
+                try {
+                    if (tick - sweptTick >= sweepTicks) {
+                        sweep(tick);
+                    }
+                    Table t = table;
+                    int i = find(t, user, hash);
+                    if ((i >= 0 ? t.slabs[i] : null) != current) {
+                        continue;
+                    }
+                    if (i >= 0) {
+                        t.slabs[i] = slab;
+                        t.accessed[i] = tick;
+                    } else {
+                        if ((size + 1) * 2 > t.mask + 1) {
+                            rebuild((t.mask + 1) * 2, tick);
+                        }
+                        table.insert(slab, hash, tick);
+                        size++;
+                    }
+                    return UserRecord.current(slab).epoch();
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+            }
+        }
+
+        /**
+         * @return the slab of the user, expired or not, without recording an access
+         */
+        byte[] peek(String user, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            Table t = table;
+            int i = find(t, user, hash);
+            byte[] slab = i >= 0 ? t.slabs[i] : null;
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    t = table;
+                    i = find(t, user, hash);
+                    slab = i >= 0 ? t.slabs[i] : null;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return slab;
+        }
+
+        boolean remove(String user, int hash) {
+            long stamp = lock.writeLock();
+            try {
+                int i = find(table, user, hash);
+                if (i < 0) {
+                    return false;
+                }
+                removeAt(i);
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private int find(Table t, String user, int hash) {
+            int i = hash & t.mask;
+            // bounded, a concurrent write can make an optimistic read see any state
+            for (int probes = 0; probes <= t.mask; probes++) {
+                byte[] slab = t.slabs[i];
+                if (slab == null) {
+                    return -1;
+                }
+                if (t.hashes[i] == hash && UserRecord.isOf(slab, user)) {
+                    return i;
+                }
+                i = (i + 1) & t.mask;
+            }
+            return -1;
+        }
+
+        private boolean isExpired(int accessed, int tick) {
+            return (long) (tick - accessed) * TICK_MILLIS > ttlMillis;
+        }
+
+        /**
+         * Drops the expired records and the retired epochs, shrinking the table when they were most of it
+         */
+        private void sweep(int tick) {
+            sweptTick = tick;
+            int capacity = table.mask + 1;
+            while (capacity > INITIAL_CAPACITY && size * 8 < capacity) {
+                capacity >>= 1;
+            }
+            rebuild(capacity, tick);
+        }
+
+        private void rebuild(int capacity, int tick) {
+            Table old = table;
+            Table rebuilt = new Table(capacity);
+            int kept = 0;
+            for (int i = 0; i <= old.mask; i++) {
+                if (old.slabs[i] != null && !isExpired(old.accessed[i], tick)) {
+                    rebuilt.insert(UserRecord.compact(old.slabs[i], tick), old.hashes[i], old.accessed[i]);
+                    kept++;
+                }
+            }
+            size = kept;
+            table = rebuilt;
+        }
+
+        /**
+         * Linear probing deletion, the following entries of the cluster are shifted back
+         */
+        private void removeAt(int i) {
+            Table t = table;
+            int j = i;
+            while (true) {
+                j = (j + 1) & t.mask;
+                if (t.slabs[j] == null) {
+                    break;
+                }
+                int home = t.hashes[j] & t.mask;
+                // the entry at j can fill i unless its home is cyclically in (i, j]
+                boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!stays) {
+                    t.slabs[i] = t.slabs[j];
+                    t.hashes[i] = t.hashes[j];
+                    t.accessed[i] = t.accessed[j];
+                    i = j;
+                }
+            }
+            t.slabs[i] = null;
+            size--;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.bole.zkpauth.cache;
+
+/**
+ * Time bucketed Bloom filter of the challenge tokens already answered
+ * A bucket covers bucketMillis, the token lifetime, so a token is answered and replayed within the current or
+ * the previous bucket: both are checked, the older ones are dropped. Memory is bounded by two bit sets whatever
+ * the login rate, at the cost of rejecting a fresh token with the false positive probability of the filter.
+ * The keys are MACs, uniformly distributed, their bytes are used as the hashes.
+ */
+public class ReplayFilter {
+
+    private final long bucketMillis;
+
+    private final int hashes;
+
+    private final long mask;
+
+    private Bucket current;
+
+    private Bucket previous;
+
+    /**
+     * @param bucketMillis lifetime of the tokens
+     * @param expectedInsertions tokens answered per bucket
+     * @param falsePositiveProbability probability of rejecting a fresh token at the expected insertions
+     */
+    public ReplayFilter(long bucketMillis, int expectedInsertions, double falsePositiveProbability) {
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability)
+                / (Math.log(2) * Math.log(2)));
+        long size = Long.highestOneBit(Math.max(64L, bits - 1)) << 1;
+        this.bucketMillis = bucketMillis;
+        this.mask = size - 1;
+        this.hashes = Math.max(1, (int) Math.round((double) size / expectedInsertions * Math.log(2)));
+        long index = System.currentTimeMillis() / bucketMillis;
+        this.current = new Bucket(index, size);
+        this.previous = new Bucket(index - 1, size);
+    }
+
+    /**
+     * Records a key unless it was recorded before
+     * @param key at least 16 random bytes
+     * @return true if the key is new, false if it was already recorded (or is a false positive)
+     */
+    public synchronized boolean add(byte[] key) {
+        rotate(System.currentTimeMillis() / bucketMillis);
+        long h1 = longAt(key, 0);
+        long h2 = longAt(key, 8) | 1L;
+        if (current.containsAll(h1, h2) || previous.containsAll(h1, h2)) {
+            return false;
+        }
+        current.setAll(h1, h2);
+        return true;
+    }
+
+    private void rotate(long index) {
+        if (index == current.index) {
+            return;
+        }
+        int words = current.words.length;
+        previous = index == current.index + 1 ? current : new Bucket(index - 1, (long) words * 64);
+        current = new Bucket(index, (long) words * 64);
+    }
+
+    /**
+     * @return size of the bit sets in bytes
+     */
+    public long sizeInBytes() {
+        return 2L * current.words.length * Long.BYTES;
+    }
+
+    private static long longAt(byte[] key, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (key[offset + i] & 0xFFL);
+        }
+        return value;
+    }
+
+    private final class Bucket {
+
+        private final long index;
+
+        private final long[] words;
+
+        Bucket(long index, long bits) {
+            this.index = index;
+            this.words = new long[(int) (bits >>> 6)];
+        }
+
+        boolean containsAll(long h1, long h2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = (h1 + i * h2) & mask;
+                if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void setAll(long h1, long h2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = (h1 + i * h2) & mask;
+                words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.bole.zkpauth.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Blocked Bloom filter of the users known to the Verifier, consulted before any challenge state is created
+ * A user is known once its public keys were ingested (KEYS) and it registered its Y1 and Y2 (REGISTRY), both
+ * kinds are recorded in the same bit array with their own hash seed. Every user id lands in a block of 8 longs,
+ * one cache line, where one bit per long is set: a lookup reads one cache line and allocates nothing. Bits are
+ * set with an atomic OR, lock-free and never cleared, so the filter has no false negatives. Memory is fixed,
+ * the false positive rate grows with the users recorded, a false positive only falls through to the caches.
+ */
+@Slf4j
+public class UserFilter {
+
+    /**
+     * kinds of record, each has its own hash seed
+     */
+    public enum Kind {
+        KEYS(0x9E3779B97F4A7C15L),
+        REGISTRY(0xC2B2AE3D27D4EB4FL);
+
+        private final long seed;
+
+        Kind(long seed) {
+            this.seed = seed;
+        }
+    }
+
+    private static final int BLOCK_LONGS = 8;
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final int[] SALTS = {
+            0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d, 0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31};
+
+    private final long[] words;
+
+    private final long blockMask;
+
+    /**
+     * @param sizeInBytes memory of the filter, rounded down to a power of 2 of at least one block
+     */
+    public UserFilter(long sizeInBytes) {
+        long blocks = Long.highestOneBit(Math.max(1, sizeInBytes / (BLOCK_LONGS * Long.BYTES)));
+        if (blocks * BLOCK_LONGS > Integer.MAX_VALUE - 8) {
+            blocks = Integer.highestOneBit((Integer.MAX_VALUE - 8) / BLOCK_LONGS);
+        }
+        this.words = new long[(int) (blocks * BLOCK_LONGS)];
+        this.blockMask = blocks - 1;
+    }
+
+    /**
+     * Reads VERIFIER_USER_FILTER_MB (64), null with 0. At 10 bits per record each kind has 1% false positives,
+     * 64 MB hold 25M users (two records each) and 256 MB 100M users
+     * @return com.bole.zkpauth.cache.UserFilter
+     */
+    public static UserFilter fromEnv() {
+        long megabytes = Long.parseLong(System.getenv().getOrDefault("VERIFIER_USER_FILTER_MB", "64"));
+        if (megabytes <= 0) {
+            return null;
+        }
+        UserFilter filter = new UserFilter(megabytes << 20);
+        log.info("Filter of the known users of " + (filter.sizeInBytes() >> 20) + " MB");
+        return filter;
+    }
+
+    /**
+     * @param kind kind of record
+     * @param user the user id
+     */
+    public void add(Kind kind, String user) {
+        long hash = hash(kind, user);
+        int block = (int) ((hash >>> 32) & blockMask) * BLOCK_LONGS;
+        int key = (int) hash;
+        for (int i = 0; i < BLOCK_LONGS; i++) {
+            long bit = 1L << ((key * SALTS[i]) >>> 26);
+            if ((words[block + i] & bit) == 0) {
+                WORDS.getAndBitwiseOr(words, block + i, bit);
+            }
+        }
+    }
+
+    /**
+     * @param kind kind of record
+     * @param user the user id
+     * @return false if the user was never recorded with this kind, true if it probably was
+     */
+    public boolean mightContain(Kind kind, String user) {
+        long hash = hash(kind, user);
+        int block = (int) ((hash >>> 32) & blockMask) * BLOCK_LONGS;
+        int key = (int) hash;
+        for (int i = 0; i < BLOCK_LONGS; i++) {
+            long bit = 1L << ((key * SALTS[i]) >>> 26);
+            if (((long) WORDS.getOpaque(words, block + i) & bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param user the user id
+     * @return false if the keys or the registry of the user are surely missing
+     */
+    public boolean mightBeKnown(String user) {
+        return mightContain(Kind.REGISTRY, user) && mightContain(Kind.KEYS, user);
+    }
+
+    /**
+     * @return size of the bit array in bytes
+     */
+    public long sizeInBytes() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    /**
+     * FNV-1a of the user id chars from the seed of the kind, murmur3 fmix64 finalized, no allocation
+     */
+    private static long hash(Kind kind, String user) {
+        long hash = 0xcbf29ce484222325L ^ kind.seed;
+        for (int i = 0; i < user.length(); i++) {
+            hash = (hash ^ user.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,11 @@
+package com.bole.zkpauth.domain;
+
+import java.math.BigInteger;
+
+/**
+ * Record to store Prover keys
+ * @param userId
+ * @param rS
+ * @param keyEpoch epoch of the keys of the user the challenge was issued under, 0 if unknown
+ */
+public record AuthSession(String userId, BigInteger[] rS, int keyEpoch) { }
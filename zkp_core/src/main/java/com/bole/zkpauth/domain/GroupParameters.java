@@ -0,0 +1,93 @@
+package com.bole.zkpauth.domain;
+
+import java.math.BigInteger;
+
+/**
+ * Canonical group parameters P, G and H shared by all the users who picked them, interned by the GroupRegistry
+ * and referenced by the KeyCache entries of these users, so a verification needs no lookup of its parameters.
+ * The derived state of the parameters lives here, computed once for all their users: the fixed-base tables
+ * G^(2^i) mod P and H^(2^i) mod P of the int exponents s, built on the first verification.
+ */
+public final class GroupParameters {
+
+    private static final int TABLE_SIZE = Integer.SIZE - 1;
+
+    private final BigInteger[] keys;
+
+    private volatile BigInteger[][] tables;
+
+    /**
+     * @param p the prime P
+     * @param g the generator G
+     * @param h the generator H
+     */
+    public GroupParameters(BigInteger p, BigInteger g, BigInteger h) {
+        this.keys = new BigInteger[]{p, g, h};
+    }
+
+    public BigInteger getP() {
+        return keys[0];
+    }
+
+    public BigInteger getG() {
+        return keys[1];
+    }
+
+    public BigInteger getH() {
+        return keys[2];
+    }
+
+    /**
+     * @return the {P, G, H} array, not to be modified
+     */
+    public BigInteger[] keys() {
+        return keys;
+    }
+
+    /**
+     * @param s exponent, at least 0
+     * @return G^s mod P from the fixed-base table
+     */
+    public BigInteger gPow(int s) {
+        return fixedBasePow(tables()[0], s);
+    }
+
+    /**
+     * @param s exponent, at least 0
+     * @return H^s mod P from the fixed-base table
+     */
+    public BigInteger hPow(int s) {
+        return fixedBasePow(tables()[1], s);
+    }
+
+    private BigInteger fixedBasePow(BigInteger[] table, int exponent) {
+        BigInteger p = keys[0];
+        BigInteger result = BigInteger.ONE.mod(p);
+        for (int i = 0; exponent != 0; i++, exponent >>>= 1) {
+            if ((exponent & 1) != 0) {
+                result = result.multiply(table[i]).mod(p);
+            }
+        }
+        return result;
+    }
+
+    private BigInteger[][] tables() {
+        BigInteger[][] built = tables;
+        if (built == null) {
+            // racing threads build the same tables, the last one is kept
+            built = new BigInteger[][]{table(keys[1]), table(keys[2])};
+            tables = built;
+        }
+        return built;
+    }
+
+    private BigInteger[] table(BigInteger base) {
+        BigInteger p = keys[0];
+        BigInteger[] table = new BigInteger[TABLE_SIZE];
+        table[0] = base.mod(p);
+        for (int i = 1; i < TABLE_SIZE; i++) {
+            table[i] = table[i - 1].multiply(table[i - 1]).mod(p);
+        }
+        return table;
+    }
+}
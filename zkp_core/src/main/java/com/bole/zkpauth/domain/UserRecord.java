@@ -0,0 +1,350 @@
+package com.bole.zkpauth.domain;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Registered keys of a user packed in one byte[] slab, the value stored by the RegistryStore
+ * Layout: the user id (u16 length prefix, high bit set for UTF-16 chars, Latin-1 bytes otherwise), the number of
+ * key epochs (u8), then every epoch, the current one first: epoch (i32), retire tick (i32), Y1 and Y2 (u16 length
+ * prefix and two's-complement big-endian magnitude each). A user costs one array header and its bytes, instead
+ * of a String, a BigInteger[], two BigIntegers and their int[] magnitudes. A slab is never modified, a new
+ * registration builds a new slab with a new current epoch and the previous ones still retained.
+ * The UserRecord is a view over one epoch of a slab, the user id, Y1 and Y2 are materialized lazily.
+ */
+public final class UserRecord {
+
+    /**
+     * epoch of the first registration of a user
+     */
+    public static final int FIRST_EPOCH = 1;
+
+    private static final int MAX_LENGTH = 0x7FFF;
+
+    private static final int UTF16 = 0x8000;
+
+    private static final int CURRENT = Integer.MAX_VALUE;
+
+    private static final int EPOCH_HEADER = 2 * Integer.BYTES;
+
+    private final byte[] slab;
+
+    private final int offset;
+
+    private String user;
+
+    private BigInteger y1;
+
+    private BigInteger y2;
+
+    /**
+     * @param slab encoded record, not copied
+     * @param offset offset of the epoch in the slab
+     */
+    private UserRecord(byte[] slab, int offset) {
+        this.slab = slab;
+        this.offset = offset;
+    }
+
+    /**
+     * @param user the user id, at most 32767 chars
+     * @param y1 Prover shared key
+     * @param y2 Prover shared key
+     * @return the slab of a user with the FIRST_EPOCH only
+     * @throws IllegalArgumentException if the user id or a key is too long
+     */
+    public static byte[] encode(String user, BigInteger y1, BigInteger y2) {
+        if (user.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("Invalid input for the user parameter");
+        }
+        boolean latin1 = isLatin1(user);
+        byte[] y1Bytes = y1.toByteArray();
+        byte[] y2Bytes = y2.toByteArray();
+        if (y1Bytes.length > MAX_LENGTH || y2Bytes.length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Invalid input for the yS parameters");
+        }
+        int idBytes = latin1 ? user.length() : user.length() * 2;
+        byte[] slab = new byte[2 + idBytes + 1 + EPOCH_HEADER + 2 + y1Bytes.length + 2 + y2Bytes.length];
+        int offset = putShort(slab, 0, user.length() | (latin1 ? 0 : UTF16));
+        for (int i = 0; i < user.length(); i++) {
+            char ch = user.charAt(i);
+            if (latin1) {
+                slab[offset++] = (byte) ch;
+            } else {
+                slab[offset++] = (byte) (ch >>> 8);
+                slab[offset++] = (byte) ch;
+            }
+        }
+        slab[offset++] = 1;
+        offset = putInt(slab, offset, FIRST_EPOCH);
+        offset = putInt(slab, offset, CURRENT);
+        offset = putShort(slab, offset, y1Bytes.length);
+        System.arraycopy(y1Bytes, 0, slab, offset, y1Bytes.length);
+        offset = putShort(slab, offset + y1Bytes.length, y2Bytes.length);
+        System.arraycopy(y2Bytes, 0, slab, offset, y2Bytes.length);
+        return slab;
+    }
+
+    /**
+     * Builds the slab of a new registration of a user: its keys become the next epoch and the current epoch is
+     * retired until retireTick. The epochs retired before are kept until their own retire tick, the oldest are
+     * dropped beyond maxEpochs.
+     * @param current slab of the user
+     * @param registered slab encoded with the keys of the new registration
+     * @param retireTick tick until which the current epoch is retained
+     * @param tick current tick
+     * @param maxEpochs epochs kept, the current one included
+     * @return the new slab of the user
+     */
+    public static byte[] rotate(byte[] current, byte[] registered, int retireTick, int tick, int maxEpochs) {
+        int epochs = epochsOffset(current);
+        int count = current[epochs] & 0xFF;
+        int registeredEntry = epochsOffset(registered) + 1;
+        int registeredLength = registered.length - registeredEntry;
+
+        // the epochs retained, the current one first
+        int kept = 0;
+        int keptLength = 0;
+        int entry = epochs + 1;
+        for (int i = 0; i < count && kept + 1 < maxEpochs && retireTick > tick; i++) {
+            int length = entryLength(current, entry);
+            if (i == 0 || getInt(current, entry + Integer.BYTES) > tick) {
+                kept++;
+                keptLength += length;
+            }
+            entry += length;
+        }
+
+        byte[] slab = new byte[epochs + 1 + registeredLength + keptLength];
+        System.arraycopy(current, 0, slab, 0, epochs);
+        slab[epochs] = (byte) (kept + 1);
+        int offset = epochs + 1;
+        System.arraycopy(registered, registeredEntry, slab, offset, registeredLength);
+        putInt(slab, offset, getInt(current, epochs + 1) + 1);
+        offset += registeredLength;
+        entry = epochs + 1;
+        for (int i = 0; i < count && offset < slab.length; i++) {
+            int length = entryLength(current, entry);
+            if (i == 0 || getInt(current, entry + Integer.BYTES) > tick) {
+                System.arraycopy(current, entry, slab, offset, length);
+                if (i == 0) {
+                    putInt(slab, offset + Integer.BYTES, retireTick);
+                }
+                offset += length;
+            }
+            entry += length;
+        }
+        return slab;
+    }
+
+    /**
+     * @param slab encoded record
+     * @param tick current tick
+     * @return the slab without the epochs retired before tick, the same slab if there are none
+     */
+    public static byte[] compact(byte[] slab, int tick) {
+        int epochs = epochsOffset(slab);
+        int count = slab[epochs] & 0xFF;
+        int kept = 0;
+        int keptLength = 0;
+        int entry = epochs + 1;
+        for (int i = 0; i < count; i++) {
+            int length = entryLength(slab, entry);
+            if (getInt(slab, entry + Integer.BYTES) > tick) {
+                kept++;
+                keptLength += length;
+            }
+            entry += length;
+        }
+        if (kept == count) {
+            return slab;
+        }
+        byte[] compacted = new byte[epochs + 1 + keptLength];
+        System.arraycopy(slab, 0, compacted, 0, epochs);
+        compacted[epochs] = (byte) kept;
+        int offset = epochs + 1;
+        entry = epochs + 1;
+        for (int i = 0; i < count; i++) {
+            int length = entryLength(slab, entry);
+            if (getInt(slab, entry + Integer.BYTES) > tick) {
+                System.arraycopy(slab, entry, compacted, offset, length);
+                offset += length;
+            }
+            entry += length;
+        }
+        return compacted;
+    }
+
+    /**
+     * Compares the keys of the current epoch of a slab with the keys of a registration, without materializing them
+     * @param current slab of the user
+     * @param registered slab encoded with the keys of the registration
+     * @return true if the registration carries the current keys of the user
+     */
+    public static boolean hasCurrentKeys(byte[] current, byte[] registered) {
+        int entry = epochsOffset(current) + 1;
+        int registeredEntry = epochsOffset(registered) + 1;
+        int length = registered.length - registeredEntry;
+        // the same keys encode to the same bytes, the epoch header aside
+        return entryLength(current, entry) == length
+                && Arrays.equals(current, entry + EPOCH_HEADER, entry + length,
+                registered, registeredEntry + EPOCH_HEADER, registered.length);
+    }
+
+    /**
+     * Compares the user id of the slab without materializing it
+     * @param slab encoded record
+     * @param user the user id
+     * @return true if the record belongs to the user
+     */
+    public static boolean isOf(byte[] slab, String user) {
+        int prefix = getShort(slab, 0);
+        int length = prefix & MAX_LENGTH;
+        if (length != user.length()) {
+            return false;
+        }
+        boolean latin1 = (prefix & UTF16) == 0;
+        for (int i = 0, offset = 2; i < length; i++) {
+            char ch;
+            if (latin1) {
+                ch = (char) (slab[offset++] & 0xFF);
+            } else {
+                ch = (char) (((slab[offset] & 0xFF) << 8) | (slab[offset + 1] & 0xFF));
+                offset += 2;
+            }
+            if (ch != user.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param slab encoded record
+     * @return view over the current epoch of the slab
+     */
+    public static UserRecord current(byte[] slab) {
+        return new UserRecord(slab, epochsOffset(slab) + 1);
+    }
+
+    /**
+     * @param slab encoded record
+     * @param epoch key epoch
+     * @param tick current tick
+     * @return view over the epoch of the slab, null if it was never registered or is retired
+     */
+    public static UserRecord epoch(byte[] slab, int epoch, int tick) {
+        int epochs = epochsOffset(slab);
+        int count = slab[epochs] & 0xFF;
+        int entry = epochs + 1;
+        for (int i = 0; i < count; i++) {
+            if (getInt(slab, entry) == epoch) {
+                return getInt(slab, entry + Integer.BYTES) > tick ? new UserRecord(slab, entry) : null;
+            }
+            entry += entryLength(slab, entry);
+        }
+        return null;
+    }
+
+    /**
+     * @param slab encoded record
+     * @return epochs held by the slab, the current one included
+     */
+    public static int epochs(byte[] slab) {
+        return slab[epochsOffset(slab)] & 0xFF;
+    }
+
+    /**
+     * @return the user id
+     */
+    public String user() {
+        if (user == null) {
+            int prefix = getShort(slab, 0);
+            int length = prefix & MAX_LENGTH;
+            if ((prefix & UTF16) == 0) {
+                user = new String(slab, 2, length, StandardCharsets.ISO_8859_1);
+            } else {
+                char[] chars = new char[length];
+                for (int i = 0; i < length; i++) {
+                    chars[i] = (char) (((slab[2 + 2 * i] & 0xFF) << 8) | (slab[3 + 2 * i] & 0xFF));
+                }
+                user = new String(chars);
+            }
+        }
+        return user;
+    }
+
+    /**
+     * @return key epoch of the view
+     */
+    public int epoch() {
+        return getInt(slab, offset);
+    }
+
+    /**
+     * @return Prover shared key Y1
+     */
+    public BigInteger y1() {
+        if (y1 == null) {
+            int y1Offset = offset + EPOCH_HEADER;
+            y1 = new BigInteger(slab, y1Offset + 2, getShort(slab, y1Offset));
+        }
+        return y1;
+    }
+
+    /**
+     * @return Prover shared key Y2
+     */
+    public BigInteger y2() {
+        if (y2 == null) {
+            int y2Offset = offset + EPOCH_HEADER;
+            y2Offset += 2 + getShort(slab, y2Offset);
+            y2 = new BigInteger(slab, y2Offset + 2, getShort(slab, y2Offset));
+        }
+        return y2;
+    }
+
+    private static int epochsOffset(byte[] slab) {
+        int prefix = getShort(slab, 0);
+        return 2 + ((prefix & UTF16) == 0 ? prefix : (prefix & MAX_LENGTH) * 2);
+    }
+
+    private static int entryLength(byte[] slab, int entry) {
+        int y1Offset = entry + EPOCH_HEADER;
+        int y2Offset = y1Offset + 2 + getShort(slab, y1Offset);
+        return y2Offset + 2 + getShort(slab, y2Offset) - entry;
+    }
+
+    private static boolean isLatin1(String user) {
+        for (int i = 0; i < user.length(); i++) {
+            if (user.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int putShort(byte[] slab, int offset, int value) {
+        slab[offset] = (byte) (value >>> 8);
+        slab[offset + 1] = (byte) value;
+        return offset + 2;
+    }
+
+    private static int getShort(byte[] slab, int offset) {
+        return ((slab[offset] & 0xFF) << 8) | (slab[offset + 1] & 0xFF);
+    }
+
+    private static int putInt(byte[] slab, int offset, int value) {
+        slab[offset] = (byte) (value >>> 24);
+        slab[offset + 1] = (byte) (value >>> 16);
+        slab[offset + 2] = (byte) (value >>> 8);
+        slab[offset + 3] = (byte) value;
+        return offset + 4;
+    }
+
+    private static int getInt(byte[] slab, int offset) {
+        return ((slab[offset] & 0xFF) << 24) | ((slab[offset + 1] & 0xFF) << 16)
+                | ((slab[offset + 2] & 0xFF) << 8) | (slab[offset + 3] & 0xFF);
+    }
+}
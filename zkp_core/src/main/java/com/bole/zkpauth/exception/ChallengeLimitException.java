@@ -0,0 +1,21 @@
+package com.bole.zkpauth.exception;
+
+/**
+ * ChallengeLimitException
+ */
+public class ChallengeLimitException extends Exception {
+
+    private final long retryAfterMillis;
+
+    public ChallengeLimitException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return milliseconds before a challenge can be admitted
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,11 @@
+package com.bole.zkpauth.exception;
+
+/**
+ * ShardOwnershipException
+ */
+public class ShardOwnershipException extends Exception {
+
+    public ShardOwnershipException(String message) {
+        super(message);
+    }
+}
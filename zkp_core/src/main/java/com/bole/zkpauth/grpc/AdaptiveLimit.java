@@ -0,0 +1,129 @@
+package com.bole.zkpauth.grpc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive concurrency limit of one RPC, TCP Vegas style
+ * The limit is the number of calls allowed in flight. Every completed call gives an RTT sample, compared with
+ * the lowest RTT seen (no load) the calls queued in the server are estimated as limit * (1 - rttNoLoad / rtt):
+ * a short queue grows the limit, a long one shrinks it, so the calls in flight follow what the server completes
+ * without queueing. To follow its drift the no load RTT is measured again every PROBE_SAMPLES samples, from the
+ * lowest RTT of the calls admitted while no other call was in flight: under sustained load there is no such call
+ * and the minimum is kept, a loaded RTT never becomes the no load one.
+ */
+public class AdaptiveLimit {
+
+    private static final int PROBE_SAMPLES = 1000;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile int limit;
+
+    private volatile long smoothedRtt;
+
+    /**
+     * guarded by this
+     */
+    private long rttNoLoad;
+
+    /**
+     * lowest RTT of the calls admitted alone in the current probe window, 0 if none
+     */
+    private long probeRtt;
+
+    private long samples;
+
+    public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * @return the calls in flight before this one if it is admitted, -1 if the limit is reached
+     */
+    public int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Releases a call which did not complete, cancelled by the client or past its deadline, or which failed,
+     * without RTT sample
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Releases a completed call and adapts the limit to its RTT
+     * @param rttNanos duration of the call
+     * @param inFlightAtStart calls in flight when it was admitted
+     */
+    public void release(long rttNanos, int inFlightAtStart) {
+        inFlight.decrementAndGet();
+        sample(Math.max(1L, rttNanos), inFlightAtStart);
+    }
+
+    private synchronized void sample(long rtt, int inFlightAtStart) {
+        smoothedRtt = smoothedRtt == 0 ? rtt : (smoothedRtt * 7 + rtt) / 8;
+        if (inFlightAtStart == 0 && (probeRtt == 0 || rtt < probeRtt)) {
+            probeRtt = rtt;
+        }
+        if (++samples % PROBE_SAMPLES == 0 && probeRtt != 0) {
+            rttNoLoad = probeRtt;
+            probeRtt = 0;
+        }
+        if (rttNoLoad == 0 || rtt < rttNoLoad) {
+            rttNoLoad = rtt;
+            return;
+        }
+        int current = limit;
+        // not enough load to tell whether the limit is too low
+        if (inFlightAtStart * 2 < current) {
+            return;
+        }
+        int step = Math.max(1, (int) Math.log10(current));
+        double queue = current * (1 - (double) rttNoLoad / rtt);
+        if (queue <= 3 * step) {
+            limit = Math.min(maxLimit, current + step);
+        } else if (queue >= 6 * step) {
+            limit = Math.max(minLimit, current - step);
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return RTT samples taken
+     */
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return smoothed RTT of the completed calls in milliseconds, at least 1, the time a client should wait
+     * before retrying a rejected call
+     */
+    public long retryAfterMillis() {
+        return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(smoothedRtt));
+    }
+}
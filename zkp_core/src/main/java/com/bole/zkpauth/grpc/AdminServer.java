@@ -0,0 +1,41 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.AdminGrpc;
+import com.bole.zkpauth.LatencyRequest;
+import com.bole.zkpauth.LatencyResponse;
+import com.bole.zkpauth.MethodLatency;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Operations grpc service of the Verifier, serves the latency snapshot of the Auth calls
+ */
+public class AdminServer extends AdminGrpc.AdminImplBase {
+
+    private final LatencyRecorder latencyRecorder;
+
+    public AdminServer(LatencyRecorder latencyRecorder) {
+        this.latencyRecorder = latencyRecorder;
+    }
+
+    @Override
+    public void getLatencies(LatencyRequest request, StreamObserver<LatencyResponse> responseObserver) {
+        LatencyRecorder.Snapshot snapshot = latencyRecorder.snapshot();
+        LatencyResponse.Builder response = LatencyResponse.newBuilder()
+                .setStartTimeMillis(snapshot.startTimeMillis())
+                .setEndTimeMillis(snapshot.endTimeMillis());
+        for (LatencyRecorder.Latency latency : snapshot.latencies()) {
+            response.addLatencies(MethodLatency.newBuilder()
+                    .setMethod(latency.method())
+                    .setStatus(latency.status())
+                    .setCount(latency.count())
+                    .setMeanMicros(latency.meanMicros())
+                    .setP50Micros(latency.p50Micros())
+                    .setP90Micros(latency.p90Micros())
+                    .setP99Micros(latency.p99Micros())
+                    .setP999Micros(latency.p999Micros())
+                    .setMaxMicros(latency.maxMicros()));
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+}
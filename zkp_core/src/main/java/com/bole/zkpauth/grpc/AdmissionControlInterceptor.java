@@ -0,0 +1,131 @@
+package com.bole.zkpauth.grpc;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control of the unary calls, each RPC has its own AdaptiveLimit of calls in flight
+ * Calls over the limit are rejected right away with RESOURCE_EXHAUSTED and the grpc-retry-pushback-ms trailer,
+ * the RTT of the RPC, instead of queueing behind the admitted ones, so the latency of the admitted calls stays
+ * bounded under overload. Only the calls closed with OK give an RTT sample: a call failing fast, an invalid auth id
+ * for instance, tells nothing of the queue and would pull the no load RTT down.
+ * Streaming calls are long lived and not limited here, the service limits their messages with messageLimit.
+ */
+@Slf4j
+public class AdmissionControlInterceptor implements ServerInterceptor {
+
+    /**
+     * standard grpc retry hint, milliseconds before the client retries
+     */
+    static final Metadata.Key<String> RETRY_PUSHBACK_KEY =
+            Metadata.Key.of("grpc-retry-pushback-ms", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final int initialLimit;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final Map<String, AdaptiveLimit> limits = new ConcurrentHashMap<>();
+
+    public AdmissionControlInterceptor(int initialLimit, int minLimit, int maxLimit) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        log.info("Admission control with adaptive limits from " + minLimit + " to " + maxLimit
+                + " calls in flight per RPC, starting at " + initialLimit);
+    }
+
+    /**
+     * Reads VERIFIER_LIMIT_INITIAL (20), VERIFIER_LIMIT_MIN (4) and VERIFIER_LIMIT_MAX (1000)
+     * @return com.bole.zkpauth.grpc.AdmissionControlInterceptor
+     */
+    public static AdmissionControlInterceptor fromEnv() {
+        return new AdmissionControlInterceptor(
+                Integer.parseInt(System.getenv().getOrDefault("VERIFIER_LIMIT_INITIAL", "20")),
+                Integer.parseInt(System.getenv().getOrDefault("VERIFIER_LIMIT_MIN", "4")),
+                Integer.parseInt(System.getenv().getOrDefault("VERIFIER_LIMIT_MAX", "1000")));
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (call.getMethodDescriptor().getType() != MethodDescriptor.MethodType.UNARY) {
+            return next.startCall(call, headers);
+        }
+        AdaptiveLimit limit = limit(call.getMethodDescriptor().getFullMethodName());
+        int inFlight = limit.tryAcquire();
+        if (inFlight < 0) {
+            Metadata trailers = new Metadata();
+            trailers.put(RETRY_PUSHBACK_KEY, Long.toString(limit.retryAfterMillis()));
+            call.close(Status.RESOURCE_EXHAUSTED.withDescription("Verifier overloaded, limit of "
+                    + limit.getLimit() + " calls in flight reached, retry later"), trailers);
+            return new ServerCall.Listener<>() { };
+        }
+
+        long start = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        AtomicBoolean closedOk = new AtomicBoolean();
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+                @Override
+                public void close(Status status, Metadata trailers) {
+                    closedOk.set(status.isOk());
+                    super.close(status, trailers);
+                }
+            }, headers);
+        } catch (RuntimeException ex) {
+            limit.release();
+            throw ex;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onComplete() {
+                if (released.compareAndSet(false, true)) {
+                    if (closedOk.get()) {
+                        limit.release(System.nanoTime() - start, inFlight);
+                    } else {
+                        limit.release();
+                    }
+                }
+                super.onComplete();
+            }
+
+            @Override
+            public void onCancel() {
+                if (released.compareAndSet(false, true)) {
+                    limit.release();
+                }
+                super.onCancel();
+            }
+        };
+    }
+
+    /**
+     * @param method full grpc method name of a streaming RPC
+     * @return the limit of the messages in flight of the RPC, over all its streams, acquired by the service
+     */
+    public AdaptiveLimit messageLimit(String method) {
+        return limit(method);
+    }
+
+    /**
+     * @param method full grpc method name
+     * @return the limit of the RPC
+     */
+    AdaptiveLimit limit(String method) {
+        return limits.computeIfAbsent(method, key -> new AdaptiveLimit(initialLimit, minLimit, maxLimit));
+    }
+}
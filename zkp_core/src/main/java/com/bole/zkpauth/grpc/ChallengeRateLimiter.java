@@ -0,0 +1,244 @@
+package com.bole.zkpauth.grpc;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limits of the challenge creation, per user and global
+ * Every bucket is a GCRA token bucket, a single theoretical arrival time (TAT) updated with compare-and-set: a
+ * challenge is admitted if the TAT moved one interval ahead stays within the burst tolerance of now. The buckets
+ * of the users are the cells of a count-min sketch of DEPTH rows, conservatively updated, so the memory is fixed
+ * whatever the number of users: a user is limited by the least loaded of its cells, a collision can only make it
+ * stricter. Users throttled by the sketch get an exact bucket, up to hotCapacity of them, so their load stops
+ * spilling on the cells of the other users. The exact buckets idle long enough to be full are dropped.
+ * The limiter also caps the challenges outstanding per user, kept by the caller.
+ */
+@Slf4j
+public class ChallengeRateLimiter {
+
+    /**
+     * challenges kept per user by default
+     */
+    public static final int DEFAULT_MAX_OUTSTANDING = 16;
+
+    private static final int DEPTH = 4;
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long userInterval;
+
+    private final long userTolerance;
+
+    private final long globalInterval;
+
+    private final long globalTolerance;
+
+    private final int widthMask;
+
+    private final int hotCapacity;
+
+    private final int maxOutstanding;
+
+    private final LongSupplier clock;
+
+    private final AtomicLongArray sketch;
+
+    private final Map<String, AtomicLong> hot = new ConcurrentHashMap<>();
+
+    private final AtomicLong global = new AtomicLong();
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    private volatile long nextSweep;
+
+    /**
+     * @param userRate challenges per second of a user, 0 for no user limit
+     * @param userBurst challenges a user can create at once
+     * @param globalRate challenges per second of the instance, 0 for no global limit
+     * @param globalBurst challenges created at once over the instance
+     * @param sketchWidth cells per row of the sketch, rounded up to a power of 2
+     * @param hotCapacity users with an exact bucket
+     * @param maxOutstanding challenges kept per user, the oldest are dropped beyond
+     */
+    public ChallengeRateLimiter(double userRate, int userBurst, double globalRate, int globalBurst,
+                                int sketchWidth, int hotCapacity, int maxOutstanding) {
+        this(userRate, userBurst, globalRate, globalBurst, sketchWidth, hotCapacity, maxOutstanding, System::nanoTime);
+    }
+
+    ChallengeRateLimiter(double userRate, int userBurst, double globalRate, int globalBurst,
+                         int sketchWidth, int hotCapacity, int maxOutstanding, LongSupplier clock) {
+        this.userInterval = interval(userRate);
+        this.userTolerance = userInterval * Math.max(1, userBurst);
+        this.globalInterval = interval(globalRate);
+        this.globalTolerance = globalInterval * Math.max(1, globalBurst);
+        int width = Integer.highestOneBit(Math.max(2, sketchWidth) * 2 - 1);
+        this.widthMask = width - 1;
+        this.sketch = new AtomicLongArray(userInterval > 0 ? DEPTH * width : 0);
+        this.hotCapacity = hotCapacity;
+        this.maxOutstanding = maxOutstanding;
+        this.clock = clock;
+        // buckets start full
+        long start = clock.getAsLong();
+        for (int i = 0; i < sketch.length(); i++) {
+            sketch.set(i, start - userTolerance);
+        }
+        global.set(start - globalTolerance);
+    }
+
+    /**
+     * Reads VERIFIER_USER_CHALLENGE_RATE (1 per second), VERIFIER_USER_CHALLENGE_BURST (10),
+     * VERIFIER_CHALLENGE_RATE (10000 per second), VERIFIER_CHALLENGE_BURST (1000),
+     * VERIFIER_CHALLENGE_SKETCH_WIDTH (65536), VERIFIER_CHALLENGE_HOT_USERS (4096) and
+     * VERIFIER_MAX_OUTSTANDING_CHALLENGES (16), null with VERIFIER_CHALLENGE_LIMIT=off
+     * @return com.bole.zkpauth.grpc.ChallengeRateLimiter
+     */
+    public static ChallengeRateLimiter fromEnv() {
+        if ("off".equalsIgnoreCase(System.getenv("VERIFIER_CHALLENGE_LIMIT"))) {
+            return null;
+        }
+        double userRate = Double.parseDouble(System.getenv().getOrDefault("VERIFIER_USER_CHALLENGE_RATE", "1"));
+        int userBurst = Integer.parseInt(System.getenv().getOrDefault("VERIFIER_USER_CHALLENGE_BURST", "10"));
+        double globalRate = Double.parseDouble(System.getenv().getOrDefault("VERIFIER_CHALLENGE_RATE", "10000"));
+        int globalBurst = Integer.parseInt(System.getenv().getOrDefault("VERIFIER_CHALLENGE_BURST", "1000"));
+        int width = Integer.parseInt(System.getenv().getOrDefault("VERIFIER_CHALLENGE_SKETCH_WIDTH", "65536"));
+        int hotCapacity = Integer.parseInt(System.getenv().getOrDefault("VERIFIER_CHALLENGE_HOT_USERS", "4096"));
+        int maxOutstanding = Integer.parseInt(
+                System.getenv().getOrDefault("VERIFIER_MAX_OUTSTANDING_CHALLENGES",
+                        String.valueOf(DEFAULT_MAX_OUTSTANDING)));
+        log.info("Challenges limited to " + userRate + "/s per user (burst " + userBurst + "), " + globalRate
+                + "/s per instance (burst " + globalBurst + "), " + maxOutstanding + " outstanding per user");
+        return new ChallengeRateLimiter(userRate, userBurst, globalRate, globalBurst, width, hotCapacity,
+                maxOutstanding);
+    }
+
+    /**
+     * Takes a token from the bucket of the user, then from the global one
+     * @param user the user id
+     * @return 0 if the challenge is admitted, else the milliseconds before a token is available
+     */
+    public long tryAcquire(String user) {
+        long now = clock.getAsLong();
+        long wait = userInterval > 0 ? acquireUser(user, now) : 0;
+        if (wait == 0 && globalInterval > 0) {
+            wait = acquire(global, now, globalInterval, globalTolerance);
+        }
+        return wait == 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait + 999_999));
+    }
+
+    /**
+     * @return challenges kept per user, the oldest are dropped beyond
+     */
+    public int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    /**
+     * @return users with an exact bucket
+     */
+    int hotUsers() {
+        return hot.size();
+    }
+
+    private long acquireUser(String user, long now) {
+        AtomicLong exact = hot.get(user);
+        if (exact != null) {
+            return acquire(exact, now, userInterval, userTolerance);
+        }
+        long hash = hash(user);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        long tat = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            tat = Math.min(tat, sketch.get(cell(row, h1, h2)));
+        }
+        long next = Math.max(tat, now) + userInterval;
+        if (next - now > userTolerance) {
+            promote(user, tat, now);
+            return next - now - userTolerance;
+        }
+        // conservative update, the cells already ahead are left as they are
+        for (int row = 0; row < DEPTH; row++) {
+            int cell = cell(row, h1, h2);
+            long current;
+            do {
+                current = sketch.get(cell);
+            } while (current < next && !sketch.compareAndSet(cell, current, next));
+        }
+        return 0;
+    }
+
+    private int cell(int row, int h1, int h2) {
+        return row * (widthMask + 1) + ((h1 + row * h2) & widthMask);
+    }
+
+    /**
+     * Moves a throttled user to an exact bucket, starting from its sketch estimate
+     */
+    private void promote(String user, long tat, long now) {
+        if (hot.size() >= hotCapacity) {
+            sweep(now);
+            if (hot.size() >= hotCapacity) {
+                return;
+            }
+        }
+        hot.putIfAbsent(user, new AtomicLong(tat));
+    }
+
+    /**
+     * Drops the exact buckets full again, at most once per SWEEP_INTERVAL_NANOS
+     */
+    private void sweep(long now) {
+        if (now - nextSweep < 0 || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            hot.values().removeIf(tat -> tat.get() + userTolerance <= now);
+            nextSweep = now + SWEEP_INTERVAL_NANOS;
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * @return 0 if a token was taken, else the nanoseconds before one is available
+     */
+    private static long acquire(AtomicLong bucket, long now, long interval, long tolerance) {
+        while (true) {
+            long tat = bucket.get();
+            long next = Math.max(tat, now) + interval;
+            if (next - now > tolerance) {
+                return next - now - tolerance;
+            }
+            if (bucket.compareAndSet(tat, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private static long interval(double rate) {
+        return rate > 0 ? Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate)) : 0;
+    }
+
+    /**
+     * FNV-1a of the user id chars, murmur3 fmix64 finalized, no allocation
+     */
+    private static long hash(String user) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < user.length(); i++) {
+            hash = (hash ^ user.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
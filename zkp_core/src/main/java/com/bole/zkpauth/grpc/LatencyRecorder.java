@@ -0,0 +1,114 @@
+package com.bole.zkpauth.grpc;
+
+import io.grpc.Status;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latency histograms of the grpc calls per method and status code
+ * Calls are recorded without locks in HdrHistogram Recorders, every interval a scheduler thread swaps them
+ * and publishes the interval histograms as the snapshot served to the metrics readers.
+ */
+public class LatencyRecorder implements AutoCloseable {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private static final Status.Code[] CODES = Status.Code.values();
+
+    private final Map<String, AtomicReferenceArray<Recorder>> recorders = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile Snapshot snapshot;
+
+    private long intervalStart;
+
+    /**
+     * @param intervalMillis length of the snapshot intervals
+     */
+    public LatencyRecorder(long intervalMillis) {
+        this.intervalStart = System.currentTimeMillis();
+        this.snapshot = new Snapshot(intervalStart, intervalStart, List.of());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("latency-snapshot", true));
+        this.scheduler.scheduleAtFixedRate(this::rotate, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param method full grpc method name
+     * @param code status the call was closed with
+     * @param nanos call duration
+     */
+    public void record(String method, Status.Code code, long nanos) {
+        AtomicReferenceArray<Recorder> byCode = recorders.computeIfAbsent(method,
+                key -> new AtomicReferenceArray<>(CODES.length));
+        Recorder recorder = byCode.get(code.ordinal());
+        if (recorder == null) {
+            byCode.compareAndSet(code.ordinal(), null, new Recorder(SIGNIFICANT_DIGITS));
+            recorder = byCode.get(code.ordinal());
+        }
+        recorder.recordValue(Math.max(0L, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    /**
+     * @return the latencies of the last complete interval
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Closes the current interval, visible for the tests
+     */
+    synchronized void rotate() {
+        long intervalEnd = System.currentTimeMillis();
+        List<Latency> latencies = new ArrayList<>();
+        recorders.forEach((method, byCode) -> {
+            for (int i = 0; i < CODES.length; i++) {
+                Recorder recorder = byCode.get(i);
+                if (recorder != null) {
+                    Histogram histogram = recorder.getIntervalHistogram();
+                    if (histogram.getTotalCount() > 0) {
+                        latencies.add(Latency.of(method, CODES[i], histogram));
+                    }
+                }
+            }
+        });
+        snapshot = new Snapshot(intervalStart, intervalEnd, List.copyOf(latencies));
+        intervalStart = intervalEnd;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * latencies of one interval
+     */
+    public record Snapshot(long startTimeMillis, long endTimeMillis, List<Latency> latencies) {
+    }
+
+    /**
+     * latency distribution of the calls of a method closed with a status, in microseconds
+     */
+    public record Latency(String method, String status, long count, double meanMicros, long p50Micros,
+                          long p90Micros, long p99Micros, long p999Micros, long maxMicros) {
+
+        static Latency of(String method, Status.Code code, Histogram histogram) {
+            return new Latency(method, code.name(), histogram.getTotalCount(), histogram.getMean(),
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                    histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9),
+                    histogram.getMaxValue());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.bole.zkpauth.grpc;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records the duration of every call, from its start to the status sent to the client,
+ * in the LatencyRecorder by method and status code
+ * A call cancelled by the client or its deadline is never closed, it is recorded as CANCELLED when the
+ * cancellation reaches the server; each call is recorded once.
+ */
+public class LatencyServerInterceptor implements ServerInterceptor {
+
+    private final LatencyRecorder recorder;
+
+    public LatencyServerInterceptor(LatencyRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        long start = System.nanoTime();
+        String method = call.getMethodDescriptor().getFullMethodName();
+        AtomicBoolean recorded = new AtomicBoolean();
+        ServerCall.Listener<ReqT> listener = next.startCall(
+                new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+                    @Override
+                    public void close(Status status, Metadata trailers) {
+                        if (recorded.compareAndSet(false, true)) {
+                            recorder.record(method, status.getCode(), System.nanoTime() - start);
+                        }
+                        super.close(status, trailers);
+                    }
+                }, headers);
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onCancel() {
+                if (recorded.compareAndSet(false, true)) {
+                    recorder.record(method, Status.Code.CANCELLED, System.nanoTime() - start);
+                }
+                super.onCancel();
+            }
+        };
+    }
+}
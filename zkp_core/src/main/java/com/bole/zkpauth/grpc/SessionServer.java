@@ -0,0 +1,66 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.RevokeUserSessionsRequest;
+import com.bole.zkpauth.RevokeUserSessionsResponse;
+import com.bole.zkpauth.SessionGrpc;
+import com.bole.zkpauth.ValidateSessionBatchRequest;
+import com.bole.zkpauth.ValidateSessionBatchResponse;
+import com.bole.zkpauth.ValidateSessionRequest;
+import com.bole.zkpauth.ValidateSessionResponse;
+import com.bole.zkpauth.session.SessionStore;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Session grpc service of the Verifier, validates the session ids of the API gateway requests
+ * The sessions are per replica, only the Verifier instance which issued a session knows it: the session id names
+ * that instance, SessionStore.issuer, and the API gateways route its validation there, splitting the batches by
+ * issuer, while the revocations of a user go to every replica.
+ */
+public class SessionServer extends SessionGrpc.SessionImplBase {
+
+    private static final ValidateSessionResponse INVALID = ValidateSessionResponse.newBuilder().setValid(false).build();
+
+    private final SessionStore sessionStore;
+
+    public SessionServer(SessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+    }
+
+    @Override
+    public void validateSession(ValidateSessionRequest request,
+                                StreamObserver<ValidateSessionResponse> responseObserver) {
+        responseObserver.onNext(validate(request.getSessionId()));
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void validateSessionBatch(ValidateSessionBatchRequest request,
+                                     StreamObserver<ValidateSessionBatchResponse> responseObserver) {
+        ValidateSessionBatchResponse.Builder response = ValidateSessionBatchResponse.newBuilder();
+        for (String sessionId : request.getSessionIdsList()) {
+            response.addResults(validate(sessionId));
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void revokeUserSessions(RevokeUserSessionsRequest request,
+                                   StreamObserver<RevokeUserSessionsResponse> responseObserver) {
+        sessionStore.revoke(request.getUser());
+        responseObserver.onNext(RevokeUserSessionsResponse.getDefaultInstance());
+        responseObserver.onCompleted();
+    }
+
+    private ValidateSessionResponse validate(String sessionId) {
+        SessionStore.Session session = sessionStore.validate(sessionId);
+        if (session == null) {
+            return INVALID;
+        }
+        return ValidateSessionResponse.newBuilder()
+                .setValid(true)
+                .setUser(session.user())
+                .setExpiresAtMillis(session.expiresAtMillis())
+                .build();
+    }
+}
@@ -0,0 +1,825 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.*;
+import com.bole.zkpauth.AuthGrpc;
+import com.bole.zkpauth.AuthenticationAnswerResponse;
+import com.bole.zkpauth.AuthenticationChallengeResponse;
+import com.bole.zkpauth.ErrorResponse;
+import com.bole.zkpauth.RegisterResponse;
+import com.bole.zkpauth.cache.ConcurrentMapCache;
+import com.bole.zkpauth.domain.AuthSession;
+import com.bole.zkpauth.domain.GroupParameters;
+import com.bole.zkpauth.domain.UserRecord;
+import com.bole.zkpauth.util.BigIntegerCodec;
+import com.bole.zkpauth.util.ChallengeTokens;
+import com.bole.zkpauth.util.TokenMinter;
+import com.bole.zkpauth.util.ZkpUtil;
+import com.google.protobuf.ByteString;
+import com.bole.zkpauth.cache.KeyCache;
+import com.bole.zkpauth.cache.RegistryStore;
+import com.bole.zkpauth.cache.UserFilter;
+import com.bole.zkpauth.exception.CacheValueException;
+import com.bole.zkpauth.exception.ChallengeLimitException;
+import com.bole.zkpauth.exception.ShardOwnershipException;
+import com.bole.zkpauth.kafka.ShardAssignment;
+import com.bole.zkpauth.session.SessionStore;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import io.swagger.v3.oas.annotations.OpenAPIDefinition;
+import io.swagger.v3.oas.annotations.info.Info;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+@OpenAPIDefinition(
+        info = @Info(
+                title = "ZKP Protocol Verifier grpc server to handle Prover requests for registering keys and " +
+                        "authentication login and grant access to resources",
+                version = "0.0.1"
+        )
+)
+@Slf4j
+public class VerifierServer extends AuthGrpc.AuthImplBase {
+    /**
+     * lifetime of the cached challenges of the stateful mode
+     */
+    public static final long CHALLENGE_TTL_MILLIS = 86400000L;
+
+    /**
+     * to store the values of Y1 and Y2 by user id
+     */
+    private final RegistryStore registryStore;
+
+    /**
+     * to store the values of R1 and R2 by user id / sessionId
+     */
+    private final ConcurrentMapCache<String, AuthSession> authCache
+            = new ConcurrentMapCache<>(CHALLENGE_TTL_MILLIS,CHALLENGE_TTL_MILLIS,1000);
+
+    /**
+     * to store the value of C by sessionId
+     */
+    private final ConcurrentMapCache<String, BigInteger> verifyCache
+            = new ConcurrentMapCache<>(CHALLENGE_TTL_MILLIS,CHALLENGE_TTL_MILLIS,1000);
+
+    /**
+     * auth ids of the cached challenges by user id, the oldest are dropped beyond the outstanding cap
+     */
+    private final ConcurrentMapCache<String, ArrayDeque<String>> outstandingCache
+            = new ConcurrentMapCache<>(CHALLENGE_TTL_MILLIS,CHALLENGE_TTL_MILLIS,1000);
+
+    /**
+     * zkptopic partitions served by this instance
+     */
+    private final ShardAssignment shardAssignment;
+
+    /**
+     * bounded pool for the modular exponentiation of the verification and the authentication stream messages
+     */
+    private final Executor computeExecutor;
+
+    /**
+     * signs the auth ids in stateless challenge mode, null in stateful mode where the challenges are cached
+     */
+    private final ChallengeTokens challengeTokens;
+
+    /**
+     * sessions issued by the successful verifications
+     */
+    private final SessionStore sessionStore;
+
+    /**
+     * per user and global rate limits of the challenges, null for no limit
+     */
+    private final ChallengeRateLimiter challengeLimiter;
+
+    /**
+     * users with registered Y1 and Y2 and ingested keys, null to look the caches up directly
+     */
+    private final UserFilter userFilter;
+
+    /**
+     * messages of the authentication streams in flight, over all the streams, null for no limit
+     */
+    private final AdaptiveLimit streamLimit;
+
+    /**
+     * auth ids of the cached challenges
+     */
+    private final TokenMinter authIds = new TokenMinter();
+
+    /**
+     * register requests of a batch stream inserted in the registry at once
+     */
+    private static final int REGISTER_BATCH_SIZE = Integer.parseInt(
+            System.getenv().getOrDefault("VERIFIER_REGISTER_BATCH_SIZE", "1024"));
+
+    /**
+     * stream messages requested from a client and not yet answered
+     */
+    private static final int STREAM_WINDOW = Integer.parseInt(
+            System.getenv().getOrDefault("VERIFIER_STREAM_WINDOW", "128"));
+
+    public VerifierServer() {
+        this(ShardAssignment.all());
+    }
+
+    public VerifierServer(ShardAssignment shardAssignment) {
+        this(shardAssignment, ForkJoinPool.commonPool());
+    }
+
+    public VerifierServer(ShardAssignment shardAssignment, Executor computeExecutor) {
+        this(shardAssignment, computeExecutor, null);
+    }
+
+    public VerifierServer(ShardAssignment shardAssignment, Executor computeExecutor,
+                          ChallengeTokens challengeTokens) {
+        this(shardAssignment, computeExecutor, challengeTokens, new SessionStore(3600000L));
+    }
+
+    public VerifierServer(ShardAssignment shardAssignment, Executor computeExecutor,
+                          ChallengeTokens challengeTokens, SessionStore sessionStore) {
+        this(shardAssignment, computeExecutor, challengeTokens, sessionStore, null);
+    }
+
+    public VerifierServer(ShardAssignment shardAssignment, Executor computeExecutor,
+                          ChallengeTokens challengeTokens, SessionStore sessionStore,
+                          ChallengeRateLimiter challengeLimiter) {
+        this(shardAssignment, computeExecutor, challengeTokens, sessionStore, challengeLimiter, null);
+    }
+
+    public VerifierServer(ShardAssignment shardAssignment, Executor computeExecutor,
+                          ChallengeTokens challengeTokens, SessionStore sessionStore,
+                          ChallengeRateLimiter challengeLimiter, UserFilter userFilter) {
+        this(shardAssignment, computeExecutor, challengeTokens, sessionStore, challengeLimiter, userFilter,
+                RegistryStore.forChallenges(challengeTtlMillis(challengeTokens), maxOutstanding(challengeLimiter)));
+    }
+
+    /**
+     * @param shardAssignment zkptopic partitions served by this instance
+     * @param computeExecutor pool of the verifications
+     * @param challengeTokens auth id tokens of the stateless challenges, null to cache the challenges
+     * @param sessionStore store of the issued sessions, validated by the Session service
+     * @param challengeLimiter rate limits and outstanding cap of the challenges, null for no limit
+     * @param userFilter filter of the known users, shared with the KeyIngestor, null for none
+     * @param registryStore store of the registered Y1 and Y2, shared with the KeyIngestor of the key bus
+     */
+    public VerifierServer(ShardAssignment shardAssignment, Executor computeExecutor,
+                          ChallengeTokens challengeTokens, SessionStore sessionStore,
+                          ChallengeRateLimiter challengeLimiter, UserFilter userFilter,
+                          RegistryStore registryStore) {
+        this(shardAssignment, computeExecutor, challengeTokens, sessionStore, challengeLimiter, userFilter,
+                registryStore, null);
+    }
+
+    /**
+     * @param shardAssignment zkptopic partitions served by this instance
+     * @param computeExecutor pool of the verifications
+     * @param challengeTokens auth id tokens of the stateless challenges, null to cache the challenges
+     * @param sessionStore store of the issued sessions, validated by the Session service
+     * @param challengeLimiter rate limits and outstanding cap of the challenges, null for no limit
+     * @param userFilter filter of the known users, shared with the KeyIngestor, null for none
+     * @param registryStore store of the registered Y1 and Y2, shared with the KeyIngestor of the key bus
+     * @param streamLimit adaptive limit of the authentication stream messages in flight, null for no limit
+     */
+    public VerifierServer(ShardAssignment shardAssignment, Executor computeExecutor,
+                          ChallengeTokens challengeTokens, SessionStore sessionStore,
+                          ChallengeRateLimiter challengeLimiter, UserFilter userFilter,
+                          RegistryStore registryStore, AdaptiveLimit streamLimit) {
+        this.shardAssignment = shardAssignment;
+        this.computeExecutor = computeExecutor;
+        this.challengeTokens = challengeTokens;
+        this.sessionStore = sessionStore;
+        this.challengeLimiter = challengeLimiter;
+        this.userFilter = userFilter;
+        this.registryStore = registryStore;
+        this.streamLimit = streamLimit;
+    }
+
+    /**
+     * @param challengeTokens auth id tokens of the stateless challenges, null when the challenges are cached
+     * @return lifetime of the challenges, the keys they were issued under must stay readable as long
+     */
+    public static long challengeTtlMillis(ChallengeTokens challengeTokens) {
+        return challengeTokens != null ? challengeTokens.getTtlMillis() : CHALLENGE_TTL_MILLIS;
+    }
+
+    /**
+     * @param challengeLimiter rate limits and outstanding cap of the challenges, null for no limit
+     * @return challenges a user can have outstanding, each one may reference a previous epoch of its keys
+     */
+    public static int maxOutstanding(ChallengeRateLimiter challengeLimiter) {
+        return challengeLimiter != null ? challengeLimiter.getMaxOutstanding()
+                : ChallengeRateLimiter.DEFAULT_MAX_OUTSTANDING;
+    }
+
+    /**
+     * Rejects users whose keys hash to partitions owned by another shard
+     * @param userId the user id
+     * @throws ShardOwnershipException if the user is not served by this instance
+     */
+    private void checkOwnership(String userId) throws ShardOwnershipException {
+        if (!shardAssignment.owns(userId)) {
+            throw new ShardOwnershipException("The user " + userId + " is not served by this shard");
+        }
+    }
+
+    private static StatusRuntimeException notOwnedError(String userId, ShardOwnershipException ex) {
+        Metadata.Key<ErrorResponse> errorResponseKey = ProtoUtils.keyForProto(ErrorResponse.getDefaultInstance());
+        ErrorResponse errorResponse = ErrorResponse.newBuilder()
+                .setUser(userId)
+                .build();
+        Metadata metadata = new Metadata();
+        metadata.put(errorResponseKey, errorResponse);
+
+        return Status.FAILED_PRECONDITION
+                .withDescription(ex.getMessage())
+                .asRuntimeException(metadata);
+    }
+
+
+    /**
+     * Handles a request from a prover to register authentication self generated keys
+     * @param request com.bole.zkpauth.RegisterRequest
+     * @param responseObserver io.grpc.stub.StreamObserver<com.bole.zkpauth.RegisterResponse>
+     */
+    @Override
+    public void register(com.bole.zkpauth.RegisterRequest request,
+                         io.grpc.stub.StreamObserver<com.bole.zkpauth.RegisterResponse> responseObserver) {
+        ByteString y1 = request.getY1();
+        ByteString y2 = request.getY2();
+        Optional<String> userId = Optional.ofNullable(request.getUser()).filter(Predicate.not(String::isEmpty));
+
+        log.info("Request received from user: " + userId);
+        try {
+            if(!userId.isPresent()){
+                throw new IllegalArgumentException("Invalid input for the user parameter");
+            }
+            checkOwnership(userId.get());
+            //add or replace
+            registryStore.put(userId.get(), BigIntegerCodec.decode(y1), BigIntegerCodec.decode(y2));
+            if (userFilter != null) {
+                userFilter.add(UserFilter.Kind.REGISTRY, userId.get());
+            }
+
+            log.info("Response send to the client");
+            responseObserver.onNext(RegisterResponse.newBuilder().build());
+            responseObserver.onCompleted();
+        } catch (IllegalArgumentException ex) {
+            Metadata.Key<ErrorResponse> errorResponseKey = ProtoUtils.keyForProto(ErrorResponse.getDefaultInstance());
+            ErrorResponse errorResponse = ErrorResponse.newBuilder()
+                    .setUser("")
+                    .build();
+            Metadata metadata = new Metadata();
+            metadata.put(errorResponseKey, errorResponse);
+
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription(ex.getMessage())
+                    .asRuntimeException(metadata));
+        } catch (ShardOwnershipException ex) {
+            responseObserver.onError(notOwnedError(userId.get(), ex));
+        }
+
+    }
+
+    /**
+     * Handles a stream of register requests from a prover onboarding users in bulk, the keys are
+     * bulk inserted in the registry every VERIFIER_REGISTER_BATCH_SIZE requests and once the stream completes.
+     * Invalid or not owned users are reported back in the response instead of failing the stream, the registered
+     * count is of distinct users.
+     * @param responseObserver io.grpc.stub.StreamObserver<com.bole.zkpauth.RegisterBatchResponse>
+     * @return io.grpc.stub.StreamObserver<com.bole.zkpauth.RegisterRequest>
+     */
+    @Override
+    public StreamObserver<RegisterRequest> registerBatch(StreamObserver<RegisterBatchResponse> responseObserver) {
+        log.info("Register batch stream opened");
+        return new StreamObserver<>() {
+            private final Map<String, byte[]> batch = new HashMap<>();
+            // a user sent twice in the stream is counted once, the last keys win
+            private final Set<String> registered = new HashSet<>();
+            private final RegisterBatchResponse.Builder response = RegisterBatchResponse.newBuilder();
+
+            @Override
+            public void onNext(RegisterRequest request) {
+                String userId = request.getUser();
+                try {
+                    if (userId.isEmpty()) {
+                        throw new IllegalArgumentException("Invalid input for the user parameter");
+                    }
+                    checkOwnership(userId);
+                    batch.put(userId, UserRecord.encode(userId,
+                            BigIntegerCodec.decode(request.getY1()),
+                            BigIntegerCodec.decode(request.getY2())));
+                    if (registered.add(userId)) {
+                        response.setRegistered(registered.size());
+                    }
+                } catch (IllegalArgumentException | ShardOwnershipException ex) {
+                    log.debug("Register rejected for user " + userId + ": " + ex.getMessage());
+                    response.addRejectedUsers(userId);
+                }
+                if (batch.size() >= REGISTER_BATCH_SIZE) {
+                    flush();
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                log.warn("Register batch stream failed after " + response.getRegistered() + " users: " + t.getMessage());
+            }
+
+            @Override
+            public void onCompleted() {
+                flush();
+                log.info("Register batch stream completed with " + response.getRegistered() + " users registered and "
+                        + response.getRejectedUsersCount() + " rejected");
+                responseObserver.onNext(response.build());
+                responseObserver.onCompleted();
+            }
+
+            private void flush() {
+                registryStore.putAll(batch);
+                if (userFilter != null) {
+                    batch.keySet().forEach(user -> userFilter.add(UserFilter.Kind.REGISTRY, user));
+                }
+                batch.clear();
+            }
+        };
+    }
+
+    @Override
+    public void createAuthenticationChallenge(com.bole.zkpauth.AuthenticationChallengeRequest request,
+                                              io.grpc.stub.StreamObserver<com.bole.zkpauth.AuthenticationChallengeResponse> responseObserver) {
+
+        try {
+
+            AuthenticationChallengeResponse authenticationChallengeResponse = challenge(request);
+
+            log.debug("Response send to the client");
+            responseObserver.onNext(authenticationChallengeResponse);
+            responseObserver.onCompleted();
+
+        } catch (IllegalArgumentException ex) {
+            Metadata.Key<ErrorResponse> errorResponseKey = ProtoUtils.keyForProto(ErrorResponse.getDefaultInstance());
+            ErrorResponse errorResponse = ErrorResponse.newBuilder()
+                    .setUser("")
+                    .build();
+            Metadata metadata = new Metadata();
+            metadata.put(errorResponseKey, errorResponse);
+
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription(ex.getMessage())
+                    .asRuntimeException(metadata));
+        } catch (ShardOwnershipException ex) {
+            responseObserver.onError(notOwnedError(request.getUser(), ex));
+        } catch (CacheValueException ex) {
+            Metadata.Key<ErrorResponse> errorResponseKey = ProtoUtils.keyForProto(ErrorResponse.getDefaultInstance());
+            ErrorResponse errorResponse = ErrorResponse.newBuilder()
+                    .setUser(request.getUser())
+                    .build();
+            Metadata metadata = new Metadata();
+            metadata.put(errorResponseKey, errorResponse);
+
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription(ex.getMessage())
+                    .asRuntimeException(metadata));
+        } catch (ChallengeLimitException ex) {
+            Metadata.Key<ErrorResponse> errorResponseKey = ProtoUtils.keyForProto(ErrorResponse.getDefaultInstance());
+            ErrorResponse errorResponse = ErrorResponse.newBuilder()
+                    .setUser(request.getUser())
+                    .build();
+            Metadata metadata = new Metadata();
+            metadata.put(errorResponseKey, errorResponse);
+            metadata.put(AdmissionControlInterceptor.RETRY_PUSHBACK_KEY, Long.toString(ex.getRetryAfterMillis()));
+
+            responseObserver.onError(Status.RESOURCE_EXHAUSTED
+                    .withDescription(ex.getMessage())
+                    .asRuntimeException(metadata));
+        }
+
+    }
+
+    /**
+     * Stores the R1 and R2 of the user and generates the challenge c, in stateless mode both are carried
+     * by the auth id token instead
+     * @param request com.bole.zkpauth.AuthenticationChallengeRequest
+     * @return com.bole.zkpauth.AuthenticationChallengeResponse with the auth id and c
+     * @throws IllegalArgumentException if the user is missing
+     * @throws ShardOwnershipException if the user is not served by this instance
+     * @throws CacheValueException if the user is surely not registered
+     * @throws ChallengeLimitException if the user or the instance is over its challenge rate
+     */
+    private AuthenticationChallengeResponse challenge(com.bole.zkpauth.AuthenticationChallengeRequest request)
+            throws ShardOwnershipException, CacheValueException, ChallengeLimitException {
+
+        Optional<String> userId = Optional.ofNullable(request.getUser()).filter(Predicate.not(String::isEmpty));
+
+        log.info("Request for Authentication challenge received for user id: " + userId);
+
+        if (!userId.isPresent()) {
+            throw new IllegalArgumentException("Invalid input for the user parameter");
+        }
+        checkOwnership(userId.get());
+        // users of other shards are reported as such, the filter only holds the owned ones
+        if (userFilter != null && !userFilter.mightBeKnown(userId.get())) {
+            throw new CacheValueException("Unknown user");
+        }
+        checkChallengeRate(userId.get());
+        // the answer is verified with the keys the challenge was issued under, even if the user registers again
+        UserRecord keys = registryStore.get(userId.get());
+        int keyEpoch = keys != null ? keys.epoch() : 0;
+
+        BigInteger r1 = BigIntegerCodec.decode(request.getR1());
+        BigInteger r2 = BigIntegerCodec.decode(request.getR2());
+
+        log.debug("R1: " + r1);
+        log.debug("R2: " + r2);
+
+        int rnum = (int)Math.floor(Math.random()*(Integer.MAX_VALUE-1000+1)+1000);
+
+        BigInteger c = ZkpUtil.lpf(BigInteger.valueOf(rnum/1000));
+
+        log.debug("Generated c with value: " + c);
+
+        String authId;
+        if (challengeTokens != null) {
+            authId = challengeTokens.issue(userId.get(), keyEpoch, c, r1, r2);
+        } else {
+            authId = authIds.nextText();
+
+            AuthSession authSession = new AuthSession(userId.get(), new BigInteger[]{r1, r2}, keyEpoch);
+            authCache.put(authId, authSession);
+            verifyCache.put(authId, c);
+            trackOutstanding(userId.get(), authId);
+        }
+        log.debug("Generated authId with value: " + authId);
+
+        return AuthenticationChallengeResponse.newBuilder()
+                .setAuthId(authId)
+                .setC(BigIntegerCodec.encode(c))
+                .build();
+    }
+
+
+    /**
+     * Rejects the challenge before any allocation or lpf when the user or the instance is over its rate
+     * @param userId the user id
+     * @throws ChallengeLimitException with the milliseconds before a challenge can be admitted
+     */
+    private void checkChallengeRate(String userId) throws ChallengeLimitException {
+        if (challengeLimiter == null) {
+            return;
+        }
+        long retryAfterMillis = challengeLimiter.tryAcquire(userId);
+        if (retryAfterMillis > 0) {
+            throw new ChallengeLimitException("Too many challenges for the user " + userId + ", retry in "
+                    + retryAfterMillis + " ms", retryAfterMillis);
+        }
+    }
+
+    /**
+     * Keeps at most the outstanding cap of cached challenges per user, the oldest are dropped
+     * @param userId the user id
+     * @param authId auth id of the new challenge
+     */
+    private void trackOutstanding(String userId, String authId) {
+        if (challengeLimiter == null) {
+            return;
+        }
+        ArrayDeque<String> authIds = outstandingCache.get(userId);
+        if (authIds == null) {
+            ArrayDeque<String> created = new ArrayDeque<>();
+            authIds = outstandingCache.putIfAbsent(userId, created);
+            if (authIds == null) {
+                authIds = created;
+            }
+        }
+        String dropped = null;
+        synchronized (authIds) {
+            authIds.addLast(authId);
+            if (authIds.size() > challengeLimiter.getMaxOutstanding()) {
+                dropped = authIds.pollFirst();
+            }
+        }
+        if (dropped != null) {
+            authCache.remove(dropped);
+            verifyCache.remove(dropped);
+        }
+    }
+
+    /**
+     * Verify authentication based on math form:
+     * r1 = g^s.y1^c and r2 = h^s.y2^c
+     * The verification runs on the compute executor, the service thread is released right away.
+     */
+    @Override
+    public void verifyAuthentication(com.bole.zkpauth.AuthenticationAnswerRequest request,
+                                     io.grpc.stub.StreamObserver<com.bole.zkpauth.AuthenticationAnswerResponse> responseObserver) {
+        computeExecutor.execute(() -> verifyAuthenticationNow(request, responseObserver));
+    }
+
+    private void verifyAuthenticationNow(com.bole.zkpauth.AuthenticationAnswerRequest request,
+                                         io.grpc.stub.StreamObserver<com.bole.zkpauth.AuthenticationAnswerResponse> responseObserver) {
+
+        if (isCancelled(responseObserver)) {
+            // the client gave up (deadline or cancel) while the call was queued, skip the computation
+            log.debug("Verification of the auth id " + request.getAuthId() + " cancelled by the client");
+            return;
+        }
+        try {
+
+            AuthenticationAnswerResponse authenticationAnswerResponse = verify(request);
+
+            responseObserver.onNext(authenticationAnswerResponse);
+            responseObserver.onCompleted();
+
+        } catch (IllegalArgumentException | CacheValueException ex) {
+            Metadata.Key<ErrorResponse> errorResponseKey = ProtoUtils.keyForProto(ErrorResponse.getDefaultInstance());
+            ErrorResponse errorResponse = ErrorResponse.newBuilder()
+                    .setUser(request.getAuthId())
+                    .build();
+            Metadata metadata = new Metadata();
+            metadata.put(errorResponseKey, errorResponse);
+
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription(ex.getMessage())
+                    .asRuntimeException(metadata));
+        } catch (RuntimeException ex) {
+            if (isCancelled(responseObserver)) {
+                log.debug("Verification of the auth id " + request.getAuthId() + " cancelled by the client");
+                return;
+            }
+            // off the grpc thread, unexpected failures have to close the call
+            log.error("Unable to verify the auth id " + request.getAuthId(), ex);
+            responseObserver.onError(Status.INTERNAL.withDescription(ex.getMessage()).asRuntimeException());
+        }
+
+    }
+
+    private static boolean isCancelled(StreamObserver<?> responseObserver) {
+        return responseObserver instanceof ServerCallStreamObserver
+                && ((ServerCallStreamObserver<?>) responseObserver).isCancelled();
+    }
+
+    /**
+     * Checks the answer s against the R1 and R2 stored for the auth id, or carried by the auth id token
+     * @param request com.bole.zkpauth.AuthenticationAnswerRequest
+     * @return com.bole.zkpauth.AuthenticationAnswerResponse with a session id, empty if not verified
+     * @throws IllegalArgumentException if the auth id or s are missing
+     * @throws CacheValueException if the auth id, the registry or the public keys are unknown, or the auth id
+     * token is invalid, expired or already used
+     */
+    private AuthenticationAnswerResponse verify(com.bole.zkpauth.AuthenticationAnswerRequest request)
+            throws CacheValueException {
+
+        log.info("Verify request received");
+
+        Optional<String> authId = Optional.ofNullable(request.getAuthId()).filter(Predicate.not(String::isEmpty));
+
+        Optional<ByteString> sIn = Optional.ofNullable(request.getS()).filter(Predicate.not(ByteString::isEmpty));
+
+        if (!authId.isPresent()) {
+            throw new IllegalArgumentException("Invalid input for the auth id parameter");
+        }
+
+        if (!sIn.isPresent()) {
+            throw new IllegalArgumentException("Invalid input for the s parameter");
+        }
+
+        BigInteger s = BigIntegerCodec.decode(sIn.get());
+        log.debug("Request for Authentication verify received for authId: " + authId);
+        log.debug("S: " + s);
+
+        String user;
+        int keyEpoch;
+        BigInteger c;
+        ChallengeTokens.Challenge challenge = null;
+        BigInteger expectedR1Value = null;
+        BigInteger expectedR2Value = null;
+        if (challengeTokens != null) {
+            challenge = challengeTokens.open(authId.get());
+            user = challenge.user();
+            keyEpoch = challenge.keyEpoch();
+            c = challenge.c();
+        } else {
+            c = verifyCache.get(authId.get());
+
+            if(c == null) {
+                throw new CacheValueException("Invalid c key");
+            }
+
+            AuthSession authSession = authCache.get(authId.get());
+
+            if(authSession == null || authSession.rS().length != 2) {
+                throw new CacheValueException("Invalid rS keys");
+            }
+
+            user = authSession.userId();
+            keyEpoch = authSession.keyEpoch();
+            expectedR1Value = authSession.rS()[0];
+            expectedR2Value = authSession.rS()[1];
+        }
+
+
+        // challenges issued before the user registered are verified with its current keys
+        UserRecord yS = keyEpoch != 0 ? registryStore.get(user, keyEpoch) : registryStore.get(user);
+
+        if(yS == null) {
+            throw new CacheValueException("Invalid yS keys");
+        }
+
+        // the parameters were interned at ingestion, the entry references them
+        GroupParameters group = KeyCache.getKeys().get(user);
+
+        if(group == null) {
+            throw new CacheValueException("Invalid PGH keys");
+        }
+
+        BigInteger[] currentR1R2 = ZkpUtil.computeR1R2(
+                group,
+                s,
+                c,
+                yS.y1(),
+                yS.y2());
+
+        String sessionId = "";
+
+
+        boolean verified = challenge != null
+                ? ChallengeTokens.matches(challenge, currentR1R2[0], currentR1R2[1])
+                : expectedR1Value.equals(currentR1R2[0]) && expectedR2Value.equals(currentR1R2[1]);
+
+        if (verified) {
+            log.info("Authentication verified successfully with the correct expected R1 and R2");
+            sessionId = sessionStore.issue(user);
+        } else {
+            log.info("Authentication not verified actual R1 and R2 are not equal to the expected R1 and R2");
+            log.debug("Actual R1: " + currentR1R2[0]);
+            log.debug("Expected R1: " + expectedR1Value);
+            log.debug("Actual R2: " + currentR1R2[1]);
+            log.debug("Expected R2: " + expectedR2Value);
+        }
+
+        return com.bole.zkpauth.AuthenticationAnswerResponse.newBuilder().setSessionId(sessionId).build();
+    }
+
+    /**
+     * Pipelined authentication: challenge and answer messages of many users are multiplexed on one stream
+     * and correlated by request id. Messages are processed on the compute executor, so responses may come back
+     * out of order, and at most VERIFIER_STREAM_WINDOW messages are requested from the client at a time.
+     * Failures are returned in the response error and do not close the stream.
+     * @param responseObserver io.grpc.stub.StreamObserver<com.bole.zkpauth.AuthenticationStreamResponse>
+     * @return io.grpc.stub.StreamObserver<com.bole.zkpauth.AuthenticationStreamRequest>
+     */
+    @Override
+    public StreamObserver<AuthenticationStreamRequest> authenticateStream(
+            StreamObserver<AuthenticationStreamResponse> responseObserver) {
+        log.info("Authentication stream opened");
+        return new AuthenticationStream((ServerCallStreamObserver<AuthenticationStreamResponse>) responseObserver);
+    }
+
+    /**
+     * @param request com.bole.zkpauth.AuthenticationStreamRequest
+     * @return com.bole.zkpauth.AuthenticationStreamResponse with the same request id
+     */
+    private AuthenticationStreamResponse handle(AuthenticationStreamRequest request) {
+        AuthenticationStreamResponse.Builder response = AuthenticationStreamResponse.newBuilder()
+                .setRequestId(request.getRequestId());
+        try {
+            switch (request.getPayloadCase()) {
+                case CHALLENGE:
+                    response.setChallenge(challenge(request.getChallenge()));
+                    break;
+                case ANSWER:
+                    response.setAnswer(verify(request.getAnswer()));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid input for the payload parameter");
+            }
+        } catch (IllegalArgumentException | CacheValueException ex) {
+            response.setError(streamError(Status.Code.INVALID_ARGUMENT, ex));
+        } catch (ShardOwnershipException ex) {
+            response.setError(streamError(Status.Code.FAILED_PRECONDITION, ex));
+        } catch (ChallengeLimitException ex) {
+            response.setError(streamError(Status.Code.RESOURCE_EXHAUSTED, ex));
+        } catch (RuntimeException ex) {
+            log.error("Unable to process the stream request " + request.getRequestId(), ex);
+            response.setError(streamError(Status.Code.INTERNAL, ex));
+        }
+        return response.build();
+    }
+
+    private static AuthenticationStreamError streamError(Status.Code code, Exception ex) {
+        return AuthenticationStreamError.newBuilder()
+                .setCode(code.value())
+                .setDescription(String.valueOf(ex.getMessage()))
+                .build();
+    }
+
+    /**
+     * Server side of an authentication stream with manual inbound flow control
+     * Each message is admitted by the stream limit, shared by all the streams: over it the message is answered
+     * right away with a RESOURCE_EXHAUSTED error and the stream goes on.
+     */
+    private class AuthenticationStream implements StreamObserver<AuthenticationStreamRequest> {
+
+        private final ServerCallStreamObserver<AuthenticationStreamResponse> responseObserver;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private volatile boolean halfClosed;
+
+        AuthenticationStream(ServerCallStreamObserver<AuthenticationStreamResponse> responseObserver) {
+            this.responseObserver = responseObserver;
+            responseObserver.disableAutoInboundFlowControl();
+            responseObserver.setOnCancelHandler(() -> log.debug("Authentication stream cancelled"));
+            responseObserver.request(STREAM_WINDOW);
+        }
+
+        @Override
+        public void onNext(AuthenticationStreamRequest request) {
+            int admitted = streamLimit != null ? streamLimit.tryAcquire() : 0;
+            if (admitted < 0) {
+                respond(AuthenticationStreamResponse.newBuilder()
+                        .setRequestId(request.getRequestId())
+                        .setError(AuthenticationStreamError.newBuilder()
+                                .setCode(Status.Code.RESOURCE_EXHAUSTED.value())
+                                .setDescription("Verifier overloaded, limit of " + streamLimit.getLimit()
+                                        + " stream messages in flight reached, retry later"))
+                        .build());
+                return;
+            }
+            inFlight.incrementAndGet();
+            long start = System.nanoTime();
+            computeExecutor.execute(() -> {
+                AuthenticationStreamResponse response = handle(request);
+                if (streamLimit != null) {
+                    // as the unary calls, only the processed messages give an RTT sample
+                    if (response.getPayloadCase() == AuthenticationStreamResponse.PayloadCase.ERROR) {
+                        streamLimit.release();
+                    } else {
+                        streamLimit.release(System.nanoTime() - start, admitted);
+                    }
+                }
+                respond(response);
+                if (inFlight.decrementAndGet() == 0 && halfClosed) {
+                    complete();
+                }
+            });
+        }
+
+        /**
+         * Sends the response of a message and requests the next one
+         */
+        private void respond(AuthenticationStreamResponse response) {
+            synchronized (responseObserver) {
+                if (!responseObserver.isCancelled()) {
+                    responseObserver.onNext(response);
+                    responseObserver.request(1);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            log.debug("Authentication stream closed by the client: " + t.getMessage());
+            completed.set(true);
+        }
+
+        @Override
+        public void onCompleted() {
+            halfClosed = true;
+            if (inFlight.get() == 0) {
+                complete();
+            }
+        }
+
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                synchronized (responseObserver) {
+                    if (!responseObserver.isCancelled()) {
+                        responseObserver.onCompleted();
+                    }
+                }
+                log.info("Authentication stream completed");
+            }
+        }
+    }
+
+}
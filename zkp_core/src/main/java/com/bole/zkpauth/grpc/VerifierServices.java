@@ -0,0 +1,106 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.AuthGrpc;
+import com.bole.zkpauth.cache.RegistryStore;
+import com.bole.zkpauth.cache.UserFilter;
+import com.bole.zkpauth.kafka.ShardAssignment;
+import com.bole.zkpauth.session.SessionStore;
+import com.bole.zkpauth.util.ChallengeTokens;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The grpc services of a Verifier, configured from the environment
+ * Assembled the same way by the Verifier server and by the embedded verifier of the Prover, so both serve
+ * the same protocol:
+ * 1. Auth service, stateless challenges with VERIFIER_CHALLENGE_MODE=stateless, shed over an adaptive
+ *    concurrency limit per RPC, and per authentication stream message, unless VERIFIER_ADMISSION=off,
+ *    challenges rate limited unless VERIFIER_CHALLENGE_LIMIT=off
+ * 2. Session service over the sessions issued by the Auth service
+ * 3. Admin service with the latency of the Auth calls, only with a LatencyRecorder
+ * The registered keys are held in memory, registered by the Register calls and by the KeyIngestor of the key bus
+ * over the RegistryStore of the services. The sessions are held in memory by this instance only: a session is valid
+ * on the replica which issued it, named by the session id after VERIFIER_ADVERTISED_ADDRESS, where the API gateways
+ * route its validation.
+ */
+public class VerifierServices {
+
+    private final ServerServiceDefinition auth;
+
+    private final SessionServer session;
+
+    private final AdminServer admin;
+
+    private final RegistryStore registryStore;
+
+    private VerifierServices(ServerServiceDefinition auth, SessionServer session, AdminServer admin,
+                             RegistryStore registryStore) {
+        this.auth = auth;
+        this.session = session;
+        this.admin = admin;
+        this.registryStore = registryStore;
+    }
+
+    /**
+     * @param shardAssignment zkptopic partitions served by this instance
+     * @param computeExecutor pool of the verifications
+     * @param userFilter filter of the known users, shared with the KeyIngestor, null for none
+     * @param latencyRecorder recorder of the Auth calls, null for no Admin service
+     * @return com.bole.zkpauth.grpc.VerifierServices
+     */
+    public static VerifierServices fromEnv(ShardAssignment shardAssignment, Executor computeExecutor,
+                                           UserFilter userFilter, LatencyRecorder latencyRecorder) {
+        SessionStore sessionStore = SessionStore.fromEnv();
+        ChallengeTokens challengeTokens = ChallengeTokens.fromEnv();
+        ChallengeRateLimiter challengeLimiter = ChallengeRateLimiter.fromEnv();
+        AdmissionControlInterceptor admission = "off".equalsIgnoreCase(System.getenv("VERIFIER_ADMISSION"))
+                ? null : AdmissionControlInterceptor.fromEnv();
+        RegistryStore registryStore = RegistryStore.forChallenges(VerifierServer.challengeTtlMillis(challengeTokens),
+                VerifierServer.maxOutstanding(challengeLimiter));
+        ServerServiceDefinition auth = new VerifierServer(shardAssignment, computeExecutor,
+                challengeTokens, sessionStore, challengeLimiter, userFilter, registryStore,
+                admission != null
+                        ? admission.messageLimit(AuthGrpc.METHOD_AUTHENTICATE_STREAM.getFullMethodName()) : null)
+                .bindService();
+        if (admission != null) {
+            auth = ServerInterceptors.intercept(auth, admission);
+        }
+        AdminServer admin = null;
+        if (latencyRecorder != null) {
+            // outermost, the shed calls are recorded as well
+            auth = ServerInterceptors.intercept(auth, new LatencyServerInterceptor(latencyRecorder));
+            admin = new AdminServer(latencyRecorder);
+        }
+        return new VerifierServices(auth, new SessionServer(sessionStore), admin, registryStore);
+    }
+
+    /**
+     * @return the intercepted Auth service
+     */
+    public ServerServiceDefinition getAuth() {
+        return auth;
+    }
+
+    /**
+     * @return the Session service
+     */
+    public SessionServer getSession() {
+        return session;
+    }
+
+    /**
+     * @return the Admin service, null without LatencyRecorder
+     */
+    public AdminServer getAdmin() {
+        return admin;
+    }
+
+    /**
+     * @return the registered keys of the Auth service, to be shared with the KeyIngestor
+     */
+    public RegistryStore getRegistryStore() {
+        return registryStore;
+    }
+}
@@ -0,0 +1,107 @@
+package com.bole.zkpauth.kafka;
+
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Set of zkptopic partitions owned by this Verifier instance.
+ * Users are mapped to partitions exactly as the Kafka default partitioner does with the record key,
+ * so a shard holds in memory only the keys of the users it serves.
+ * Wire format published to the shards topic: numPartitions;p1,p2,...
+ */
+public class ShardAssignment {
+
+    public static final String SHARDS_TOPIC = "zkpshards";
+
+    private static final ShardAssignment ALL = new ShardAssignment(null, 0, Collections.emptySet());
+
+    private final String address;
+    private final int numPartitions;
+    private final Set<Integer> partitions;
+
+    public ShardAssignment(String address, int numPartitions, Set<Integer> partitions) {
+        this.address = address;
+        this.numPartitions = numPartitions;
+        this.partitions = Collections.unmodifiableSet(new TreeSet<>(partitions));
+    }
+
+    /**
+     * Non sharded mode, the instance consumes the whole topic and serves every user
+     * @return ShardAssignment
+     */
+    public static ShardAssignment all() {
+        return ALL;
+    }
+
+    /**
+     * Builds the assignment from the environment
+     * VERIFIER_SHARD_PARTITIONS - comma separated owned partitions, sharded mode is off when missing
+     * VERIFIER_SHARD_PARTITION_COUNT - number of partitions of the zkptopic
+     * VERIFIER_ADVERTISED_ADDRESS - host:port the provers should use to reach this shard
+     * @return ShardAssignment
+     */
+    public static ShardAssignment fromEnv() {
+        String owned = System.getenv("VERIFIER_SHARD_PARTITIONS");
+        if (owned == null || owned.isBlank()) {
+            return all();
+        }
+        int numPartitions = Integer.parseInt(System.getenv("VERIFIER_SHARD_PARTITION_COUNT"));
+        String address = System.getenv().getOrDefault("VERIFIER_ADVERTISED_ADDRESS", "zkp-verifier:8082");
+        return new ShardAssignment(address, numPartitions, parsePartitions(owned));
+    }
+
+    static Set<Integer> parsePartitions(String owned) {
+        return Arrays.stream(owned.split(","))
+                .map(String::trim)
+                .filter(p -> !p.isEmpty())
+                .map(Integer::valueOf)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    /**
+     * Partition of the given user, same hashing as org.apache.kafka.clients.producer.internals.DefaultPartitioner
+     * @param user record key
+     * @param numPartitions number of partitions of the topic
+     * @return the partition
+     */
+    public static int partitionFor(String user, int numPartitions) {
+        return Utils.toPositive(Utils.murmur2(user.getBytes(StandardCharsets.UTF_8))) % numPartitions;
+    }
+
+    public boolean isSharded() {
+        return numPartitions > 0;
+    }
+
+    /**
+     * @param user the user id
+     * @return true if this instance is responsible for the user
+     */
+    public boolean owns(String user) {
+        return !isSharded() || partitions.contains(partitionFor(user, numPartitions));
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getNumPartitions() {
+        return numPartitions;
+    }
+
+    public Set<Integer> getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * @return value published to the shards topic
+     */
+    public String toWireFormat() {
+        return numPartitions + ";" + partitions.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+}
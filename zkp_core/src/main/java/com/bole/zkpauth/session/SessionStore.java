@@ -0,0 +1,516 @@
+package com.bole.zkpauth.session;
+
+import com.bole.zkpauth.util.TokenMinter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Sessions issued by the successful verifications, validated by the API gateways on every request
+ * The sessions are spread over SEGMENTS open addressing tables of parallel primitive arrays (128 bit id, user
+ * reference, user generation, expiry in seconds), about 56 bytes per session at the maximum load, without an
+ * object per session. Lookups are optimistic reads of the segment StampedLock, they do not write shared memory
+ * and scale with the cores. Every segment has a timing wheel of one second ticks, the expired sessions of the
+ * elapsed ticks are removed by the next write to the segment. Revoking the sessions of a user increments its
+ * generation, the sessions of the older generations are no longer valid and expire with the wheel.
+ * The sessions live in the memory of the replica which issued them: with an issuer, the host:port of the replica,
+ * a session id is the 22 characters id, a dot and the issuer, so that the API gateways route its validation to
+ * that replica whatever the replicas added or removed since, and the other replicas reject it.
+ */
+@Slf4j
+public class SessionStore {
+
+    private static final int SEGMENTS = 64;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final long TICK_MILLIS = 1000;
+
+    private static final int WHEEL_SLOTS = 512;
+
+    private static final char SEPARATOR = '.';
+
+    private final long ttlMillis;
+
+    /**
+     * dot and issuer ending the session ids, null without issuer
+     */
+    private final String suffix;
+
+    private final LongSupplier clock;
+
+    private final long baseMillis;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final TokenMinter minter = new TokenMinter();
+
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+
+    /**
+     * users by reference, copied on growth, guarded by this for writes
+     */
+    private volatile User[] usersByRef = new User[1024];
+
+    private int userCount;
+
+    /**
+     * Valid session
+     * @param user the user id
+     * @param expiresAtMillis end of the session
+     */
+    public record Session(String user, long expiresAtMillis) { }
+
+    /**
+     * @param ttlMillis lifetime of the sessions
+     */
+    public SessionStore(long ttlMillis) {
+        this(ttlMillis, (String) null);
+    }
+
+    /**
+     * @param ttlMillis lifetime of the sessions
+     * @param issuer host:port of this replica named by the session ids, null for the bare 22 characters ids
+     */
+    public SessionStore(long ttlMillis, String issuer) {
+        this(ttlMillis, issuer, System::currentTimeMillis);
+    }
+
+    /**
+     * @param ttlMillis lifetime of the sessions
+     * @param clock current time in milliseconds
+     */
+    SessionStore(long ttlMillis, LongSupplier clock) {
+        this(ttlMillis, null, clock);
+    }
+
+    /**
+     * @param ttlMillis lifetime of the sessions
+     * @param issuer host:port of this replica named by the session ids, null for the bare 22 characters ids
+     * @param clock current time in milliseconds
+     */
+    SessionStore(long ttlMillis, String issuer, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.suffix = issuer == null ? null : SEPARATOR + issuer;
+        this.clock = clock;
+        this.baseMillis = clock.getAsLong();
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Reads VERIFIER_SESSION_TTL_MS (3600000) and VERIFIER_ADVERTISED_ADDRESS, the issuer of the sessions, the host
+     * name of this instance and the grpc port 8082 by default
+     * @return com.bole.zkpauth.session.SessionStore
+     */
+    public static SessionStore fromEnv() {
+        long ttlMillis = Long.parseLong(System.getenv().getOrDefault("VERIFIER_SESSION_TTL_MS", "3600000"));
+        String issuer = System.getenv("VERIFIER_ADVERTISED_ADDRESS");
+        if (issuer == null || issuer.isBlank()) {
+            try {
+                issuer = InetAddress.getLocalHost().getHostName() + ":8082";
+            } catch (UnknownHostException ex) {
+                log.warn("Host name unknown, sessions issued by localhost:8082: " + ex.getMessage());
+                issuer = "localhost:8082";
+            }
+        }
+        log.info("Sessions valid " + ttlMillis + " ms, issued by " + issuer);
+        return new SessionStore(ttlMillis, issuer);
+    }
+
+    /**
+     * @param sessionId the session id
+     * @return host:port of the replica which issued the session, the one to validate it with, empty if the id names
+     * none. The API gateways only route to the replicas they know, the id comes from their clients.
+     */
+    public static Optional<String> issuer(String sessionId) {
+        if (sessionId == null || sessionId.length() <= TokenMinter.TEXT_LENGTH + 1
+                || sessionId.charAt(TokenMinter.TEXT_LENGTH) != SEPARATOR) {
+            return Optional.empty();
+        }
+        return Optional.of(sessionId.substring(TokenMinter.TEXT_LENGTH + 1));
+    }
+
+    /**
+     * Issues a session to a verified user
+     * @param user the user id
+     * @return the session id
+     */
+    public String issue(String user) {
+        TokenMinter.Token id = minter.next();
+        while (id.hi() == 0 && id.lo() == 0) {
+            // marks the empty slots
+            id = minter.next();
+        }
+        put(id.hi(), id.lo(), user);
+        return suffix == null ? id.text() : id.text() + suffix;
+    }
+
+    /**
+     * @param sessionId the session id
+     * @return the session, null if unknown, malformed, issued by another replica, expired or revoked
+     */
+    public Session validate(String sessionId) {
+        if (suffix != null) {
+            if (sessionId == null || sessionId.length() != TokenMinter.TEXT_LENGTH + suffix.length()
+                    || !sessionId.endsWith(suffix)) {
+                return null;
+            }
+            sessionId = sessionId.substring(0, TokenMinter.TEXT_LENGTH);
+        }
+        if (!TokenMinter.isToken(sessionId)) {
+            return null;
+        }
+        return validate(TokenMinter.high(sessionId), TokenMinter.low(sessionId));
+    }
+
+    /**
+     * @param hi most significant bits of the session id
+     * @param lo least significant bits of the session id
+     * @return the session, null if unknown, expired or revoked
+     */
+    public Session validate(long hi, long lo) {
+        long hash = hash(hi, lo);
+        long entry = segments[segment(hash)].get(hi, lo, hash);
+        if (entry == NOT_FOUND) {
+            return null;
+        }
+        int userRef = (int) (entry >>> 32);
+        int expiry = (int) entry;
+        User user = usersByRef[userRef];
+        long expiresAt = baseMillis + expiry * TICK_MILLIS;
+        // the generation is checked by get, the expiry here
+        if (clock.getAsLong() >= expiresAt || user == null) {
+            return null;
+        }
+        return new Session(user.name, expiresAt);
+    }
+
+    /**
+     * Invalidates every session issued to the user so far
+     * @param user the user id
+     */
+    public void revoke(String user) {
+        User entry = users.get(user);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.generation++;
+            }
+            log.info("Sessions of the user " + user + " revoked");
+        }
+    }
+
+    /**
+     * @return sessions stored, expired ones included until the wheel removes them
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    void put(long hi, long lo, String userId) {
+        User user = user(userId);
+        long now = clock.getAsLong();
+        int expiry = (int) ((now - baseMillis + ttlMillis + TICK_MILLIS - 1) / TICK_MILLIS);
+        long hash = hash(hi, lo);
+        segments[segment(hash)].put(hi, lo, hash, user.ref, user.generation, expiry,
+                (int) ((now - baseMillis) / TICK_MILLIS));
+    }
+
+    private User user(String userId) {
+        User user = users.get(userId);
+        if (user != null) {
+            return user;
+        }
+        synchronized (this) {
+            user = users.get(userId);
+            if (user == null) {
+                if (userCount == usersByRef.length) {
+                    usersByRef = Arrays.copyOf(usersByRef, userCount * 2);
+                }
+                user = new User(userId, userCount);
+                usersByRef[userCount++] = user;
+                users.put(userId, user);
+            }
+            return user;
+        }
+    }
+
+    private static long hash(long hi, long lo) {
+        long hash = (hi ^ Long.rotateLeft(lo, 32)) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static int segment(long hash) {
+        return (int) (hash >>> 58) & (SEGMENTS - 1);
+    }
+
+    private static final long NOT_FOUND = -1L;
+
+    private static final class User {
+
+        private final String name;
+
+        private final int ref;
+
+        /**
+         * guarded by this for writes
+         */
+        private volatile int generation;
+
+        User(String name, int ref) {
+            this.name = name;
+            this.ref = ref;
+        }
+    }
+
+    /**
+     * Arrays of a segment, replaced as a whole on growth
+     */
+    private static final class Table {
+
+        final long[] his;
+        final long[] los;
+        final int[] userRefs;
+        final int[] generations;
+        final int[] expiries;
+        final int mask;
+
+        Table(int capacity) {
+            his = new long[capacity];
+            los = new long[capacity];
+            userRefs = new int[capacity];
+            generations = new int[capacity];
+            expiries = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        boolean isEmpty(int i) {
+            return his[i] == 0 && los[i] == 0;
+        }
+
+        void copy(int from, int to) {
+            his[to] = his[from];
+            los[to] = los[from];
+            userRefs[to] = userRefs[from];
+            generations[to] = generations[from];
+            expiries[to] = expiries[from];
+        }
+
+        void clear(int i) {
+            his[i] = 0;
+            los[i] = 0;
+        }
+    }
+
+    private final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+
+        private Table table = new Table(INITIAL_CAPACITY);
+
+        private int size;
+
+        /**
+         * ids expiring at each tick modulo WHEEL_SLOTS, two longs per id
+         */
+        private final long[][] wheel = new long[WHEEL_SLOTS][];
+
+        private final int[] wheelSizes = new int[WHEEL_SLOTS];
+
+        private int wheelTick;
+
+        /**
+         * @return user reference and expiry of a session of the current user generation, NOT_FOUND otherwise
+         */
+        long get(long hi, long lo, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            long entry = find(hi, lo, hash);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    entry = find(hi, lo, hash);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return entry;
+        }
+
+        private long find(long hi, long lo, long hash) {
+            Table t = table;
+            int i = (int) hash & t.mask;
+            // bounded, a concurrent write can make an optimistic read see any state
+            for (int probes = 0; probes <= t.mask; probes++) {
+                long slotHi = t.his[i];
+                long slotLo = t.los[i];
+                if (slotHi == hi && slotLo == lo && (hi != 0 || lo != 0)) {
+                    int userRef = t.userRefs[i];
+                    int generation = t.generations[i];
+                    int expiry = t.expiries[i];
+                    User[] byRef = usersByRef;
+                    if (userRef < 0 || userRef >= byRef.length || byRef[userRef] == null
+                            || byRef[userRef].generation != generation) {
+                        return NOT_FOUND;
+                    }
+                    return ((long) userRef << 32) | (expiry & 0xFFFFFFFFL);
+                }
+                if (slotHi == 0 && slotLo == 0) {
+                    return NOT_FOUND;
+                }
+                i = (i + 1) & t.mask;
+            }
+            return NOT_FOUND;
+        }
+
+        void put(long hi, long lo, long hash, int userRef, int generation, int expiry, int tick) {
+            long stamp = lock.writeLock();
+            try {
+                advance(tick);
+                if ((size + 1) * 2 > table.mask + 1) {
+                    grow();
+                }
+                Table t = table;
+                int i = (int) hash & t.mask;
+                while (!t.isEmpty(i)) {
+                    if (t.his[i] == hi && t.los[i] == lo) {
+                        break;
+                    }
+                    i = (i + 1) & t.mask;
+                }
+                if (t.isEmpty(i)) {
+                    size++;
+                }
+                t.his[i] = hi;
+                t.los[i] = lo;
+                t.userRefs[i] = userRef;
+                t.generations[i] = generation;
+                t.expiries[i] = expiry;
+                schedule(hi, lo, expiry);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void grow() {
+            Table old = table;
+            Table grown = new Table((old.mask + 1) * 2);
+            for (int i = 0; i <= old.mask; i++) {
+                if (!old.isEmpty(i)) {
+                    int j = (int) hash(old.his[i], old.los[i]) & grown.mask;
+                    while (!grown.isEmpty(j)) {
+                        j = (j + 1) & grown.mask;
+                    }
+                    grown.his[j] = old.his[i];
+                    grown.los[j] = old.los[i];
+                    grown.userRefs[j] = old.userRefs[i];
+                    grown.generations[j] = old.generations[i];
+                    grown.expiries[j] = old.expiries[i];
+                }
+            }
+            table = grown;
+        }
+
+        private void schedule(long hi, long lo, int expiry) {
+            int slot = expiry % WHEEL_SLOTS;
+            long[] ids = wheel[slot];
+            int used = wheelSizes[slot];
+            if (ids == null) {
+                ids = wheel[slot] = new long[16];
+            } else if (used + 2 > ids.length) {
+                ids = wheel[slot] = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[used] = hi;
+            ids[used + 1] = lo;
+            wheelSizes[slot] = used + 2;
+        }
+
+        /**
+         * Removes the sessions expired at the ticks elapsed since the last write
+         */
+        private void advance(int tick) {
+            if (tick <= wheelTick) {
+                return;
+            }
+            int from = Math.max(wheelTick + 1, tick - WHEEL_SLOTS + 1);
+            for (int t = from; t <= tick; t++) {
+                expireSlot(t % WHEEL_SLOTS, tick);
+            }
+            wheelTick = tick;
+        }
+
+        private void expireSlot(int slot, int tick) {
+            long[] ids = wheel[slot];
+            int kept = 0;
+            for (int k = 0; k < wheelSizes[slot]; k += 2) {
+                int i = indexOf(ids[k], ids[k + 1]);
+                if (i < 0) {
+                    continue;
+                }
+                if (table.expiries[i] <= tick) {
+                    removeAt(i);
+                } else if (table.expiries[i] % WHEEL_SLOTS == slot) {
+                    // expires in a later turn of the wheel
+                    ids[kept] = ids[k];
+                    ids[kept + 1] = ids[k + 1];
+                    kept += 2;
+                }
+            }
+            wheelSizes[slot] = kept;
+            if (kept == 0 && ids != null && ids.length > 16) {
+                wheel[slot] = null;
+            }
+        }
+
+        private int indexOf(long hi, long lo) {
+            Table t = table;
+            int i = (int) hash(hi, lo) & t.mask;
+            while (!t.isEmpty(i)) {
+                if (t.his[i] == hi && t.los[i] == lo) {
+                    return i;
+                }
+                i = (i + 1) & t.mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Linear probing deletion, the following entries of the cluster are shifted back
+         */
+        private void removeAt(int i) {
+            Table t = table;
+            int j = i;
+            while (true) {
+                j = (j + 1) & t.mask;
+                if (t.isEmpty(j)) {
+                    break;
+                }
+                int home = (int) hash(t.his[j], t.los[j]) & t.mask;
+                // the entry at j can fill i unless its home is cyclically in (i, j]
+                boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!stays) {
+                    t.copy(j, i);
+                    i = j;
+                }
+            }
+            t.clear(i);
+            size--;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.bole.zkpauth.util;
+
+import com.google.protobuf.ByteOutput;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Marshalling of the protocol numbers between the grpc ByteString fields and BigInteger without the
+ * intermediate byte array copies of toByteArray() and ByteString.copyFrom()
+ * 1. decode reads the two's complement bytes straight from the array backing the ByteString
+ * 2. encode wraps the fresh array of BigInteger.toByteArray(), never modified afterwards
+ */
+public final class BigIntegerCodec {
+
+    /**
+     * reused by the calls of a thread, decode allocates nothing but the BigInteger
+     */
+    private static final ThreadLocal<ArrayView> VIEWS = ThreadLocal.withInitial(ArrayView::new);
+
+    private BigIntegerCodec() {
+    }
+
+    /**
+     * @param bytes big-endian two's complement value, as written by encode
+     * @return java.math.BigInteger
+     * @throws NumberFormatException if bytes is empty
+     */
+    public static BigInteger decode(ByteString bytes) {
+        ArrayView view = VIEWS.get();
+        try {
+            UnsafeByteOperations.unsafeWriteTo(bytes, view);
+            if (view.array == null) {
+                // direct buffer or several chunks, no single array to read from
+                return new BigInteger(bytes.toByteArray());
+            }
+            return new BigInteger(view.array, view.offset, view.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            view.reset();
+        }
+    }
+
+    /**
+     * @param value java.math.BigInteger
+     * @return com.google.protobuf.ByteString over the two's complement bytes of the value
+     */
+    public static ByteString encode(BigInteger value) {
+        return UnsafeByteOperations.unsafeWrap(value.toByteArray());
+    }
+
+    /**
+     * Keeps the backing array of a ByteString made of a single heap chunk
+     */
+    private static final class ArrayView extends ByteOutput {
+
+        private byte[] array;
+        private int offset;
+        private int length;
+        private int chunks;
+
+        void reset() {
+            array = null;
+            chunks = 0;
+        }
+
+        @Override
+        public void write(byte value) {
+            chunks++;
+            array = null;
+        }
+
+        @Override
+        public void write(byte[] value, int offset, int length) {
+            writeLazy(value, offset, length);
+        }
+
+        @Override
+        public void writeLazy(byte[] value, int offset, int length) {
+            if (++chunks == 1) {
+                this.array = value;
+                this.offset = offset;
+                this.length = length;
+            } else {
+                this.array = null;
+            }
+        }
+
+        @Override
+        public void write(ByteBuffer value) {
+            writeLazy(value);
+        }
+
+        @Override
+        public void writeLazy(ByteBuffer value) {
+            if (value.hasArray()) {
+                writeLazy(value.array(), value.arrayOffset() + value.position(), value.remaining());
+            } else {
+                chunks++;
+                array = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.bole.zkpauth.util;
+
+import com.bole.zkpauth.cache.ReplayFilter;
+import com.bole.zkpauth.exception.CacheValueException;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Stateless authentication challenges: the auth id is a token carrying the challenge itself,
+ * base64url(version, expiry, nonce, issuer, key epoch, c, user, SHA-256 of R1 and R2) "." base64url(HMAC-SHA256
+ * of the payload). The verifier checks the answer without per challenge memory, only the tokens already answered
+ * are kept in a ReplayFilter so that each one is answered once.
+ * The ReplayFilter lives in the memory of the instance, so a token is only accepted by the instance that issued it,
+ * identified by a random issuer drawn at startup: a token answered on another replica, or after a restart, would
+ * escape the filter and could be answered twice. Tokens of the version 1 carry no issuer and are rejected,
+ * as are the tokens of the version 2, which carry no key epoch.
+ */
+@Slf4j
+public class ChallengeTokens {
+
+    private static final byte VERSION = 3;
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final int MAC_LENGTH = 32;
+
+    private static final int DIGEST_LENGTH = 32;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SecretKeySpec key;
+
+    private final long ttlMillis;
+
+    private final long issuer = RANDOM.nextLong();
+
+    private final ReplayFilter replayFilter;
+
+    private final TokenMinter nonces = new TokenMinter();
+
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * Challenge decoded from a token
+     * @param user the user id
+     * @param keyEpoch epoch of the keys of the user the challenge was issued under, 0 if unknown
+     * @param c the challenge
+     * @param rDigest SHA-256 of the R1 and R2 of the prover
+     */
+    public record Challenge(String user, int keyEpoch, BigInteger c, byte[] rDigest) { }
+
+    /**
+     * @param key HMAC key
+     * @param ttlMillis lifetime of a token
+     * @param replayFilter tokens already answered, its buckets covering ttlMillis
+     */
+    public ChallengeTokens(byte[] key, long ttlMillis, ReplayFilter replayFilter) {
+        this.key = new SecretKeySpec(key, ALGORITHM);
+        this.ttlMillis = ttlMillis;
+        this.replayFilter = replayFilter;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(this.key);
+                return mac;
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("Unable to initialize " + ALGORITHM, ex);
+            }
+        });
+    }
+
+    /**
+     * Reads VERIFIER_CHALLENGE_MODE, stateful by default, VERIFIER_TOKEN_KEY (base64), VERIFIER_CHALLENGE_TTL_MS
+     * (300000) and VERIFIER_REPLAY_CAPACITY (1000000 tokens answered per TTL)
+     * @return com.bole.zkpauth.util.ChallengeTokens, null in stateful mode
+     */
+    public static ChallengeTokens fromEnv() {
+        if (!"stateless".equalsIgnoreCase(System.getenv("VERIFIER_CHALLENGE_MODE"))) {
+            return null;
+        }
+        long ttlMillis = Long.parseLong(System.getenv().getOrDefault("VERIFIER_CHALLENGE_TTL_MS", "300000"));
+        int capacity = Integer.parseInt(System.getenv().getOrDefault("VERIFIER_REPLAY_CAPACITY", "1000000"));
+        String encodedKey = System.getenv("VERIFIER_TOKEN_KEY");
+        byte[] key;
+        if (encodedKey == null || encodedKey.isEmpty()) {
+            log.info("VERIFIER_TOKEN_KEY not set, challenge tokens signed with a random key");
+            key = new byte[32];
+            RANDOM.nextBytes(key);
+        } else {
+            key = Base64.getDecoder().decode(encodedKey);
+        }
+        ReplayFilter replayFilter = new ReplayFilter(ttlMillis, capacity, 1e-6);
+        log.info("Stateless challenges valid " + ttlMillis + " ms, replay filter of "
+                + replayFilter.sizeInBytes() / 1024 + " KB");
+        return new ChallengeTokens(key, ttlMillis, replayFilter);
+    }
+
+    /**
+     * @return lifetime of a token in milliseconds
+     */
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * @param user the user id
+     * @param c the challenge
+     * @param r1 R1 of the prover
+     * @param r2 R2 of the prover
+     * @return the auth id token, without key epoch
+     */
+    public String issue(String user, BigInteger c, BigInteger r1, BigInteger r2) {
+        return issue(user, 0, c, r1, r2);
+    }
+
+    /**
+     * @param user the user id
+     * @param keyEpoch epoch of the keys of the user
+     * @param c the challenge
+     * @param r1 R1 of the prover
+     * @param r2 R2 of the prover
+     * @return the auth id token
+     */
+    public String issue(String user, int keyEpoch, BigInteger c, BigInteger r1, BigInteger r2) {
+        byte[] userBytes = user.getBytes(StandardCharsets.UTF_8);
+        byte[] cBytes = c.toByteArray();
+        ByteBuffer payload = ByteBuffer.allocate(1 + Long.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES
+                + 2 + cBytes.length + 2 + userBytes.length + DIGEST_LENGTH);
+        payload.put(VERSION)
+                .putLong(System.currentTimeMillis() + ttlMillis)
+                .putLong(nonces.nextLong())
+                .putLong(issuer)
+                .putInt(keyEpoch)
+                .putShort((short) cBytes.length).put(cBytes)
+                .putShort((short) userBytes.length).put(userBytes)
+                .put(digest(r1, r2));
+        byte[] bytes = payload.array();
+        return ENCODER.encodeToString(bytes) + "." + ENCODER.encodeToString(mac(bytes));
+    }
+
+    /**
+     * Checks the MAC, the issuer and the expiry of a token and records it as answered
+     * @param token the auth id
+     * @return the challenge of the token
+     * @throws CacheValueException if the token is malformed, forged, issued by another instance, expired or already
+     * answered
+     */
+    public Challenge open(String token) throws CacheValueException {
+        int dot = token.indexOf('.');
+        byte[] payload;
+        byte[] mac;
+        try {
+            payload = DECODER.decode(token.substring(0, Math.max(0, dot)));
+            mac = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException ex) {
+            throw new CacheValueException("Invalid auth id");
+        }
+        if (dot < 0 || mac.length != MAC_LENGTH || !MessageDigest.isEqual(mac, mac(payload))) {
+            throw new CacheValueException("Invalid auth id");
+        }
+
+        Challenge challenge;
+        long expiry;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            if (buffer.get() != VERSION) {
+                throw new CacheValueException("Auth id issued by another verifier");
+            }
+            expiry = buffer.getLong();
+            buffer.getLong();
+            if (buffer.getLong() != issuer) {
+                throw new CacheValueException("Auth id issued by another verifier");
+            }
+            int keyEpoch = buffer.getInt();
+            byte[] cBytes = new byte[buffer.getShort()];
+            buffer.get(cBytes);
+            byte[] userBytes = new byte[buffer.getShort()];
+            buffer.get(userBytes);
+            byte[] rDigest = new byte[DIGEST_LENGTH];
+            buffer.get(rDigest);
+            challenge = new Challenge(new String(userBytes, StandardCharsets.UTF_8), keyEpoch, new BigInteger(cBytes),
+                    rDigest);
+        } catch (BufferUnderflowException | NegativeArraySizeException | NumberFormatException ex) {
+            throw new CacheValueException("Invalid auth id");
+        }
+        if (System.currentTimeMillis() > expiry) {
+            throw new CacheValueException("Expired auth id");
+        }
+        if (!replayFilter.add(mac)) {
+            throw new CacheValueException("Auth id already used");
+        }
+        return challenge;
+    }
+
+    /**
+     * @param r1 R1
+     * @param r2 R2
+     * @return SHA-256 of the length prefixed R1 and R2
+     */
+    public static byte[] digest(BigInteger r1, BigInteger r2) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (BigInteger r : new BigInteger[]{r1, r2}) {
+                byte[] bytes = r.toByteArray();
+                digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+                digest.update(bytes);
+            }
+            return digest.digest();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+
+    /**
+     * @param challenge decoded challenge
+     * @param r1 computed R1
+     * @param r2 computed R2
+     * @return true if R1 and R2 are the ones of the challenge
+     */
+    public static boolean matches(Challenge challenge, BigInteger r1, BigInteger r2) {
+        return MessageDigest.isEqual(challenge.rDigest(), digest(r1, r2));
+    }
+
+    private byte[] mac(byte[] bytes) {
+        return macs.get().doFinal(bytes);
+    }
+}
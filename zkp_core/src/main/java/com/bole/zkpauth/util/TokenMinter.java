@@ -0,0 +1,201 @@
+package com.bole.zkpauth.util;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.ChaCha20ParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mints the random 128 bit ids of the challenges and the sessions
+ * Every thread draws from its own ChaCha20 keystream, keyed by the system SecureRandom and rekeyed every
+ * RESEED_BYTES bytes or RESEED_NANOS, so minting takes no lock and scales with the cores. The shared
+ * SecureRandom is only read on the rekeys. The text form is 22 base64url characters, 11 per 64 bit half.
+ */
+public class TokenMinter {
+
+    /**
+     * 128 bit id
+     * @param hi most significant bits
+     * @param lo least significant bits
+     */
+    public record Token(long hi, long lo) {
+
+        /**
+         * @return the 22 characters text form
+         */
+        public String text() {
+            return encode(hi, lo);
+        }
+    }
+
+    public static final int TEXT_LENGTH = 22;
+
+    private static final int HALF_LENGTH = 11;
+
+    private static final long RESEED_BYTES = 1L << 24;
+
+    private static final long RESEED_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final int BLOCK_BYTES = 4096;
+
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private static final byte[] DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(DIGITS, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DIGITS[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private static final SecureRandom SEEDS = new SecureRandom();
+
+    private final ThreadLocal<Stream> streams = ThreadLocal.withInitial(Stream::new);
+
+    /**
+     * @return a new random id
+     */
+    public Token next() {
+        Stream stream = streams.get();
+        return new Token(stream.nextLong(), stream.nextLong());
+    }
+
+    /**
+     * @return the text form of a new random id
+     */
+    public String nextText() {
+        Stream stream = streams.get();
+        return encode(stream.nextLong(), stream.nextLong());
+    }
+
+    /**
+     * @return 64 random bits
+     */
+    public long nextLong() {
+        return streams.get().nextLong();
+    }
+
+    /**
+     * @param hi most significant bits
+     * @param lo least significant bits
+     * @return the 22 characters text form of the id
+     */
+    public static String encode(long hi, long lo) {
+        char[] text = new char[TEXT_LENGTH];
+        encodeHalf(hi, text, 0);
+        encodeHalf(lo, text, HALF_LENGTH);
+        return new String(text);
+    }
+
+    /**
+     * @param text text form of an id
+     * @return true if text is the text form of an id
+     */
+    public static boolean isToken(CharSequence text) {
+        if (text == null || text.length() != TEXT_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < TEXT_LENGTH; i++) {
+            char ch = text.charAt(i);
+            if (ch >= 128 || DIGITS[ch] < 0) {
+                return false;
+            }
+        }
+        // the first character of a half holds its 4 top bits only
+        return DIGITS[text.charAt(0)] < 16 && DIGITS[text.charAt(HALF_LENGTH)] < 16;
+    }
+
+    /**
+     * @param text text form of an id, checked by isToken
+     * @return the most significant bits of the id
+     */
+    public static long high(CharSequence text) {
+        return decodeHalf(text, 0);
+    }
+
+    /**
+     * @param text text form of an id, checked by isToken
+     * @return the least significant bits of the id
+     */
+    public static long low(CharSequence text) {
+        return decodeHalf(text, HALF_LENGTH);
+    }
+
+    private static void encodeHalf(long bits, char[] text, int offset) {
+        for (int i = offset + HALF_LENGTH - 1; i >= offset; i--) {
+            text[i] = ALPHABET[(int) bits & 63];
+            bits >>>= 6;
+        }
+    }
+
+    private static long decodeHalf(CharSequence text, int offset) {
+        long bits = 0;
+        for (int i = offset; i < offset + HALF_LENGTH; i++) {
+            bits = (bits << 6) | DIGITS[text.charAt(i)];
+        }
+        return bits;
+    }
+
+    /**
+     * Keystream of a thread
+     */
+    private static final class Stream {
+
+        private final ByteBuffer block = ByteBuffer.allocate(BLOCK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        private final byte[] zeros = new byte[BLOCK_BYTES];
+
+        private Cipher cipher;
+
+        private long bytesLeft;
+
+        private long reseedAt;
+
+        Stream() {
+            block.position(BLOCK_BYTES);
+        }
+
+        long nextLong() {
+            if (block.remaining() < Long.BYTES) {
+                refill();
+            }
+            return block.getLong();
+        }
+
+        private void refill() {
+            if (cipher == null || bytesLeft <= 0 || System.nanoTime() - reseedAt >= 0) {
+                reseed();
+            }
+            try {
+                cipher.update(zeros, 0, BLOCK_BYTES, block.array(), 0);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("ChaCha20 keystream failed", ex);
+            }
+            block.clear();
+            bytesLeft -= BLOCK_BYTES;
+        }
+
+        private void reseed() {
+            byte[] key = new byte[32];
+            byte[] nonce = new byte[12];
+            SEEDS.nextBytes(key);
+            SEEDS.nextBytes(nonce);
+            try {
+                cipher = Cipher.getInstance("ChaCha20");
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "ChaCha20"),
+                        new ChaCha20ParameterSpec(nonce, 0));
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("ChaCha20 not available", ex);
+            }
+            bytesLeft = RESEED_BYTES;
+            reseedAt = System.nanoTime() + RESEED_NANOS;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.bole.zkpauth.util;
 
+import com.bole.zkpauth.domain.GroupParameters;
+
 import java.math.BigInteger;
 
 /**
@@ -39,6 +41,38 @@ public class ZkpUtil {
         return  rS;
     }
 
+    /**
+     * Compute the values of R1 and R2 with the shared state of the group parameters, same results as
+     * computeR1R2(p, g, h, s, c, y1, y2): g^s mod p from the fixed-base table of the group and y^c mod p
+     * by modPow, instead of the full g^s and y^c reduced at the end
+     *
+     * @param group interned P, G and H
+     * @param s  computed key to answer to the challenge
+     * @param c  random key
+     * @param y1 Prover shared key
+     * @param y2 Prover shared key
+     * @return java.math.BigInteger[] with R1 and R2
+     */
+    public static BigInteger[] computeR1R2(
+            GroupParameters group,
+            BigInteger s,
+            BigInteger c,
+            BigInteger y1,
+            BigInteger y2) {
+        BigInteger p = group.getP();
+        int sInt = s.intValue();
+        int cInt = c.intValue();
+        if (sInt < 0 || cInt < 0 || p.signum() <= 0) {
+            // negative exponents and moduli keep the errors of the plain computation
+            return computeR1R2(p, group.getG(), group.getH(), s, c, y1, y2);
+        }
+        BigInteger exponent = BigInteger.valueOf(cInt);
+        BigInteger[] rS = new BigInteger[2];
+        rS[0] = group.gPow(sInt).multiply(y1.modPow(exponent, p)).mod(p);
+        rS[1] = group.hPow(sInt).multiply(y2.modPow(exponent, p)).mod(p);
+        return rS;
+    }
+
     /**
      *  Find the largest prime factor - the one that can no longer be
      *  divided by any other number except itself and 1
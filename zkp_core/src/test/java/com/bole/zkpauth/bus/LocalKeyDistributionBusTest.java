@@ -0,0 +1,176 @@
+package com.bole.zkpauth.bus;
+
+import com.bole.zkpauth.cache.ConcurrentMapCache;
+import com.bole.zkpauth.cache.GroupRegistry;
+import com.bole.zkpauth.cache.RegistryStore;
+import com.bole.zkpauth.domain.GroupParameters;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the in-process key distribution and measure the ingestion without a broker
+ * @com.bole.zkpauth.bus.LocalKeyDistributionBus
+ */
+@Slf4j
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class LocalKeyDistributionBusTest {
+
+    @Test
+    public void givenPublishedKeys_whenReady_thenKeysIngested() throws Exception {
+        ConcurrentMapCache<String, GroupParameters> keys = new ConcurrentMapCache<>(60000L, 60000L, 16);
+        LocalKeyDistributionBus bus = new LocalKeyDistributionBus(8);
+        bus.start(new KeyIngestor(keys));
+
+        bus.publish(new KeyRecord("blopes", "109,9,27", 2));
+        bus.publish(new KeyRecord("blopes", "119,19,127", 1));
+        bus.publish(new KeyRecord("john", "109,9,27", -1));
+
+        assertTrue(bus.awaitReady(5, TimeUnit.SECONDS), "Bus not ready");
+        bus.shutdown();
+
+        assertArrayEquals(new BigInteger[]{BigInteger.valueOf(109), BigInteger.valueOf(9), BigInteger.valueOf(27)},
+                keys.get("blopes").keys(), "Stale version applied");
+        assertNotNull(keys.get("john"));
+    }
+
+    @Test
+    public void givenMalformedRecords_whenDispatched_thenSkippedAndTheOthersIngested() throws Exception {
+        ConcurrentMapCache<String, GroupParameters> keys = new ConcurrentMapCache<>(60000L, 60000L, 16);
+        LocalKeyDistributionBus bus = new LocalKeyDistributionBus(8);
+        bus.start(new KeyIngestor(keys));
+
+        bus.publish(new KeyRecord("malformed", "109,nine,27", 1));
+        bus.publish(new KeyRecord("plain", "109,9,2x7", -1));
+        bus.publish(new KeyRecord(null, "109,9,27", -1));
+        bus.publish(new KeyRecord("nokeys", null, 1));
+        bus.publish(new KeyRecord("short", "109,9", 1));
+        bus.publish(new KeyRecord("blopes", "109,9,27", 1));
+        assertTrue(bus.awaitReady(5, TimeUnit.SECONDS), "Bus not ready");
+
+        assertNull(keys.get("malformed"));
+        assertNull(keys.get("plain"));
+        assertNull(keys.get("nokeys"));
+        assertNull(keys.get("short"));
+        assertNotNull(keys.get("blopes"));
+
+        // single record path, as the Kafka consumer once caught up
+        new KeyIngestor(keys).apply(new KeyRecord("malformed", "1O9,9,27", 2));
+        assertNull(keys.get("malformed"));
+        bus.shutdown();
+    }
+
+    @Test
+    public void givenRecordsWithRegisteredKeys_whenIngested_thenRegisteredWithTheirRecord() throws Exception {
+        ConcurrentMapCache<String, GroupParameters> keys = new ConcurrentMapCache<>(60000L, 60000L, 16);
+        RegistryStore registry = new RegistryStore(60_000, 60_000);
+        KeyIngestor ingestor = new KeyIngestor(keys, null, new GroupRegistry(16), registry);
+        LocalKeyDistributionBus bus = new LocalKeyDistributionBus(8);
+        bus.start(ingestor);
+
+        bus.publish(new KeyRecord("blopes", "109,9,27,5,6", 2));
+        bus.publish(new KeyRecord("blopes", "119,19,127,7,8", 1));
+        bus.publish(new KeyRecord("john", "109,9,27", -1));
+        bus.publish(new KeyRecord("plain", "109,9,27,3,4", -1));
+        bus.publish(new KeyRecord("malformed", "109,9,27,x,4", 1));
+        assertTrue(bus.awaitReady(5, TimeUnit.SECONDS), "Bus not ready");
+        bus.shutdown();
+
+        assertEquals(BigInteger.valueOf(5), registry.get("blopes").y1(), "Keys of a stale record registered");
+        assertEquals(BigInteger.valueOf(6), registry.get("blopes").y2());
+        assertEquals(BigInteger.valueOf(3), registry.get("plain").y1());
+        assertNotNull(keys.get("john"));
+        assertNull(registry.get("john"));
+        assertNull(keys.get("malformed"));
+        assertNull(registry.get("malformed"));
+
+        // single record path, as the Kafka consumer once caught up
+        ingestor.apply(new KeyRecord("blopes", "109,9,27,5,6", 2));
+        assertEquals(1, registry.get("blopes").epoch(), "Duplicate record registered as a new epoch");
+        ingestor.apply(new KeyRecord("blopes", "109,9,27,9,10", 3));
+        ingestor.apply(new KeyRecord("blopes", "119,19,127,7,8", 1));
+        assertEquals(BigInteger.valueOf(9), registry.get("blopes").y1());
+        assertEquals(2, registry.get("blopes").epoch());
+    }
+
+    @Test
+    public void givenAFailingIngestor_whenDispatched_thenTheNextBatchesDelivered() throws Exception {
+        ConcurrentMapCache<String, GroupParameters> keys = new ConcurrentMapCache<>(60000L, 60000L, 16);
+        AtomicBoolean failed = new AtomicBoolean();
+        LocalKeyDistributionBus bus = new LocalKeyDistributionBus(8);
+        bus.start(new KeyIngestor(keys) {
+            @Override
+            public void applyBulk(Collection<KeyRecord> records) {
+                if (failed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("ingestion failure");
+                }
+                super.applyBulk(records);
+            }
+        });
+
+        bus.publish(new KeyRecord("lost", "109,9,27", 1));
+        assertTrue(bus.awaitReady(5, TimeUnit.SECONDS), "Failed batch blocks the bus");
+        bus.publish(new KeyRecord("blopes", "109,9,27", 1));
+        assertTrue(bus.awaitReady(5, TimeUnit.SECONDS), "Dispatcher stopped after a failed batch");
+        bus.shutdown();
+
+        assertTrue(failed.get());
+        assertNull(keys.get("lost"));
+        assertNotNull(keys.get("blopes"));
+    }
+
+    @Test
+    public void givenAFullRingBuffer_whenOffer_thenRejected() {
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ringBuffer.offer(i));
+        }
+        assertFalse(ringBuffer.offer(4));
+        assertEquals(0, ringBuffer.poll());
+        assertTrue(ringBuffer.offer(4));
+    }
+
+    @Test
+    public void givenConcurrentPublishers_whenReady_thenAllKeysIngested() throws Exception {
+        int publishers = 4;
+        int perPublisher = 50_000;
+        ConcurrentMapCache<String, GroupParameters> keys = new ConcurrentMapCache<>(60000L, 60000L, publishers * perPublisher);
+        LocalKeyDistributionBus bus = new LocalKeyDistributionBus(4096);
+        bus.start(new KeyIngestor(keys));
+
+        Instant start = Instant.now();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < publishers; t++) {
+            final int publisher = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perPublisher; i++) {
+                    bus.publish(new KeyRecord("user-" + publisher + "-" + i, "109,9,27", i));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(bus.awaitReady(30, TimeUnit.SECONDS), "Bus not ready");
+        long elapsed = Duration.between(start, Instant.now()).toMillis();
+        bus.shutdown();
+
+        log.info("elapsed time (ms): " + elapsed + " for " + (publishers * perPublisher) + " keys");
+        for (int t = 0; t < publishers; t++) {
+            assertNotNull(keys.get("user-" + t + "-" + (perPublisher - 1)));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.bole.zkpauth.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the versioned last-write-wins updates
+ * @com.bole.zkpauth.cache.ConcurrentMapCache
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ConcurrentMapCacheTest {
+
+    @Test
+    public void givenANewerVersion_whenPutIfNewer_thenValueReplaced() {
+        ConcurrentMapCache<String, String> cache = new ConcurrentMapCache<>(60000L, 60000L, 16);
+
+        assertTrue(cache.putIfNewer("blopes", "v1", 1L));
+        assertTrue(cache.putIfNewer("blopes", "v2", 2L));
+        assertEquals("v2", cache.get("blopes"));
+    }
+
+    @Test
+    public void givenAStaleOrDuplicateVersion_whenPutIfNewer_thenDropped() {
+        ConcurrentMapCache<String, String> cache = new ConcurrentMapCache<>(60000L, 60000L, 16);
+
+        assertTrue(cache.putIfNewer("blopes", "v5", 5L));
+        assertFalse(cache.putIfNewer("blopes", "v3", 3L), "Stale version applied");
+        assertFalse(cache.putIfNewer("blopes", "v5bis", 5L), "Duplicate version applied");
+        assertEquals("v5", cache.get("blopes"));
+    }
+
+    @Test
+    public void givenABatch_whenPutAllIfNewer_thenOnlyNewerApplied() {
+        ConcurrentMapCache<String, String> cache = new ConcurrentMapCache<>(60000L, 60000L, 16);
+        cache.putIfNewer("blopes", "v5", 5L);
+
+        Set<String> applied = cache.putAllIfNewer(Map.of("blopes", "v4", "john", "v1"), Map.of("blopes", 4L, "john", 1L));
+
+        assertEquals(Set.of("john"), applied);
+        assertEquals("v5", cache.get("blopes"));
+        assertEquals("v1", cache.get("john"));
+    }
+
+    @Test
+    public void givenConcurrentWriters_whenPutIfNewer_thenHighestVersionWins() throws Exception {
+        ConcurrentMapCache<String, Long> cache = new ConcurrentMapCache<>(60000L, 60000L, 16);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            futures.add(executor.submit(() -> {
+                for (long v = offset; v < 10000; v += 4) {
+                    cache.putIfNewer("blopes", v, v);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+
+        assertEquals(9999L, cache.get("blopes"));
+    }
+}
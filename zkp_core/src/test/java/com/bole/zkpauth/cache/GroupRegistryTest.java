@@ -0,0 +1,77 @@
+package com.bole.zkpauth.cache;
+
+import com.bole.zkpauth.bus.KeyIngestor;
+import com.bole.zkpauth.bus.KeyRecord;
+import com.bole.zkpauth.domain.GroupParameters;
+import com.bole.zkpauth.util.ZkpUtil;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the interning of the group parameters
+ * @com.bole.zkpauth.cache.GroupRegistry
+ */
+public class GroupRegistryTest {
+
+    @Test
+    public void givenUsersOfTheSameParameters_whenIngested_thenParametersShared() {
+        ConcurrentMapCache<String, GroupParameters> keys = new ConcurrentMapCache<>(60000L, 60000L, 16);
+        GroupRegistry groups = new GroupRegistry(16);
+        KeyIngestor ingestor = new KeyIngestor(keys, null, groups);
+        ingestor.apply(new KeyRecord("shared1", "109,9,27", -1));
+        ingestor.apply(new KeyRecord("shared2", "109,9,27", -1));
+        ingestor.apply(new KeyRecord("shared3", "113,9,27", -1));
+
+        assertSame(keys.get("shared1"), keys.get("shared2"));
+        assertNotSame(keys.get("shared1"), keys.get("shared3"));
+        assertEquals(2, groups.size());
+
+        BigInteger[] pgh = {BigInteger.valueOf(109), BigInteger.valueOf(9), BigInteger.valueOf(27)};
+        GroupParameters group = groups.intern(pgh);
+        assertSame(keys.get("shared1"), group);
+        assertNotSame(pgh, group.keys(), "Caller array retained");
+    }
+
+    @Test
+    public void givenMoreParametersThanTheMax_whenInterned_thenRegistryBoundedAndUsersKeepTheirs() {
+        ConcurrentMapCache<String, GroupParameters> keys = new ConcurrentMapCache<>(60000L, 60000L, 1024);
+        GroupRegistry groups = new GroupRegistry(8);
+        KeyIngestor ingestor = new KeyIngestor(keys, null, groups);
+        for (int i = 0; i < 1000; i++) {
+            ingestor.apply(new KeyRecord("user" + i, (1000 + i) + ",9,27", -1));
+        }
+
+        assertTrue(groups.size() <= 8, groups.size() + " parameters kept");
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(BigInteger.valueOf(1000 + i), keys.get("user" + i).getP());
+        }
+        // a new user of retained parameters still shares them
+        ingestor.apply(new KeyRecord("late", "1999,9,27", -1));
+        assertSame(keys.get("user999"), keys.get("late"));
+    }
+
+    @Test
+    public void givenInternedParameters_whenComputeR1R2_thenSameAsThePlainComputation() {
+        BigInteger p = BigInteger.valueOf(109);
+        BigInteger g = BigInteger.valueOf(9);
+        BigInteger h = BigInteger.valueOf(27);
+        BigInteger y1 = BigInteger.valueOf(64);
+        BigInteger y2 = BigInteger.valueOf(45);
+        GroupParameters group = new GroupRegistry(1).intern(p, g, h);
+
+        for (int s = 0; s < 300; s += 7) {
+            for (int c = 0; c < 40; c += 3) {
+                BigInteger bs = BigInteger.valueOf(s);
+                BigInteger bc = BigInteger.valueOf(c);
+                assertArrayEquals(ZkpUtil.computeR1R2(p, g, h, bs, bc, y1, y2),
+                        ZkpUtil.computeR1R2(group, bs, bc, y1, y2), "s " + s + " c " + c);
+            }
+        }
+        BigInteger large = BigInteger.valueOf(Integer.MAX_VALUE);
+        assertArrayEquals(new BigInteger[]{g.modPow(large, p), h.modPow(large, p)},
+                ZkpUtil.computeR1R2(group, large, BigInteger.ZERO, y1, y2));
+    }
+}
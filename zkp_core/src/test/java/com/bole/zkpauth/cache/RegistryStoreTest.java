@@ -0,0 +1,216 @@
+package com.bole.zkpauth.cache;
+
+import com.bole.zkpauth.domain.UserRecord;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the compact store of the registered keys
+ * @com.bole.zkpauth.cache.RegistryStore
+ */
+public class RegistryStoreTest {
+
+    @Test
+    public void givenRegisteredUsers_whenGet_thenKeysMaterializedFromTheSlab() {
+        RegistryStore store = new RegistryStore(60_000, 60_000);
+        Random random = new Random(7);
+        Map<String, BigInteger[]> registered = new HashMap<>();
+        Map<String, byte[]> batch = new HashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            String user = i % 3 == 0 ? "\u7528\u6237" + i : "user" + i;
+            BigInteger y1 = new BigInteger(2048, random);
+            BigInteger y2 = new BigInteger(256, random).negate();
+            registered.put(user, new BigInteger[]{y1, y2});
+            if (i % 2 == 0) {
+                store.put(user, y1, y2);
+            } else {
+                batch.put(user, UserRecord.encode(user, y1, y2));
+            }
+        }
+        store.putAll(batch);
+
+        assertEquals(registered.size(), store.size());
+        registered.forEach((user, keys) -> {
+            UserRecord record = store.get(user);
+            assertNotNull(record, user);
+            assertEquals(user, record.user());
+            assertEquals(keys[0], record.y1());
+            assertEquals(keys[1], record.y2());
+        });
+        assertNull(store.get("user5000"));
+
+        store.put("user1", BigInteger.ONE, BigInteger.TWO);
+        assertEquals(BigInteger.TWO, store.get("user1").y2());
+        assertTrue(store.remove("user1"));
+        assertFalse(store.remove("user1"));
+        assertNull(store.get("user1"));
+        assertEquals(registered.size() - 1, store.size());
+        registered.keySet().stream().filter(user -> !user.equals("user1"))
+                .forEach(user -> assertNotNull(store.get(user), user));
+    }
+
+    @Test
+    public void givenIdleRecords_whenTtlElapsed_thenExpiredAndSwept() {
+        AtomicLong now = new AtomicLong();
+        RegistryStore store = new RegistryStore(4_000, 0, 4, now::get);
+        for (int i = 0; i < 100; i++) {
+            store.put("idle" + i, BigInteger.ONE, BigInteger.ONE);
+        }
+        store.put("active", BigInteger.ONE, BigInteger.ONE);
+
+        for (int second = 0; second < 6; second++) {
+            now.addAndGet(1_000);
+            assertNotNull(store.get("active"));
+        }
+        assertNull(store.get("idle0"));
+
+        for (int i = 0; i < 1_000; i++) {
+            store.put("new" + i, BigInteger.ONE, BigInteger.ONE);
+        }
+        assertEquals(1_001, store.size(), "Expired records not swept");
+        assertNotNull(store.get("active"));
+    }
+
+    @Test
+    public void givenANewRegistration_whenPreviousEpochRetired_thenReadableUntilReclaimed() {
+        AtomicLong now = new AtomicLong();
+        RegistryStore store = new RegistryStore(60_000, 5_000, 17, now::get);
+        assertEquals(1, store.put("rotated", BigInteger.ONE, BigInteger.ONE));
+        now.addAndGet(1_000);
+        assertEquals(2, store.put("rotated", BigInteger.TWO, BigInteger.TWO));
+
+        assertEquals(BigInteger.TWO, store.get("rotated").y1());
+        assertEquals(2, store.get("rotated").epoch());
+        assertEquals(BigInteger.ONE, store.get("rotated", 1).y1());
+        assertEquals(BigInteger.TWO, store.get("rotated", 2).y2());
+        assertNull(store.get("rotated", 3));
+
+        now.addAndGet(6_000);
+        assertNull(store.get("rotated", 1), "Retired epoch still readable");
+        assertEquals(2, store.epochs("rotated"));
+        assertEquals(3, store.put("rotated", BigInteger.TEN, BigInteger.TEN));
+        assertEquals(2, store.epochs("rotated"), "Retired epoch not reclaimed");
+        assertEquals(BigInteger.TWO, store.get("rotated", 2).y1());
+
+        for (int i = 0; i < 10; i++) {
+            store.put("rotated", BigInteger.valueOf(i), BigInteger.valueOf(i));
+        }
+        assertEquals(12, store.epochs("rotated"), "Epoch dropped before it was retired");
+        assertEquals(BigInteger.TWO, store.get("rotated", 2).y1());
+        assertEquals(BigInteger.valueOf(6), store.get("rotated", 10).y1());
+        assertEquals(BigInteger.valueOf(9), store.get("rotated").y1());
+        assertEquals(1, store.size());
+
+        for (int i = 0; i < 300; i++) {
+            store.put("rotated", BigInteger.valueOf(i), BigInteger.valueOf(i));
+        }
+        assertEquals(17, store.epochs("rotated"), "Epochs not bounded under a registration flood");
+        assertEquals(BigInteger.valueOf(299), store.get("rotated").y1());
+        assertEquals(BigInteger.valueOf(283), store.get("rotated", store.get("rotated").epoch() - 16).y1());
+        now.addAndGet(6_000);
+        store.put("rotated", BigInteger.ONE, BigInteger.ONE);
+        assertEquals(2, store.epochs("rotated"), "Retired epochs not reclaimed");
+    }
+
+    @Test
+    public void givenTheCurrentKeys_whenRegisteredAgain_thenSameEpoch() {
+        AtomicLong now = new AtomicLong();
+        RegistryStore store = new RegistryStore(60_000, 5_000, 4, now::get);
+        BigInteger wide = BigInteger.valueOf(256);
+        assertEquals(1, store.put("again", BigInteger.TEN, wide));
+        assertEquals(1, store.put("again", BigInteger.TEN, wide));
+        assertEquals(1, store.epochs("again"));
+
+        // same length, other keys
+        assertEquals(2, store.put("again", wide, BigInteger.TEN));
+        assertEquals(2, store.put("again", wide, BigInteger.TEN));
+        assertEquals(3, store.put("again", BigInteger.TEN, wide), "Previous keys not registered as a new epoch");
+        assertEquals(3, store.epochs("again"));
+        assertEquals(wide, store.get("again", 2).y1());
+    }
+
+    @Test
+    public void givenConcurrentRotations_whenReadByEpoch_thenKeysOfTheirEpoch() throws Exception {
+        RegistryStore store = new RegistryStore(60_000, 60_000);
+        int users = 64;
+        for (int u = 0; u < users; u++) {
+            store.put("user" + u, BigInteger.ONE, BigInteger.ONE);
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                int thread = t;
+                readers.add(executor.submit(() -> {
+                    int reads = 0;
+                    while (running.get() || reads < 1_000) {
+                        String user = "user" + (reads++ * 7 + thread) % users;
+                        UserRecord current = store.get(user);
+                        assertNotNull(current, user);
+                        // epoch e holds the keys {e, e}, retained the whole run
+                        assertEquals(BigInteger.valueOf(current.epoch()), current.y1());
+                        int previous = Math.max(1, current.epoch() - 1);
+                        UserRecord retained = store.get(user, previous);
+                        if (retained != null) {
+                            assertEquals(BigInteger.valueOf(previous), retained.y2());
+                        } else {
+                            // dropped only once the 4 epochs kept by default are newer ones
+                            assertTrue(store.get(user).epoch() - current.epoch() >= 3);
+                        }
+                    }
+                    return reads;
+                }));
+            }
+            Future<?> writer = executor.submit(() -> {
+                for (int e = 2; e <= 200; e++) {
+                    for (int u = 0; u < users; u++) {
+                        store.put("user" + u, BigInteger.valueOf(e), BigInteger.valueOf(e));
+                    }
+                }
+            });
+            writer.get();
+            running.set(false);
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get() >= 1_000);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(200, store.get("user0").epoch());
+    }
+
+    @Test
+    public void givenManyUsers_whenFootprintMeasured_thenCompactRecordsSmaller() {
+        int users = 10_000;
+        Random random = new Random(11);
+        ConcurrentMapCache<String, BigInteger[]> before = new ConcurrentMapCache<>(60_000L, 60_000L, users);
+        RegistryStore after = new RegistryStore(60_000, 60_000);
+        for (int i = 0; i < users; i++) {
+            String user = "user-" + i;
+            BigInteger y1 = new BigInteger(2048, random);
+            BigInteger y2 = new BigInteger(2048, random);
+            before.put(user, new BigInteger[]{y1, y2});
+            after.put(user, y1, y2);
+        }
+
+        long beforeBytes = GraphLayout.parseInstance(before).totalSize() / users;
+        long afterBytes = GraphLayout.parseInstance(after).totalSize() / users;
+        // the keys are 2 * 256 bytes either way, the saving is the overhead around them
+        assertTrue(beforeBytes - afterBytes >= 100, beforeBytes + " before, " + afterBytes + " after");
+    }
+}
@@ -0,0 +1,114 @@
+package com.bole.zkpauth.cache;
+
+import com.bole.zkpauth.AuthGrpc;
+import com.bole.zkpauth.AuthenticationChallengeRequest;
+import com.bole.zkpauth.RegisterRequest;
+import com.bole.zkpauth.bus.KeyIngestor;
+import com.bole.zkpauth.bus.KeyRecord;
+import com.bole.zkpauth.domain.GroupParameters;
+import com.bole.zkpauth.grpc.VerifierServer;
+import com.bole.zkpauth.kafka.ShardAssignment;
+import com.bole.zkpauth.session.SessionStore;
+import com.bole.zkpauth.util.BigIntegerCodec;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the filter of the known users
+ * @com.bole.zkpauth.cache.UserFilter
+ */
+public class UserFilterTest {
+
+    @Test
+    public void givenRecordedUsers_whenMightContain_thenNoFalseNegativeAndFewFalsePositives() throws Exception {
+        // 10 bits per record
+        UserFilter filter = new UserFilter(1 << 20);
+        int users = (8 << 20) / 10;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> adders = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                adders.add(executor.submit(() -> {
+                    for (int i = thread; i < users; i += 4) {
+                        filter.add(UserFilter.Kind.KEYS, "user" + i);
+                    }
+                }));
+            }
+            for (Future<?> adder : adders) {
+                adder.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < users; i++) {
+            assertTrue(filter.mightContain(UserFilter.Kind.KEYS, "user" + i), "False negative user" + i);
+        }
+        int falsePositives = 0;
+        int registryFalsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(UserFilter.Kind.KEYS, "unknown" + i)) {
+                falsePositives++;
+            }
+            if (filter.mightContain(UserFilter.Kind.REGISTRY, "user" + i)) {
+                registryFalsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, "False positive rate over 2%: " + falsePositives);
+        assertTrue(registryFalsePositives < 2_000, "Kinds not independent: " + registryFalsePositives);
+        assertEquals(1 << 20, filter.sizeInBytes());
+    }
+
+    @Test
+    public void givenTheVerifier_whenChallengeOfAnUnknownUser_thenRejected() throws Exception {
+        String user = "filtered";
+        UserFilter filter = new UserFilter(1 << 16);
+        ConcurrentMapCache<String, GroupParameters> keys = KeyCache.getKeys();
+        String serverName = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(serverName)
+                .addService(new VerifierServer(ShardAssignment.all(), ForkJoinPool.commonPool(), null,
+                        new SessionStore(60_000), null, filter))
+                .build().start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        try {
+            AuthGrpc.AuthBlockingStub stub = AuthGrpc.newBlockingStub(channel);
+            AuthenticationChallengeRequest request = AuthenticationChallengeRequest.newBuilder().setUser(user)
+                    .setR1(BigIntegerCodec.encode(BigInteger.valueOf(8)))
+                    .setR2(BigIntegerCodec.encode(BigInteger.valueOf(8))).build();
+
+            StatusRuntimeException unknown = assertThrows(StatusRuntimeException.class,
+                    () -> stub.createAuthenticationChallenge(request));
+            assertEquals(Status.Code.INVALID_ARGUMENT, unknown.getStatus().getCode());
+            assertEquals("Unknown user", unknown.getStatus().getDescription());
+
+            // keys ingested, still not registered
+            new KeyIngestor(keys, filter).apply(new KeyRecord(user, "23,4,4", -1));
+            assertThrows(StatusRuntimeException.class, () -> stub.createAuthenticationChallenge(request));
+
+            stub.register(RegisterRequest.newBuilder().setUser(user)
+                    .setY1(BigIntegerCodec.encode(BigInteger.TWO)).setY2(BigIntegerCodec.encode(BigInteger.TWO))
+                    .build());
+            assertFalse(stub.createAuthenticationChallenge(request).getAuthId().isEmpty());
+        } finally {
+            keys.remove(user);
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.AuthGrpc;
+import com.bole.zkpauth.AuthenticationChallengeRequest;
+import com.bole.zkpauth.AuthenticationStreamRequest;
+import com.bole.zkpauth.AuthenticationStreamResponse;
+import com.bole.zkpauth.RegisterRequest;
+import com.bole.zkpauth.RegisterResponse;
+import com.bole.zkpauth.cache.RegistryStore;
+import com.bole.zkpauth.kafka.ShardAssignment;
+import com.bole.zkpauth.session.SessionStore;
+import com.bole.zkpauth.util.BigIntegerCodec;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the adaptive concurrency limits and the load shedding
+ * @com.bole.zkpauth.grpc.AdaptiveLimit
+ * @com.bole.zkpauth.grpc.AdmissionControlInterceptor
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class AdmissionControlInterceptorTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void givenAStableRttUnderLoad_whenSamples_thenLimitGrows() {
+        AdaptiveLimit limit = new AdaptiveLimit(10, 4, 100);
+        for (int i = 0; i < 50; i++) {
+            limit.tryAcquire();
+            limit.release(MILLI, limit.getLimit());
+        }
+        assertTrue(limit.getLimit() > 10, "Limit not increased: " + limit.getLimit());
+        assertTrue(limit.getLimit() <= 100);
+    }
+
+    @Test
+    public void givenAGrowingRtt_whenSamples_thenLimitShrinks() {
+        AdaptiveLimit limit = new AdaptiveLimit(50, 4, 100);
+        limit.tryAcquire();
+        limit.release(MILLI, 50);
+        for (int i = 0; i < 100; i++) {
+            limit.tryAcquire();
+            limit.release(10 * MILLI, limit.getLimit());
+        }
+        // vegas settles once the estimated queue is between 3 and 6 calls
+        assertTrue(limit.getLimit() <= 6, "Limit not decreased: " + limit.getLimit());
+        assertTrue(limit.getLimit() >= 4);
+        assertTrue(limit.retryAfterMillis() >= 1);
+    }
+
+    @Test
+    public void givenASustainedLoad_whenProbeWindowsPass_thenNoLoadRttKept() {
+        AdaptiveLimit limit = new AdaptiveLimit(50, 4, 100);
+        limit.tryAcquire();
+        limit.release(MILLI, 0);
+        // well past a probe window of loaded calls, the loaded RTT must not become the no load one
+        for (int i = 0; i < 3000; i++) {
+            limit.tryAcquire();
+            limit.release(10 * MILLI, limit.getLimit());
+        }
+        assertTrue(limit.getLimit() <= 6, "Limit grew back at the probe: " + limit.getLimit());
+    }
+
+    @Test
+    public void givenASlowerServer_whenCallsAdmittedAlone_thenNoLoadRttFollowsIt() {
+        AdaptiveLimit limit = new AdaptiveLimit(50, 4, 100);
+        limit.tryAcquire();
+        limit.release(MILLI, 0);
+        // the no load RTT drifted to 10 ms, seen on the calls admitted alone
+        for (int i = 0; i < 2000; i++) {
+            limit.tryAcquire();
+            limit.release(10 * MILLI, i % 2 == 0 ? 0 : limit.getLimit());
+        }
+        int afterProbe = limit.getLimit();
+        for (int i = 0; i < 100; i++) {
+            limit.tryAcquire();
+            limit.release(10 * MILLI, limit.getLimit());
+        }
+        assertTrue(limit.getLimit() > afterProbe, "Limit not increased at the new no load RTT: " + limit.getLimit());
+    }
+
+    @Test
+    public void givenALightLoad_whenSamples_thenLimitUnchanged() {
+        AdaptiveLimit limit = new AdaptiveLimit(50, 4, 100);
+        limit.tryAcquire();
+        limit.release(MILLI, 1);
+        for (int i = 0; i < 100; i++) {
+            limit.tryAcquire();
+            limit.release(10 * MILLI, 1);
+        }
+        assertEquals(50, limit.getLimit());
+    }
+
+    @Test
+    public void givenTheLimitReached_whenCall_thenResourceExhaustedWithRetryHint() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AdmissionControlInterceptor interceptor = new AdmissionControlInterceptor(1, 1, 1);
+        String serverName = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(serverName)
+                .addService(ServerInterceptors.intercept(blockingService(blocked, release), interceptor))
+                .build()
+                .start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        try {
+            CompletableFuture<RegisterResponse> first = register(AuthGrpc.newStub(channel));
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+            StatusRuntimeException shed = assertThrows(StatusRuntimeException.class,
+                    () -> AuthGrpc.newBlockingStub(channel).register(RegisterRequest.getDefaultInstance()));
+            assertEquals(Status.Code.RESOURCE_EXHAUSTED, shed.getStatus().getCode());
+            Metadata trailers = Status.trailersFromThrowable(shed);
+            assertNotNull(trailers.get(AdmissionControlInterceptor.RETRY_PUSHBACK_KEY), "Retry hint missing");
+
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            waitForNoCallInFlight(interceptor.limit(AuthGrpc.METHOD_REGISTER.getFullMethodName()));
+            assertNotNull(AuthGrpc.newBlockingStub(channel).register(RegisterRequest.getDefaultInstance()));
+        } finally {
+            release.countDown();
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenACallPastItsDeadline_whenCancelled_thenSlotReleased() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AdmissionControlInterceptor interceptor = new AdmissionControlInterceptor(1, 1, 1);
+        String serverName = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(serverName)
+                .addService(ServerInterceptors.intercept(blockingService(blocked, release), interceptor))
+                .build()
+                .start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        try {
+            StatusRuntimeException timeout = assertThrows(StatusRuntimeException.class,
+                    () -> AuthGrpc.newBlockingStub(channel).withDeadlineAfter(200, TimeUnit.MILLISECONDS)
+                            .register(RegisterRequest.getDefaultInstance()));
+            assertEquals(Status.Code.DEADLINE_EXCEEDED, timeout.getStatus().getCode());
+
+            waitForNoCallInFlight(interceptor.limit(AuthGrpc.METHOD_REGISTER.getFullMethodName()));
+        } finally {
+            release.countDown();
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenFailedCalls_whenReleased_thenNoRttSample() throws Exception {
+        AdmissionControlInterceptor interceptor = new AdmissionControlInterceptor(10, 1, 10);
+        String serverName = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(serverName)
+                .addService(ServerInterceptors.intercept(new AuthGrpc.AuthImplBase() {
+                    @Override
+                    public void register(RegisterRequest request, StreamObserver<RegisterResponse> responseObserver) {
+                        if (request.getUser().isEmpty()) {
+                            responseObserver.onError(Status.INVALID_ARGUMENT.asRuntimeException());
+                            return;
+                        }
+                        responseObserver.onNext(RegisterResponse.getDefaultInstance());
+                        responseObserver.onCompleted();
+                    }
+                }, interceptor))
+                .build()
+                .start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        try {
+            AuthGrpc.AuthBlockingStub stub = AuthGrpc.newBlockingStub(channel);
+            for (int i = 0; i < 20; i++) {
+                assertThrows(StatusRuntimeException.class, () -> stub.register(RegisterRequest.getDefaultInstance()));
+            }
+            stub.register(RegisterRequest.newBuilder().setUser("valid").build());
+
+            AdaptiveLimit limit = interceptor.limit(AuthGrpc.METHOD_REGISTER.getFullMethodName());
+            waitForNoCallInFlight(limit);
+            // the fast failures do not pull the no load RTT down
+            assertEquals(1, limit.getSamples());
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenTheStreamLimitReached_whenMessage_thenAnsweredResourceExhausted() throws Exception {
+        List<Runnable> queued = new CopyOnWriteArrayList<>();
+        AdaptiveLimit streamLimit = new AdaptiveLimit(1, 1, 1);
+        String serverName = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(serverName)
+                .addService(new VerifierServer(ShardAssignment.all(), queued::add, null, new SessionStore(60_000),
+                        null, null, new RegistryStore(60_000, 60_000), streamLimit))
+                .build()
+                .start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        Map<String, AuthenticationStreamResponse> responses = new ConcurrentHashMap<>();
+        CountDownLatch answered = new CountDownLatch(2);
+        try {
+            StreamObserver<AuthenticationStreamRequest> requests = AuthGrpc.newStub(channel)
+                    .authenticateStream(new StreamObserver<>() {
+                        @Override
+                        public void onNext(AuthenticationStreamResponse response) {
+                            responses.put(response.getRequestId(), response);
+                            answered.countDown();
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                        }
+                    });
+            for (String requestId : new String[]{"admitted", "shed"}) {
+                requests.onNext(AuthenticationStreamRequest.newBuilder()
+                        .setRequestId(requestId)
+                        .setChallenge(AuthenticationChallengeRequest.newBuilder().setUser("streamed")
+                                .setR1(BigIntegerCodec.encode(BigInteger.TWO))
+                                .setR2(BigIntegerCodec.encode(BigInteger.TWO)))
+                        .build());
+            }
+            long end = System.currentTimeMillis() + 5000;
+            while (!responses.containsKey("shed") && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertEquals(Status.Code.RESOURCE_EXHAUSTED.value(), responses.get("shed").getError().getCode());
+            assertEquals(1, queued.size(), "Shed message processed");
+
+            queued.forEach(Runnable::run);
+            assertTrue(answered.await(5, TimeUnit.SECONDS));
+            assertEquals(AuthenticationStreamResponse.PayloadCase.CHALLENGE, responses.get("admitted").getPayloadCase(),
+                    responses.get("admitted").toString());
+            assertEquals(0, streamLimit.getInFlight(), "Slot not released");
+            requests.onCompleted();
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
+    private static void waitForNoCallInFlight(AdaptiveLimit limit) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (limit.getInFlight() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, limit.getInFlight(), "Slot not released");
+    }
+
+    /**
+     * the first register call blocks until release
+     */
+    private static AuthGrpc.AuthImplBase blockingService(CountDownLatch blocked, CountDownLatch release) {
+        return new AuthGrpc.AuthImplBase() {
+            @Override
+            public void register(RegisterRequest request, StreamObserver<RegisterResponse> responseObserver) {
+                if (blocked.getCount() > 0) {
+                    blocked.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                responseObserver.onNext(RegisterResponse.getDefaultInstance());
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    private static CompletableFuture<RegisterResponse> register(AuthGrpc.AuthStub stub) {
+        CompletableFuture<RegisterResponse> response = new CompletableFuture<>();
+        stub.register(RegisterRequest.getDefaultInstance(), new StreamObserver<>() {
+            @Override
+            public void onNext(RegisterResponse value) {
+                response.complete(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                response.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        return response;
+    }
+}
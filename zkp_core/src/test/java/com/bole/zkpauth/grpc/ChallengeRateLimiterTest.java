@@ -0,0 +1,153 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.AuthGrpc;
+import com.bole.zkpauth.AuthenticationAnswerRequest;
+import com.bole.zkpauth.AuthenticationChallengeRequest;
+import com.bole.zkpauth.AuthenticationChallengeResponse;
+import com.bole.zkpauth.RegisterRequest;
+import com.bole.zkpauth.cache.KeyCache;
+import com.bole.zkpauth.domain.GroupParameters;
+import com.bole.zkpauth.kafka.ShardAssignment;
+import com.bole.zkpauth.session.SessionStore;
+import com.bole.zkpauth.util.BigIntegerCodec;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the rate limits and the outstanding cap of the challenges
+ * @com.bole.zkpauth.grpc.ChallengeRateLimiter
+ */
+public class ChallengeRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void givenAUserOverItsBurst_whenAcquire_thenRejectedUntilRefilled() {
+        AtomicLong now = new AtomicLong();
+        ChallengeRateLimiter limiter = new ChallengeRateLimiter(1, 3, 0, 0, 1024, 16, 16, now::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("blopes"), "Burst rejected");
+        }
+        assertEquals(1000, limiter.tryAcquire("blopes"));
+        assertEquals(0, limiter.tryAcquire("other"), "Other user limited");
+
+        now.addAndGet(SECOND / 2);
+        assertEquals(500, limiter.tryAcquire("blopes"));
+        now.addAndGet(SECOND / 2);
+        assertEquals(0, limiter.tryAcquire("blopes"));
+        assertTrue(limiter.tryAcquire("blopes") > 0);
+    }
+
+    @Test
+    public void givenManyUsers_whenOverTheGlobalRate_thenRejected() {
+        AtomicLong now = new AtomicLong();
+        ChallengeRateLimiter limiter = new ChallengeRateLimiter(1, 1, 100, 10, 1024, 16, 16, now::get);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, limiter.tryAcquire("user" + i));
+        }
+        assertEquals(10, limiter.tryAcquire("user10"));
+        now.addAndGet(SECOND / 100);
+        assertEquals(0, limiter.tryAcquire("user11"));
+    }
+
+    @Test
+    public void givenAHotUser_whenPromoted_thenLimitedExactlyAndColdUsersAdmitted() {
+        AtomicLong now = new AtomicLong();
+        ChallengeRateLimiter limiter = new ChallengeRateLimiter(1, 2, 0, 0, 1024, 16, 16, now::get);
+
+        int admitted = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (limiter.tryAcquire("attacker") == 0) {
+                admitted++;
+            }
+            if (i % 100 == 0) {
+                assertEquals(0, limiter.tryAcquire("cold" + i), "Cold user throttled by the hot one");
+            }
+            now.addAndGet(SECOND / 1000);
+        }
+        assertEquals(1, limiter.hotUsers());
+        assertTrue(admitted >= 11 && admitted <= 12, "Hot user not limited to its rate: " + admitted);
+    }
+
+    @Test
+    public void givenTooManyHotUsers_whenIdle_thenExactBucketsDropped() {
+        AtomicLong now = new AtomicLong();
+        ChallengeRateLimiter limiter = new ChallengeRateLimiter(1, 1, 0, 0, 1024, 4, 16, now::get);
+        for (int i = 0; i < 4; i++) {
+            limiter.tryAcquire("hot" + i);
+            limiter.tryAcquire("hot" + i);
+        }
+        assertEquals(4, limiter.hotUsers());
+
+        now.addAndGet(10 * SECOND);
+        limiter.tryAcquire("new");
+        limiter.tryAcquire("new");
+        assertEquals(1, limiter.hotUsers(), "Idle exact buckets kept");
+    }
+
+    @Test
+    public void givenTheVerifier_whenChallengesOverTheLimits_thenExhaustedAndOldestDropped() throws Exception {
+        String user = "limited";
+        // p = 23, g = h = 4, x = 6: y1 = y2 = 2
+        KeyCache.getKeys().put(user, new GroupParameters(BigInteger.valueOf(23), BigInteger.valueOf(4),
+                BigInteger.valueOf(4)));
+        ChallengeRateLimiter limiter = new ChallengeRateLimiter(0.001, 3, 0, 0, 1024, 16, 2);
+        String serverName = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(serverName)
+                .addService(new VerifierServer(ShardAssignment.all(), ForkJoinPool.commonPool(), null,
+                        new SessionStore(60_000), limiter))
+                .build().start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        try {
+            AuthGrpc.AuthBlockingStub stub = AuthGrpc.newBlockingStub(channel);
+            stub.register(RegisterRequest.newBuilder().setUser(user)
+                    .setY1(BigIntegerCodec.encode(BigInteger.TWO)).setY2(BigIntegerCodec.encode(BigInteger.TWO))
+                    .build());
+            AuthenticationChallengeRequest request = AuthenticationChallengeRequest.newBuilder().setUser(user)
+                    .setR1(BigIntegerCodec.encode(BigInteger.valueOf(8)))
+                    .setR2(BigIntegerCodec.encode(BigInteger.valueOf(8))).build();
+            List<AuthenticationChallengeResponse> challenges = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                challenges.add(stub.createAuthenticationChallenge(request));
+            }
+
+            StatusRuntimeException limited = assertThrows(StatusRuntimeException.class,
+                    () -> stub.createAuthenticationChallenge(request));
+            assertEquals(Status.Code.RESOURCE_EXHAUSTED, limited.getStatus().getCode());
+            String pushback = limited.getTrailers().get(
+                    Metadata.Key.of("grpc-retry-pushback-ms", Metadata.ASCII_STRING_MARSHALLER));
+            assertTrue(Long.parseLong(pushback) > 0);
+
+            // cap of 2 outstanding challenges, the first one was dropped
+            StatusRuntimeException dropped = assertThrows(StatusRuntimeException.class,
+                    () -> stub.verifyAuthentication(AuthenticationAnswerRequest.newBuilder()
+                            .setAuthId(challenges.get(0).getAuthId())
+                            .setS(BigIntegerCodec.encode(BigInteger.ONE)).build()));
+            assertEquals("Invalid c key", dropped.getStatus().getDescription());
+            assertNotNull(stub.verifyAuthentication(AuthenticationAnswerRequest.newBuilder()
+                    .setAuthId(challenges.get(2).getAuthId())
+                    .setS(BigIntegerCodec.encode(BigInteger.ONE)).build()));
+        } finally {
+            KeyCache.getKeys().remove(user);
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.bole.zkpauth.grpc;
+
+import com.bole.zkpauth.*;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class to cover the latency histograms of the grpc calls and their Admin service
+ * @com.bole.zkpauth.grpc.LatencyRecorder
+ * @com.bole.zkpauth.grpc.LatencyServerInterceptor
+ * @com.bole.zkpauth.grpc.AdminServer
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class LatencyRecorderTest {
+
+    @Test
+    public void givenConcurrentCalls_whenRotate_thenAllRecordedPerMethodAndStatus() throws Exception {
+        try (LatencyRecorder recorder = new LatencyRecorder(60000L)) {
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 1; i <= 10_000; i++) {
+                        recorder.record("zkp_auth.Auth/Register", Status.Code.OK, i * 1000L);
+                    }
+                    recorder.record("zkp_auth.Auth/Register", Status.Code.INVALID_ARGUMENT, 5000L);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            pool.shutdown();
+
+            recorder.rotate();
+            List<LatencyRecorder.Latency> latencies = recorder.snapshot().latencies();
+
+            assertEquals(2, latencies.size());
+            LatencyRecorder.Latency ok = find(latencies, "zkp_auth.Auth/Register", "OK");
+            assertEquals(40_000, ok.count());
+            assertEquals(5000, ok.p50Micros(), 5);
+            assertEquals(10_000, ok.maxMicros(), 10);
+            assertEquals(4, find(latencies, "zkp_auth.Auth/Register", "INVALID_ARGUMENT").count());
+
+            recorder.rotate();
+            assertTrue(recorder.snapshot().latencies().isEmpty(), "Interval not reset");
+        }
+    }
+
+    @Test
+    public void givenInterceptedCalls_whenGetLatencies_thenServedByTheAdminService() throws Exception {
+        String serverName = InProcessServerBuilder.generateName();
+        try (LatencyRecorder recorder = new LatencyRecorder(60000L)) {
+            Server server = InProcessServerBuilder.forName(serverName)
+                    .directExecutor()
+                    .addService(ServerInterceptors.intercept(new VerifierServer(),
+                            new LatencyServerInterceptor(recorder)))
+                    .addService(new AdminServer(recorder))
+                    .build()
+                    .start();
+            ManagedChannel channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+            try {
+                AuthGrpc.AuthBlockingStub stub = AuthGrpc.newBlockingStub(channel);
+                stub.register(RegisterRequest.newBuilder()
+                        .setUser("blopes")
+                        .setY1(ByteString.copyFrom(BigInteger.valueOf(75).toByteArray()))
+                        .setY2(ByteString.copyFrom(BigInteger.valueOf(63).toByteArray()))
+                        .build());
+                assertThrows(StatusRuntimeException.class, () -> stub.createAuthenticationChallenge(
+                        AuthenticationChallengeRequest.getDefaultInstance()));
+
+                recorder.rotate();
+                LatencyResponse response = AdminGrpc.newBlockingStub(channel)
+                        .getLatencies(LatencyRequest.getDefaultInstance());
+
+                assertEquals(2, response.getLatenciesCount());
+                assertTrue(response.getEndTimeMillis() >= response.getStartTimeMillis());
+                assertTrue(response.getLatenciesList().stream().anyMatch(latency ->
+                        latency.getMethod().equals("zkp_auth.Auth/Register")
+                                && latency.getStatus().equals("OK") && latency.getCount() == 1));
+                assertTrue(response.getLatenciesList().stream().anyMatch(latency ->
+                        latency.getMethod().equals("zkp_auth.Auth/CreateAuthenticationChallenge")
+                                && latency.getStatus().equals("INVALID_ARGUMENT") && latency.getCount() == 1));
+            } finally {
+                channel.shutdownNow();
+                server.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void givenACancelledCall_whenIntercepted_thenRecordedOnceAsCancelled() {
+        try (LatencyRecorder recorder = new LatencyRecorder(60000L)) {
+            ServerCall<RegisterRequest, RegisterResponse> call = mock(ServerCall.class);
+            when(call.getMethodDescriptor()).thenReturn(AuthGrpc.METHOD_REGISTER);
+            ServerCall.Listener<RegisterRequest> handlerListener = mock(ServerCall.Listener.class);
+
+            ServerCall.Listener<RegisterRequest> listener = new LatencyServerInterceptor(recorder)
+                    .interceptCall(call, new Metadata(), (serverCall, headers) -> handlerListener);
+            listener.onCancel();
+
+            verify(handlerListener).onCancel();
+            recorder.rotate();
+            List<LatencyRecorder.Latency> latencies = recorder.snapshot().latencies();
+            assertEquals(1, latencies.size());
+            assertEquals(1, find(latencies, "zkp_auth.Auth/Register", "CANCELLED").count());
+        }
+    }
+
+    private static LatencyRecorder.Latency find(List<LatencyRecorder.Latency> latencies, String method, String status) {
+        return latencies.stream()
+                .filter(latency -> latency.method().equals(method) && latency.status().equals(status))
+                .findFirst()
+                .orElseThrow();
+    }
+}
@@ -10,16 +10,31 @@ import com.bole.zkpauth.AuthenticationChallengeResponse;
 import com.bole.zkpauth.ErrorResponse;
 import com.bole.zkpauth.RegisterRequest;
 import com.bole.zkpauth.RegisterResponse;
+import com.bole.zkpauth.util.BigIntegerCodec;
 import com.bole.zkpauth.util.ZkpUtil;
 import com.google.protobuf.ByteString;
 import com.bole.zkpauth.cache.KeyCache;
+import com.bole.zkpauth.domain.GroupParameters;
+import com.bole.zkpauth.cache.RegistryStore;
+import com.bole.zkpauth.kafka.ShardAssignment;
+import com.bole.zkpauth.session.SessionStore;
 import io.grpc.*;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.StreamObserver;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.*;
 
 import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -70,10 +85,10 @@ public class VerifierServerTest {
 
     @BeforeEach
     public void startKafkaCache() {
-        KeyCache.getKeys().put("blopes",new BigInteger[]{
+        KeyCache.getKeys().put("blopes", new GroupParameters(
                 BigInteger.valueOf(109), //p
                 BigInteger.valueOf(9), // g
-                BigInteger.valueOf(27)}); //h
+                BigInteger.valueOf(27))); //h
     }
 
     @AfterEach
@@ -283,10 +298,10 @@ public class VerifierServerTest {
 
 
         //replace pub keys with wrong ones
-        KeyCache.getKeys().put("blopes",new BigInteger[]{
+        KeyCache.getKeys().put("blopes", new GroupParameters(
                 BigInteger.valueOf(119), //p
                 BigInteger.valueOf(19), // g
-                BigInteger.valueOf(127)}); //h
+                BigInteger.valueOf(127))); //h
 
         log.debug("Verify process request sent");
 
@@ -336,12 +351,283 @@ public class VerifierServerTest {
     }
 
 
+    /**
+     * For
+     * registerBatch(io.grpc.stub.StreamObserver<com.bole.zkpauth.RegisterBatchResponse> responseObserver)
+     */
+    @Test
+    public void givenABatch_whenRegisterBatch_thenRegisteredAndRejectedUsers() throws Exception {
+        // own server and user, nothing registered before the batch
+        String user = "batch-login";
+        KeyCache.getKeys().put(user, new GroupParameters(BigInteger.valueOf(109), BigInteger.valueOf(9),
+                BigInteger.valueOf(27)));
+        String serverName = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(serverName)
+                .addService(new VerifierServer(ShardAssignment.all()))
+                .build().start();
+        ManagedChannel batchChannel = InProcessChannelBuilder.forName(serverName).build();
+        try {
+            CompletableFuture<RegisterBatchResponse> result = new CompletableFuture<>();
+            StreamObserver<RegisterRequest> requests = AuthGrpc.newStub(batchChannel)
+                    .registerBatch(new StreamObserver<>() {
+                        @Override
+                        public void onNext(RegisterBatchResponse response) {
+                            result.complete(response);
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                            result.completeExceptionally(t);
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                        }
+                    });
+
+            for (String batchUser : new String[]{"batch-1", "", "batch-2", user, "batch-1"}) {
+                requests.onNext(RegisterRequest.newBuilder()
+                        .setUser(batchUser)
+                        .setY1(ByteString.copyFrom(BigInteger.valueOf(75).toByteArray()))
+                        .setY2(ByteString.copyFrom(BigInteger.valueOf(63).toByteArray()))
+                        .build());
+            }
+            requests.onCompleted();
+
+            RegisterBatchResponse response = result.get(10, TimeUnit.SECONDS);
+            assertEquals(3, response.getRegistered(), "Repeated user counted twice");
+            assertEquals(List.of(""), response.getRejectedUsersList());
+
+            // the user logs in with the keys registered by the batch
+            AuthGrpc.AuthBlockingStub batchStub = AuthGrpc.newBlockingStub(batchChannel);
+            BigInteger[] r1r2 = computeR1R2(
+                    BigInteger.valueOf(7), //k
+                    BigInteger.valueOf(109), //p
+                    BigInteger.valueOf(9), //g
+                    BigInteger.valueOf(27)); //h
+            AuthenticationChallengeResponse challenge = batchStub.createAuthenticationChallenge(
+                    AuthenticationChallengeRequest.newBuilder()
+                            .setUser(user)
+                            .setR1(ByteString.copyFrom(r1r2[0].toByteArray()))
+                            .setR2(ByteString.copyFrom(r1r2[1].toByteArray()))
+                            .build());
+            BigInteger s = computeS(
+                    BigInteger.valueOf(7), //k
+                    new BigInteger(challenge.getC().toByteArray()),
+                    BigInteger.valueOf(3), // x
+                    BigInteger.valueOf(54)); //q
+            AuthenticationAnswerResponse answer = batchStub.verifyAuthentication(
+                    AuthenticationAnswerRequest.newBuilder()
+                            .setAuthId(challenge.getAuthId())
+                            .setS(ByteString.copyFrom(s.toByteArray()))
+                            .build());
+
+            assertFalse(answer.getSessionId().isEmpty(), "Invalid session id");
+        } finally {
+            KeyCache.getKeys().remove(user);
+            batchChannel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenInjectedStores_whenRegisterAndLogin_thenKeysAndSessionHeldByThem() throws Exception {
+        String user = "stores-login";
+        KeyCache.getKeys().put(user, new GroupParameters(BigInteger.valueOf(109), BigInteger.valueOf(9),
+                BigInteger.valueOf(27)));
+        RegistryStore registryStore = new RegistryStore(60_000, 60_000);
+        SessionStore sessionStore = new SessionStore(60_000);
+        String serverName = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(serverName)
+                .addService(new VerifierServer(ShardAssignment.all(), ForkJoinPool.commonPool(), null,
+                        sessionStore, null, null, registryStore))
+                .build().start();
+        ManagedChannel storesChannel = InProcessChannelBuilder.forName(serverName).build();
+        try {
+            AuthGrpc.AuthBlockingStub storesStub = AuthGrpc.newBlockingStub(storesChannel);
+            storesStub.register(RegisterRequest.newBuilder()
+                    .setUser(user)
+                    .setY1(ByteString.copyFrom(BigInteger.valueOf(75).toByteArray()))
+                    .setY2(ByteString.copyFrom(BigInteger.valueOf(63).toByteArray()))
+                    .build());
+            assertNotNull(registryStore.get(user), "Keys not in the injected registry");
+
+            BigInteger[] r1r2 = computeR1R2(BigInteger.valueOf(7), BigInteger.valueOf(109), BigInteger.valueOf(9),
+                    BigInteger.valueOf(27));
+            AuthenticationChallengeResponse challenge = storesStub.createAuthenticationChallenge(
+                    AuthenticationChallengeRequest.newBuilder()
+                            .setUser(user)
+                            .setR1(ByteString.copyFrom(r1r2[0].toByteArray()))
+                            .setR2(ByteString.copyFrom(r1r2[1].toByteArray()))
+                            .build());
+            BigInteger s = computeS(BigInteger.valueOf(7), new BigInteger(challenge.getC().toByteArray()),
+                    BigInteger.valueOf(3), BigInteger.valueOf(54));
+            AuthenticationAnswerResponse answer = storesStub.verifyAuthentication(
+                    AuthenticationAnswerRequest.newBuilder()
+                            .setAuthId(challenge.getAuthId())
+                            .setS(ByteString.copyFrom(s.toByteArray()))
+                            .build());
+
+            assertEquals(user, sessionStore.validate(answer.getSessionId()).user(),
+                    "Session not in the injected store");
+        } finally {
+            KeyCache.getKeys().remove(user);
+            storesChannel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
+    /**
+     * For
+     * authenticateStream(io.grpc.stub.StreamObserver<com.bole.zkpauth.AuthenticationStreamResponse> responseObserver)
+     */
+    @Test
+    public void givenPipelinedRequests_whenAuthenticateStream_thenCorrelatedResponses() throws Exception {
+        String user = "blopes";
+        BigInteger y1 = BigInteger.valueOf(75);
+        BigInteger y2 = BigInteger.valueOf(63);
+        BigInteger[] r1r2 = computeR1R2(
+                BigInteger.valueOf(7), //k
+                KeyCache.getKeys().get(user).getP(), //q
+                KeyCache.getKeys().get(user).getG(), //g
+                KeyCache.getKeys().get(user).getH()); //h
+
+        stub.register(RegisterRequest.newBuilder()
+                .setUser(user)
+                .setY1(ByteString.copyFrom(y1.toByteArray()))
+                .setY2(ByteString.copyFrom(y2.toByteArray()))
+                .build());
+
+        int challenges = 10;
+        Map<String, AuthenticationStreamResponse> responses = new ConcurrentHashMap<>();
+        CountDownLatch challenged = new CountDownLatch(challenges + 1);
+        CountDownLatch completed = new CountDownLatch(1);
+
+        StreamObserver<AuthenticationStreamRequest> requests = AuthGrpc.newStub(channel)
+                .authenticateStream(new StreamObserver<>() {
+                    @Override
+                    public void onNext(AuthenticationStreamResponse response) {
+                        responses.put(response.getRequestId(), response);
+                        challenged.countDown();
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        log.error("Stream failed", t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        completed.countDown();
+                    }
+                });
+
+        for (int i = 0; i < challenges; i++) {
+            requests.onNext(AuthenticationStreamRequest.newBuilder()
+                    .setRequestId("challenge-" + i)
+                    .setChallenge(AuthenticationChallengeRequest.newBuilder()
+                            .setUser(user)
+                            .setR1(ByteString.copyFrom(r1r2[0].toByteArray()))
+                            .setR2(ByteString.copyFrom(r1r2[1].toByteArray())))
+                    .build());
+        }
+        requests.onNext(AuthenticationStreamRequest.newBuilder()
+                .setRequestId("invalid")
+                .setChallenge(AuthenticationChallengeRequest.newBuilder().setUser(""))
+                .build());
+
+        assertTrue(challenged.await(10, TimeUnit.SECONDS), "Missing challenge responses");
+        assertEquals(Status.Code.INVALID_ARGUMENT.value(), responses.get("invalid").getError().getCode());
+        assertEquals("Invalid input for the user parameter", responses.get("invalid").getError().getDescription());
+
+        for (int i = 0; i < challenges; i++) {
+            AuthenticationChallengeResponse challenge = responses.get("challenge-" + i).getChallenge();
+            BigInteger s = computeS(
+                    BigInteger.valueOf(7), //k
+                    new BigInteger(challenge.getC().toByteArray()),
+                    BigInteger.valueOf(3), // x
+                    BigInteger.valueOf(54)); //q
+            requests.onNext(AuthenticationStreamRequest.newBuilder()
+                    .setRequestId("answer-" + i)
+                    .setAnswer(AuthenticationAnswerRequest.newBuilder()
+                            .setAuthId(challenge.getAuthId())
+                            .setS(ByteString.copyFrom(s.toByteArray())))
+                    .build());
+        }
+        requests.onCompleted();
+
+        assertTrue(completed.await(10, TimeUnit.SECONDS), "Stream not completed");
+        for (int i = 0; i < challenges; i++) {
+            assertFalse(responses.get("answer-" + i).getAnswer().getSessionId().isEmpty(),
+                    "Invalid session id for answer-" + i);
+        }
+    }
+
+
+    @Test
+    public void givenTheVerifier_whenTheUserRegistersAgain_thenChallengesInFlightVerified() throws Exception {
+        String user = "reregistered";
+        // p = 23, g = h = 4 of order 11: x = 6 gives y = 2, x = 3 gives y = 18
+        KeyCache.getKeys().put(user, new GroupParameters(BigInteger.valueOf(23), BigInteger.valueOf(4),
+                BigInteger.valueOf(4)));
+        String serverName = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(serverName)
+                .addService(new VerifierServer(ShardAssignment.all(), ForkJoinPool.commonPool(), null,
+                        new SessionStore(60_000)))
+                .build().start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        try {
+            AuthGrpc.AuthBlockingStub stub = AuthGrpc.newBlockingStub(channel);
+            register(stub, user, BigInteger.TWO);
+            AuthenticationChallengeResponse before = challenge(stub, user);
+            register(stub, user, BigInteger.valueOf(18));
+            AuthenticationChallengeResponse after = challenge(stub, user);
+
+            assertFalse(answer(stub, before, 6).isEmpty(), "Challenge issued before the rotation failed");
+            assertFalse(answer(stub, after, 3).isEmpty(), "Challenge issued after the rotation failed");
+            AuthenticationChallengeResponse mixed = challenge(stub, user);
+            while (BigIntegerCodec.decode(mixed.getC()).mod(BigInteger.valueOf(11)).signum() == 0) {
+                // any secret answers a c multiple of the order
+                mixed = challenge(stub, user);
+            }
+            assertTrue(answer(stub, mixed, 6).isEmpty(), "Previous secret accepted for the new keys");
+        } finally {
+            KeyCache.getKeys().remove(user);
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
     /***************
      * Helpers
      ***************/
 
 
 
+    private static void register(AuthGrpc.AuthBlockingStub stub, String user, BigInteger y) {
+        stub.register(RegisterRequest.newBuilder().setUser(user)
+                .setY1(BigIntegerCodec.encode(y)).setY2(BigIntegerCodec.encode(y)).build());
+    }
+
+    /**
+     * Challenge with k = 5, R1 = R2 = 4^5 mod 23 = 12
+     */
+    private static AuthenticationChallengeResponse challenge(AuthGrpc.AuthBlockingStub stub, String user) {
+        return stub.createAuthenticationChallenge(AuthenticationChallengeRequest.newBuilder().setUser(user)
+                .setR1(BigIntegerCodec.encode(BigInteger.valueOf(12)))
+                .setR2(BigIntegerCodec.encode(BigInteger.valueOf(12))).build());
+    }
+
+    /**
+     * @return session id of the answer s = k - c.x mod 11
+     */
+    private static String answer(AuthGrpc.AuthBlockingStub stub, AuthenticationChallengeResponse challenge, int x) {
+        BigInteger c = BigIntegerCodec.decode(challenge.getC());
+        BigInteger s = BigInteger.valueOf(5).subtract(c.multiply(BigInteger.valueOf(x))).mod(BigInteger.valueOf(11));
+        return stub.verifyAuthentication(AuthenticationAnswerRequest.newBuilder().setAuthId(challenge.getAuthId())
+                .setS(BigIntegerCodec.encode(s)).build()).getSessionId();
+    }
+
     private Object[] initForVerify() {
         //mocking expected values from client
         String user = "blopes";
@@ -350,9 +636,9 @@ public class VerifierServerTest {
 
         BigInteger[] r1r2 = computeR1R2(
                 BigInteger.valueOf(7), //k
-                KeyCache.getKeys().get(user)[0], //q
-                KeyCache.getKeys().get(user)[1], //g
-                KeyCache.getKeys().get(user)[2]); //h
+                KeyCache.getKeys().get(user).getP(), //q
+                KeyCache.getKeys().get(user).getG(), //g
+                KeyCache.getKeys().get(user).getH()); //h
 
         BigInteger r1 = r1r2[0];
         BigInteger r2 = r1r2[1];
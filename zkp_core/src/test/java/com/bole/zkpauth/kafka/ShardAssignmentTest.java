@@ -0,0 +1,69 @@
+package com.bole.zkpauth.kafka;
+
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the partition ownership of a verifier shard
+ * @com.bole.zkpauth.kafka.ShardAssignment
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ShardAssignmentTest {
+
+    @Test
+    public void givenAUser_whenPartitionFor_thenMatchesKafkaDefaultPartitioner() {
+        int numPartitions = 6;
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for (int i = 0; i < numPartitions; i++) {
+            partitions.add(new PartitionInfo("zkptopic", i, node, new Node[]{node}, new Node[]{node}));
+        }
+        Cluster cluster = new Cluster("zkp", List.of(node), partitions, Collections.emptySet(), Collections.emptySet());
+
+        DefaultPartitioner partitioner = new DefaultPartitioner();
+        for (String user : List.of("blopes", "john", "alice", "bob", "carol")) {
+            byte[] key = user.getBytes(StandardCharsets.UTF_8);
+            assertEquals(partitioner.partition("zkptopic", user, key, "", new byte[0], cluster),
+                    ShardAssignment.partitionFor(user, numPartitions), "Partition differs for " + user);
+        }
+    }
+
+    @Test
+    public void givenAShard_whenOwns_thenOnlyOwnedPartitionsAreServed() {
+        int numPartitions = 4;
+        int owned = ShardAssignment.partitionFor("blopes", numPartitions);
+        ShardAssignment shard = new ShardAssignment("zkp-verifier-0:8082", numPartitions, Set.of(owned));
+
+        assertTrue(shard.isSharded());
+        assertTrue(shard.owns("blopes"));
+
+        ShardAssignment other = new ShardAssignment("zkp-verifier-1:8082", numPartitions,
+                Set.of((owned + 1) % numPartitions));
+        assertFalse(other.owns("blopes"));
+    }
+
+    @Test
+    public void givenNotSharded_whenOwns_thenServesEveryUser() {
+        assertFalse(ShardAssignment.all().isSharded());
+        assertTrue(ShardAssignment.all().owns("blopes"));
+    }
+
+    @Test
+    public void givenAnAssignment_whenWireFormat_thenSortedPartitions() {
+        ShardAssignment shard = new ShardAssignment("zkp-verifier-0:8082", 6,
+                ShardAssignment.parsePartitions(" 5, 1,3"));
+        assertEquals("6;1,3,5", shard.toWireFormat());
+    }
+}
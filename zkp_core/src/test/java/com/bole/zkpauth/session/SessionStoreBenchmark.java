@@ -0,0 +1,83 @@
+package com.bole.zkpauth.session;
+
+import com.bole.zkpauth.util.TokenMinter;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Lookup benchmark of the session store, tagged benchmark so only run on demand:
+ * mvn test -Pbenchmark -Dtest=SessionStoreBenchmark
+ *
+ * BENCH_SESSIONS sessions are issued, then 1 to BENCH_THREADS threads validate random session ids, one in
+ * BENCH_WRITE_EVERY lookups being an issue so the segments also see writes, and the lookups per second are printed.
+ * Environment: BENCH_SECONDS (5), BENCH_SESSIONS (1000000), BENCH_THREADS (cores), BENCH_WRITE_EVERY (100)
+ * @com.bole.zkpauth.session.SessionStore
+ */
+@Tag("benchmark")
+public class SessionStoreBenchmark {
+
+    @Test
+    public void givenIssuedSessions_whenValidatedByThreads_thenLookupsPrinted() throws Exception {
+        int seconds = Integer.parseInt(System.getenv().getOrDefault("BENCH_SECONDS", "5"));
+        int sessions = Integer.parseInt(System.getenv().getOrDefault("BENCH_SESSIONS", "1000000"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxThreads = Integer.parseInt(System.getenv().getOrDefault("BENCH_THREADS", String.valueOf(cores)));
+        int writeEvery = Integer.parseInt(System.getenv().getOrDefault("BENCH_WRITE_EVERY", "100"));
+
+        SessionStore store = new SessionStore(3_600_000);
+        long[] his = new long[sessions];
+        long[] los = new long[sessions];
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            String sessionId = store.issue("user" + (i % 100_000));
+            his[i] = TokenMinter.high(sessionId);
+            los[i] = TokenMinter.low(sessionId);
+        }
+        System.out.printf("%d cores, %d sessions issued in %d ms, %d MB heap used%n", cores, sessions,
+                (System.nanoTime() - start) / 1_000_000,
+                (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) >> 20);
+        System.out.printf("%-8s %15s %15s%n", "threads", "lookups/s", "per thread/s");
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            AtomicLong lookups = new AtomicLong();
+            AtomicLong lost = new AtomicLong();
+            CountDownLatch done = new CountDownLatch(threads);
+            long end = System.nanoTime() + seconds * 1_000_000_000L;
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread worker = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long count = 0;
+                    while ((count & 1023) != 0 || System.nanoTime() < end) {
+                        int i = random.nextInt(sessions);
+                        if (store.validate(his[i], los[i]) == null) {
+                            lost.incrementAndGet();
+                        }
+                        if (++count % writeEvery == 0) {
+                            store.issue("writer");
+                        }
+                    }
+                    lookups.addAndGet(count);
+                    done.countDown();
+                });
+                workers.add(worker);
+                worker.start();
+            }
+            done.await();
+            double rate = lookups.get() / (double) seconds;
+            System.out.printf("%-8d %15.0f %15.0f%n", threads, rate, rate / threads);
+            assertEquals(0, lost.get(), "Sessions lost");
+            if (threads < maxThreads && threads * 2 > maxThreads) {
+                threads = maxThreads / 2;
+            }
+        }
+    }
+}
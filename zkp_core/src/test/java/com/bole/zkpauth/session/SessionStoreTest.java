@@ -0,0 +1,171 @@
+package com.bole.zkpauth.session;
+
+import com.bole.zkpauth.RevokeUserSessionsRequest;
+import com.bole.zkpauth.SessionGrpc;
+import com.bole.zkpauth.ValidateSessionBatchRequest;
+import com.bole.zkpauth.ValidateSessionBatchResponse;
+import com.bole.zkpauth.ValidateSessionRequest;
+import com.bole.zkpauth.ValidateSessionResponse;
+import com.bole.zkpauth.grpc.SessionServer;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the session store and the Session grpc service
+ * @com.bole.zkpauth.session.SessionStore
+ * @com.bole.zkpauth.grpc.SessionServer
+ */
+public class SessionStoreTest {
+
+    @Test
+    public void givenAnIssuedSession_whenValidate_thenUserAndExpiryReturned() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        SessionStore store = new SessionStore(60_000, now::get);
+
+        String sessionId = store.issue("blopes");
+        SessionStore.Session session = store.validate(sessionId);
+
+        assertNotNull(session);
+        assertEquals("blopes", session.user());
+        assertEquals(1_060_000, session.expiresAtMillis());
+        assertNull(store.validate("not a session"));
+        assertNull(store.validate("00000000-0000-0000-0000-000000000001"));
+        assertNull(store.validate(""));
+    }
+
+    @Test
+    public void givenSessionsOfTwoReplicas_whenValidate_thenValidOnlyOnTheirIssuer() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        SessionStore first = new SessionStore(60_000, "verifier-0:8082", now::get);
+        SessionStore second = new SessionStore(60_000, "verifier-1:8082", now::get);
+
+        String sessionId = first.issue("blopes");
+
+        assertEquals("verifier-0:8082", SessionStore.issuer(sessionId).orElseThrow());
+        assertEquals("blopes", first.validate(sessionId).user());
+        assertNull(second.validate(sessionId));
+        String token = sessionId.substring(0, sessionId.indexOf('.'));
+        assertNull(first.validate(token), "Session id without its issuer valid");
+        assertNull(first.validate(token + ".verifier-9:8082"), "Session id of another issuer valid");
+        assertTrue(SessionStore.issuer(token).isEmpty());
+        assertTrue(SessionStore.issuer("not a session").isEmpty());
+        assertTrue(SessionStore.issuer(null).isEmpty());
+    }
+
+    @Test
+    public void givenExpiredSessions_whenTheWheelTurns_thenInvalidAndRemoved() {
+        AtomicLong now = new AtomicLong(0);
+        SessionStore store = new SessionStore(10_000, now::get);
+        List<String> early = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            early.add(store.issue("user" + i));
+        }
+        now.set(5_000);
+        String late = store.issue("late");
+
+        now.set(10_000);
+        early.forEach(sessionId -> assertNull(store.validate(sessionId), "Expired session valid"));
+        assertNotNull(store.validate(late));
+        assertEquals(101, store.size(), "Removed before a write to the segments");
+
+        // one write per segment advances every wheel
+        for (int i = 0; i < 10_000; i++) {
+            store.issue("trigger");
+        }
+        assertEquals(10_001, store.size());
+
+        now.set(15_000);
+        assertNull(store.validate(late));
+    }
+
+    @Test
+    public void givenSessionsOfAUser_whenRevoked_thenOnlyNewSessionsValid() {
+        SessionStore store = new SessionStore(60_000);
+        String first = store.issue("blopes");
+        String second = store.issue("blopes");
+        String other = store.issue("other");
+
+        store.revoke("blopes");
+        store.revoke("unknown");
+
+        assertNull(store.validate(first));
+        assertNull(store.validate(second));
+        assertNotNull(store.validate(other));
+        String renewed = store.issue("blopes");
+        assertEquals("blopes", store.validate(renewed).user());
+    }
+
+    @Test
+    public void givenConcurrentIssuers_whenTablesGrow_thenEverySessionValid() throws Exception {
+        SessionStore store = new SessionStore(60_000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> issued = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                issued.add(executor.submit(() -> {
+                    List<String> sessionIds = new ArrayList<>();
+                    for (int i = 0; i < 50_000; i++) {
+                        String sessionId = store.issue("user" + thread + "-" + (i % 1000));
+                        sessionIds.add(sessionId);
+                        // lookups concurrent with the growth of the tables
+                        assertNotNull(store.validate(sessionIds.get(i / 2)));
+                    }
+                    return sessionIds;
+                }));
+            }
+            for (Future<List<String>> sessionIds : issued) {
+                for (String sessionId : sessionIds.get()) {
+                    assertNotNull(store.validate(sessionId), "Session lost " + sessionId);
+                }
+            }
+            assertEquals(200_000, store.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenTheSessionService_whenValidateAndRevoke_thenAnswered() throws Exception {
+        SessionStore store = new SessionStore(60_000);
+        String serverName = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(serverName)
+                .addService(new SessionServer(store)).build().start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        try {
+            SessionGrpc.SessionBlockingStub stub = SessionGrpc.newBlockingStub(channel);
+            String sessionId = store.issue("blopes");
+
+            ValidateSessionResponse valid = stub.validateSession(
+                    ValidateSessionRequest.newBuilder().setSessionId(sessionId).build());
+            assertTrue(valid.getValid());
+            assertEquals("blopes", valid.getUser());
+            assertTrue(valid.getExpiresAtMillis() > System.currentTimeMillis());
+
+            ValidateSessionBatchResponse batch = stub.validateSessionBatch(ValidateSessionBatchRequest.newBuilder()
+                    .addSessionIds(sessionId).addSessionIds("unknown").build());
+            assertEquals(2, batch.getResultsCount());
+            assertTrue(batch.getResults(0).getValid());
+            assertFalse(batch.getResults(1).getValid());
+
+            stub.revokeUserSessions(RevokeUserSessionsRequest.newBuilder().setUser("blopes").build());
+            assertFalse(stub.validateSession(
+                    ValidateSessionRequest.newBuilder().setSessionId(sessionId).build()).getValid());
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.bole.zkpauth.util;
+
+import com.bole.zkpauth.AuthenticationChallengeRequest;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the copy free marshalling of the protocol numbers
+ * @com.bole.zkpauth.util.BigIntegerCodec
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class BigIntegerCodecTest {
+
+    private static final int ITERATIONS = 20_000;
+
+    private final Random random = new SecureRandom();
+
+    private Object sink;
+
+    @Test
+    public void givenAnyValue_whenEncodeDecode_thenSameValue() {
+        for (BigInteger value : new BigInteger[]{BigInteger.ZERO, BigInteger.valueOf(-104729),
+                BigInteger.valueOf(104729), new BigInteger(2048, random), new BigInteger(2048, random).negate()}) {
+            assertEquals(value, BigIntegerCodec.decode(BigIntegerCodec.encode(value)));
+            assertEquals(value, BigIntegerCodec.decode(ByteString.copyFrom(value.toByteArray())));
+        }
+    }
+
+    @Test
+    public void givenASliceOrARope_whenDecode_thenSameValue() {
+        BigInteger value = new BigInteger(2048, random);
+        byte[] bytes = value.toByteArray();
+        ByteString padded = ByteString.copyFrom(new byte[]{9, 9}).concat(ByteString.copyFrom(bytes));
+
+        assertEquals(value, BigIntegerCodec.decode(padded.substring(2)));
+        assertEquals(value, BigIntegerCodec.decode(ByteString.copyFrom(bytes, 0, 100)
+                .concat(ByteString.copyFrom(bytes, 100, bytes.length - 100))));
+    }
+
+    @Test
+    public void givenAnEmptyValue_whenDecode_thenRejected() {
+        assertThrows(NumberFormatException.class, () -> BigIntegerCodec.decode(ByteString.EMPTY));
+    }
+
+    @Test
+    public void givenAParsedRequest_whenDecode_thenNoByteArrayCopies() throws Exception {
+        BigInteger r1 = new BigInteger(4096, random);
+        BigInteger r2 = new BigInteger(4096, random);
+        AuthenticationChallengeRequest request = AuthenticationChallengeRequest.parseFrom(
+                AuthenticationChallengeRequest.newBuilder()
+                        .setUser("blopes")
+                        .setR1(BigIntegerCodec.encode(r1))
+                        .setR2(BigIntegerCodec.encode(r2))
+                        .build()
+                        .toByteArray());
+        int size = request.getR1().size() + request.getR2().size();
+
+        long copying = allocatedPerCall(() -> new BigInteger[]{
+                new BigInteger(request.getR1().toByteArray()), new BigInteger(request.getR2().toByteArray())});
+        long zeroCopy = allocatedPerCall(() -> new BigInteger[]{
+                BigIntegerCodec.decode(request.getR1()), BigIntegerCodec.decode(request.getR2())});
+
+        assertEquals(r1, BigIntegerCodec.decode(request.getR1()));
+        assertTrue(copying - zeroCopy >= size,
+                "Decode saved " + (copying - zeroCopy) + " bytes, expected at least " + size);
+    }
+
+    @Test
+    public void givenAValue_whenEncode_thenNoByteArrayCopy() {
+        BigInteger c = new BigInteger(4096, random);
+        int size = c.toByteArray().length;
+
+        long copying = allocatedPerCall(() -> ByteString.copyFrom(c.toByteArray()));
+        long zeroCopy = allocatedPerCall(() -> BigIntegerCodec.encode(c));
+
+        assertTrue(copying - zeroCopy >= size,
+                "Encode saved " + (copying - zeroCopy) + " bytes, expected at least " + size);
+    }
+
+    /**
+     * @return bytes allocated by the current thread per call, after a warm up letting the JIT compile the call
+     */
+    private long allocatedPerCall(Supplier<Object> call) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = call.get();
+        }
+        long start = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = call.get();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - start) / ITERATIONS;
+    }
+}
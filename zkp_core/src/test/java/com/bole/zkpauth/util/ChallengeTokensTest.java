@@ -0,0 +1,216 @@
+package com.bole.zkpauth.util;
+
+import com.bole.zkpauth.AuthGrpc;
+import com.bole.zkpauth.AuthenticationAnswerRequest;
+import com.bole.zkpauth.AuthenticationChallengeRequest;
+import com.bole.zkpauth.AuthenticationChallengeResponse;
+import com.bole.zkpauth.RegisterRequest;
+import com.bole.zkpauth.cache.KeyCache;
+import com.bole.zkpauth.domain.GroupParameters;
+import com.bole.zkpauth.cache.ReplayFilter;
+import com.bole.zkpauth.exception.CacheValueException;
+import com.bole.zkpauth.grpc.VerifierServer;
+import com.bole.zkpauth.kafka.ShardAssignment;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the stateless challenges, answered once and only by the replica that issued them
+ * @com.bole.zkpauth.util.ChallengeTokens
+ * @com.bole.zkpauth.cache.ReplayFilter
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ChallengeTokensTest {
+
+    private static final String USER = "stateless";
+
+    // p = 23, q = 11, g = h = 4, x = 6: y1 = y2 = 2, k = 7: r1 = r2 = 8
+    private static final BigInteger P = BigInteger.valueOf(23);
+    private static final BigInteger Q = BigInteger.valueOf(11);
+    private static final BigInteger G = BigInteger.valueOf(4);
+    private static final BigInteger X = BigInteger.valueOf(6);
+    private static final BigInteger K = BigInteger.valueOf(7);
+
+    private final byte[] key = Base64.getDecoder().decode("c2hhcmVkLWtleS1vZi10aGUtdmVyaWZpZXItcmVwbGljYXM=");
+
+    private Server replicaA;
+    private Server replicaB;
+    private ManagedChannel channelA;
+    private ManagedChannel channelB;
+
+    @BeforeAll
+    public void startReplicas() throws Exception {
+        KeyCache.getKeys().put(USER, new GroupParameters(P, G, G));
+        replicaA = replica("replica-a");
+        replicaB = replica("replica-b");
+        channelA = InProcessChannelBuilder.forName("replica-a").build();
+        channelB = InProcessChannelBuilder.forName("replica-b").build();
+        BigInteger y = G.modPow(X, P);
+        for (ManagedChannel channel : new ManagedChannel[]{channelA, channelB}) {
+            AuthGrpc.newBlockingStub(channel).register(RegisterRequest.newBuilder().setUser(USER)
+                    .setY1(BigIntegerCodec.encode(y)).setY2(BigIntegerCodec.encode(y)).build());
+        }
+    }
+
+    @AfterAll
+    public void stopReplicas() {
+        KeyCache.getKeys().remove(USER);
+        channelA.shutdownNow();
+        channelB.shutdownNow();
+        replicaA.shutdownNow();
+        replicaB.shutdownNow();
+    }
+
+    private Server replica(String name) throws Exception {
+        ChallengeTokens tokens = new ChallengeTokens(key, 60_000, new ReplayFilter(60_000, 1000, 1e-6));
+        return InProcessServerBuilder.forName(name)
+                .addService(new VerifierServer(ShardAssignment.all(), ForkJoinPool.commonPool(), tokens))
+                .build()
+                .start();
+    }
+
+    @Test
+    public void givenAChallengeFromOneReplica_whenAnsweredOnAnother_thenRejectedAndVerifiedOnceByItsIssuer() {
+        BigInteger r = G.modPow(K, P);
+        AuthenticationChallengeResponse challenge = AuthGrpc.newBlockingStub(channelA)
+                .createAuthenticationChallenge(AuthenticationChallengeRequest.newBuilder().setUser(USER)
+                        .setR1(BigIntegerCodec.encode(r)).setR2(BigIntegerCodec.encode(r)).build());
+        BigInteger c = BigIntegerCodec.decode(challenge.getC());
+        BigInteger s = K.subtract(c.multiply(X)).mod(Q);
+        AuthenticationAnswerRequest answer = AuthenticationAnswerRequest.newBuilder()
+                .setAuthId(challenge.getAuthId()).setS(BigIntegerCodec.encode(s)).build();
+
+        // replica B has its own replay filter, it cannot tell whether replica A already accepted the answer
+        StatusRuntimeException foreign = assertThrows(StatusRuntimeException.class,
+                () -> AuthGrpc.newBlockingStub(channelB).verifyAuthentication(answer));
+        assertEquals(Status.Code.INVALID_ARGUMENT, foreign.getStatus().getCode());
+        assertEquals("Auth id issued by another verifier", foreign.getStatus().getDescription());
+
+        assertFalse(AuthGrpc.newBlockingStub(channelA).verifyAuthentication(answer).getSessionId().isEmpty(),
+                "Answer not verified by the issuing replica");
+
+        StatusRuntimeException replayed = assertThrows(StatusRuntimeException.class,
+                () -> AuthGrpc.newBlockingStub(channelA).verifyAuthentication(answer));
+        assertEquals(Status.Code.INVALID_ARGUMENT, replayed.getStatus().getCode());
+        assertEquals("Auth id already used", replayed.getStatus().getDescription());
+    }
+
+    @Test
+    public void givenAWrongAnswer_whenVerify_thenNotVerified() {
+        BigInteger r = G.modPow(K, P);
+        AuthenticationChallengeResponse challenge = AuthGrpc.newBlockingStub(channelA)
+                .createAuthenticationChallenge(AuthenticationChallengeRequest.newBuilder().setUser(USER)
+                        .setR1(BigIntegerCodec.encode(r)).setR2(BigIntegerCodec.encode(r)).build());
+        BigInteger c = BigIntegerCodec.decode(challenge.getC());
+        BigInteger s = K.subtract(c.multiply(X)).add(BigInteger.ONE).mod(Q);
+
+        assertTrue(AuthGrpc.newBlockingStub(channelA).verifyAuthentication(AuthenticationAnswerRequest.newBuilder()
+                .setAuthId(challenge.getAuthId()).setS(BigIntegerCodec.encode(s)).build()).getSessionId().isEmpty());
+    }
+
+    @Test
+    public void givenATamperedToken_whenOpen_thenRejected() throws Exception {
+        ChallengeTokens tokens = new ChallengeTokens(key, 60_000, new ReplayFilter(60_000, 1000, 1e-6));
+        String token = tokens.issue(USER, BigInteger.valueOf(104729), BigInteger.TWO, BigInteger.TEN);
+        String forged = new ChallengeTokens("another key".getBytes(), 60_000, new ReplayFilter(60_000, 1000, 1e-6))
+                .issue(USER, BigInteger.ONE, BigInteger.TWO, BigInteger.TEN);
+        int dot = token.indexOf('.');
+        String otherPayload = forged.substring(0, forged.indexOf('.')) + token.substring(dot);
+
+        for (String invalid : new String[]{forged, otherPayload, token.substring(0, dot), "", "a.b", "%.%"}) {
+            CacheValueException thrown = assertThrows(CacheValueException.class, () -> tokens.open(invalid));
+            assertEquals("Invalid auth id", thrown.getMessage());
+        }
+
+        ChallengeTokens.Challenge challenge = tokens.open(token);
+        assertEquals(USER, challenge.user());
+        assertEquals(BigInteger.valueOf(104729), challenge.c());
+        assertTrue(ChallengeTokens.matches(challenge, BigInteger.TWO, BigInteger.TEN));
+        assertFalse(ChallengeTokens.matches(challenge, BigInteger.TEN, BigInteger.TWO));
+        assertEquals(0, challenge.keyEpoch());
+        assertEquals(7, tokens.open(tokens.issue(USER, 7, BigInteger.ONE, BigInteger.TWO, BigInteger.TEN)).keyEpoch());
+    }
+
+    @Test
+    public void givenAVersion1Token_whenOpen_thenRejectedWithoutIssuer() throws Exception {
+        ChallengeTokens tokens = new ChallengeTokens(key, 60_000, new ReplayFilter(60_000, 1000, 1e-6));
+        byte[] userBytes = USER.getBytes(StandardCharsets.UTF_8);
+        byte[] cBytes = BigInteger.valueOf(104729).toByteArray();
+        byte[] rDigest = ChallengeTokens.digest(BigInteger.TWO, BigInteger.TEN);
+        // issued before the issuer ids: version, expiry, nonce, c, user, digest of R1 and R2
+        byte[] payload = ByteBuffer.allocate(1 + Long.BYTES + Long.BYTES + 2 + cBytes.length + 2 + userBytes.length
+                        + rDigest.length)
+                .put((byte) 1)
+                .putLong(System.currentTimeMillis() + 60_000)
+                .putLong(42)
+                .putShort((short) cBytes.length).put(cBytes)
+                .putShort((short) userBytes.length).put(userBytes)
+                .put(rDigest)
+                .array();
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String token = encoder.encodeToString(payload) + "." + encoder.encodeToString(mac.doFinal(payload));
+
+        CacheValueException thrown = assertThrows(CacheValueException.class, () -> tokens.open(token));
+        assertEquals("Auth id issued by another verifier", thrown.getMessage());
+    }
+
+    @Test
+    public void givenATokenOfAnotherInstanceSharingTheKey_whenOpen_thenRejected() throws Exception {
+        ChallengeTokens tokens = new ChallengeTokens(key, 60_000, new ReplayFilter(60_000, 1000, 1e-6));
+        // same key, another issuer, as a second replica or this one restarted
+        String token = new ChallengeTokens(key, 60_000, new ReplayFilter(60_000, 1000, 1e-6))
+                .issue(USER, BigInteger.ONE, BigInteger.TWO, BigInteger.TEN);
+
+        CacheValueException thrown = assertThrows(CacheValueException.class, () -> tokens.open(token));
+        assertEquals("Auth id issued by another verifier", thrown.getMessage());
+    }
+
+    @Test
+    public void givenAnExpiredToken_whenOpen_thenRejected() throws Exception {
+        ChallengeTokens tokens = new ChallengeTokens(key, 1, new ReplayFilter(1, 1000, 1e-6));
+        String token = tokens.issue(USER, BigInteger.ONE, BigInteger.TWO, BigInteger.TEN);
+        Thread.sleep(10);
+
+        CacheValueException thrown = assertThrows(CacheValueException.class, () -> tokens.open(token));
+        assertEquals("Expired auth id", thrown.getMessage());
+    }
+
+    @Test
+    public void givenAKeyRecorded_whenBucketsRotate_thenRememberedForOneMoreBucket() throws Exception {
+        ReplayFilter filter = new ReplayFilter(200, 1000, 1e-6);
+        byte[] recorded = new byte[32];
+        recorded[0] = 1;
+        recorded[15] = 7;
+        // start at the beginning of a bucket
+        while (System.currentTimeMillis() % 200 > 20) {
+            Thread.sleep(1);
+        }
+
+        assertTrue(filter.add(recorded));
+        assertFalse(filter.add(recorded));
+        Thread.sleep(200);
+        assertFalse(filter.add(recorded), "Key forgotten by the previous bucket");
+        Thread.sleep(400);
+        assertTrue(filter.add(recorded), "Key kept after its expiry");
+    }
+}
@@ -0,0 +1,66 @@
+package com.bole.zkpauth.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Minting benchmark of the challenge and session ids, tagged benchmark so only run on demand:
+ * mvn test -Pbenchmark -Dtest=TokenMinterBenchmark
+ *
+ * 1 to BENCH_THREADS threads mint text ids with UUID.randomUUID, the former source of the session ids, and with
+ * the TokenMinter, the ids per second are printed.
+ * Environment: BENCH_SECONDS (3), BENCH_THREADS (cores)
+ * @com.bole.zkpauth.util.TokenMinter
+ */
+@Tag("benchmark")
+public class TokenMinterBenchmark {
+
+    @Test
+    public void givenUuidAndTokenMinter_whenMintingFromThreads_thenIdsPerSecondPrinted() throws Exception {
+        int seconds = Integer.parseInt(System.getenv().getOrDefault("BENCH_SECONDS", "3"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxThreads = Integer.parseInt(System.getenv().getOrDefault("BENCH_THREADS", String.valueOf(cores)));
+        TokenMinter minter = new TokenMinter();
+
+        System.out.printf("%d cores, %d s per run%n", cores, seconds);
+        System.out.printf("%-12s %-8s %15s %15s%n", "source", "threads", "ids/s", "per thread/s");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run("UUID", threads, seconds, () -> UUID.randomUUID().toString());
+            run("TokenMinter", threads, seconds, minter::nextText);
+            if (threads < maxThreads && threads * 2 > maxThreads) {
+                threads = maxThreads / 2;
+            }
+        }
+    }
+
+    private static void run(String source, int threads, int seconds, Supplier<String> mint) throws Exception {
+        AtomicLong minted = new AtomicLong();
+        AtomicLong sink = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads);
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                long count = 0;
+                long hash = 0;
+                while ((count & 1023) != 0 || System.nanoTime() < end) {
+                    hash += mint.get().hashCode();
+                    count++;
+                }
+                minted.addAndGet(count);
+                sink.addAndGet(hash);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        double rate = minted.get() / (double) seconds;
+        System.out.printf("%-12s %-8d %15.0f %15.0f%n", source, threads, rate, rate / threads);
+        assertTrue(minted.get() > 0, "No id minted by " + source);
+    }
+}
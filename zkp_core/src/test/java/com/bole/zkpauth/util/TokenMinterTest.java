@@ -0,0 +1,88 @@
+package com.bole.zkpauth.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class to cover the minting and the text form of the challenge and session ids
+ * @com.bole.zkpauth.util.TokenMinter
+ */
+public class TokenMinterTest {
+
+    @Test
+    public void givenIds_whenEncodedAndDecoded_thenSameBits() {
+        long[] values = {0, 1, -1, Long.MIN_VALUE, Long.MAX_VALUE, 0x0123456789ABCDEFL};
+        for (long hi : values) {
+            for (long lo : values) {
+                String text = TokenMinter.encode(hi, lo);
+                assertEquals(TokenMinter.TEXT_LENGTH, text.length());
+                assertTrue(TokenMinter.isToken(text), text);
+                assertEquals(hi, TokenMinter.high(text));
+                assertEquals(lo, TokenMinter.low(text));
+            }
+        }
+        TokenMinter.Token token = new TokenMinter().next();
+        assertEquals(token.hi(), TokenMinter.high(token.text()));
+        assertEquals(token.lo(), TokenMinter.low(token.text()));
+    }
+
+    @Test
+    public void givenMalformedText_whenIsToken_thenFalse() {
+        String valid = TokenMinter.encode(-1, -1);
+        for (String invalid : new String[]{null, "", valid.substring(1), valid + "A",
+                valid.replace('_', '+'), valid.replace('_', '\u00e9'), "g" + valid.substring(1),
+                valid.substring(0, 11) + "g" + valid.substring(12),
+                "8c6b7c1e-9a0d-4f5e-b2a1-3d4c5e6f7a8b"}) {
+            assertFalse(TokenMinter.isToken(invalid), String.valueOf(invalid));
+        }
+    }
+
+    @Test
+    public void givenThreadsMinting_whenCollected_thenAllDistinct() throws Exception {
+        TokenMinter minter = new TokenMinter();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> minted = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                // beyond a 4096 bytes keystream block per thread
+                minted.add(executor.submit(() -> {
+                    List<String> ids = new ArrayList<>();
+                    for (int i = 0; i < 20_000; i++) {
+                        ids.add(minter.nextText());
+                    }
+                    return ids;
+                }));
+            }
+            Set<String> ids = new HashSet<>();
+            for (Future<List<String>> future : minted) {
+                ids.addAll(future.get());
+            }
+            assertEquals(80_000, ids.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenMintedIds_whenBitsCounted_thenBalanced() {
+        TokenMinter minter = new TokenMinter();
+        long ones = 0;
+        int ids = 10_000;
+        for (int i = 0; i < ids; i++) {
+            TokenMinter.Token token = minter.next();
+            ones += Long.bitCount(token.hi()) + Long.bitCount(token.lo());
+        }
+        // 1.28M bits, 6 standard deviations
+        double ratio = ones / (ids * 128.0);
+        assertEquals(0.5, ratio, 0.003);
+    }
+}